@@ -0,0 +1,57 @@
+package com.caffinc.jaggr.bench;
+
+import com.caffinc.jaggr.core.AggregationBuilder;
+import com.caffinc.jaggr.core.BatchAggregation;
+import com.caffinc.jaggr.core.operations.AverageOperation;
+import com.caffinc.jaggr.core.operations.CountOperation;
+import com.caffinc.jaggr.core.operations.SumOperation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a <code>BatchAggregation</code> fed the documents in batches, followed by its final result
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchAggregationBenchmark {
+    @Param({"100000"})
+    private int documentCount;
+
+    @Param({"1000"})
+    private int batchSize;
+
+    @Param({"sex", "name"})
+    private String groupBy;
+
+    private List<Map<String, Object>> documents;
+    private BatchAggregation batchAggregation;
+
+    @Setup
+    public void setup() {
+        documents = new DocumentGenerator(DocumentGenerator.getFieldDefinitions(), 0).generate(documentCount);
+        batchAggregation = new AggregationBuilder()
+                .setGroupBy(groupBy)
+                .addOperation("sum", new SumOperation("appeal"))
+                .addOperation("avg", new AverageOperation("salary"))
+                .addOperation("count", new CountOperation())
+                .getBatchAggregation();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> aggregateBatches() {
+        for (int i = 0; i < documents.size(); i += batchSize) {
+            batchAggregation.aggregateBatch(documents.subList(i, Math.min(i + batchSize, documents.size())));
+        }
+        return batchAggregation.getFinalResult();
+    }
+}
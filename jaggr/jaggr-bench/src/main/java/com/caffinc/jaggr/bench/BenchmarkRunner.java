@@ -0,0 +1,26 @@
+package com.caffinc.jaggr.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so allocation rates are reported alongside throughput
+ * <p>
+ * Accepts the same arguments as the JMH command line, for example a regular expression selecting the
+ * benchmarks to run: <code>java -jar target/benchmarks.jar GroupByBenchmark</code>
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
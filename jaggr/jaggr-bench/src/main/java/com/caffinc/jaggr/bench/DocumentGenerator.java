@@ -0,0 +1,111 @@
+package com.caffinc.jaggr.bench;
+
+import java.util.*;
+
+/**
+ * Generates random documents from field definitions
+ * <p>
+ * A definition is either a constant value or one of the following placeholders:
+ * <ul>
+ * <li><code>$id</code>: the document's index</li>
+ * <li><code>$string_length_digits</code>: a string of <code>length</code> characters ending in <code>digits</code>
+ * random digits</li>
+ * <li><code>$int_min_max</code>: an integer from <code>min</code> (inclusive) to <code>max</code> (exclusive)</li>
+ * <li><code>$choice_a|b|c</code>: one of the given choices</li>
+ * <li><code>$double</code>: a double from 0 (inclusive) to 1 (exclusive)</li>
+ * </ul>
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class DocumentGenerator {
+    private static final String PLACEHOLDER = "STRINGSTRINGSTRINGSTRINGSTRINGSTRINGSTRINGSTRINGSTRINGSTRINGSTRINGSTRING";
+    private final Map<String, String> fieldDefinitions;
+    private final Random random;
+
+    /**
+     * Creates a generator whose documents depend only on the definitions and seed, so runs are reproducible
+     *
+     * @param fieldDefinitions Map of field names to definitions
+     * @param seed             Seed for the random values
+     */
+    public DocumentGenerator(Map<String, String> fieldDefinitions, long seed) {
+        this.fieldDefinitions = new TreeMap<>(fieldDefinitions);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Returns the field definitions of a person document used by the benchmarks
+     *
+     * @return Map of field names to definitions
+     */
+    public static Map<String, String> getFieldDefinitions() {
+        Map<String, String> fieldDefinitions = new HashMap<>();
+        fieldDefinitions.put("_id", "$id");
+        fieldDefinitions.put("name", "$string_10_5");
+        fieldDefinitions.put("age", "$int_10_99");
+        fieldDefinitions.put("sex", "$choice_m|f");
+        fieldDefinitions.put("salary", "$int_100000_1000000");
+        fieldDefinitions.put("appeal", "$double");
+        return fieldDefinitions;
+    }
+
+    /**
+     * Generates a list of documents
+     *
+     * @param count Number of documents to generate
+     * @return Documents with ids from 0 to <code>count - 1</code>
+     */
+    public List<Map<String, Object>> generate(int count) {
+        List<Map<String, Object>> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(generateDocument(i));
+        }
+        return documents;
+    }
+
+    /**
+     * Generates a document
+     *
+     * @param id Id of the document
+     * @return Document with a value for each field definition
+     */
+    public Map<String, Object> generateDocument(int id) {
+        Map<String, Object> document = new HashMap<>();
+        for (Map.Entry<String, String> field : fieldDefinitions.entrySet()) {
+            document.put(field.getKey(), generateField(field.getValue(), id));
+        }
+        return document;
+    }
+
+    private Object generateField(String fieldDefinition, Integer id) {
+        if (fieldDefinition == null || !fieldDefinition.startsWith("$")) {
+            return fieldDefinition;
+        } else {
+            String[] definitionParts = fieldDefinition.split("_");
+            String type = definitionParts[0];
+            int min;
+            int max;
+            switch (type) {
+                case "$id":
+                    return id;
+                case "$string":
+                    min = Integer.parseInt(definitionParts[1]);
+                    max = Integer.parseInt(definitionParts[2]);
+                    int minVal = Double.valueOf(Math.pow(10, max - 1)).intValue();
+                    int maxVal = Double.valueOf(Math.pow(10, max)).intValue();
+                    return PLACEHOLDER.substring(0, min - max) + (minVal + random.nextInt(maxVal - minVal));
+                case "$int":
+                    min = Integer.parseInt(definitionParts[1]);
+                    max = Integer.parseInt(definitionParts[2]);
+                    return min + random.nextInt(max - min);
+                case "$choice":
+                    String[] choices = definitionParts[1].split("\\|");
+                    return choices[random.nextInt(choices.length)];
+                case "$double":
+                    return random.nextDouble();
+            }
+        }
+        return fieldDefinition;
+    }
+}
@@ -0,0 +1,52 @@
+package com.caffinc.jaggr.bench;
+
+import com.caffinc.jaggr.core.Aggregation;
+import com.caffinc.jaggr.core.AggregationBuilder;
+import com.caffinc.jaggr.core.operations.AverageOperation;
+import com.caffinc.jaggr.core.operations.CountOperation;
+import com.caffinc.jaggr.core.operations.SumOperation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures grouping on fields of low (<code>sex</code>, 2 groups), medium (<code>age</code>, 89 groups) and high
+ * (<code>name</code>, up to 90000 groups) cardinality
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupByBenchmark {
+    @Param({"100000"})
+    private int documentCount;
+
+    @Param({"sex", "age", "name"})
+    private String groupBy;
+
+    private List<Map<String, Object>> documents;
+    private Aggregation aggregation;
+
+    @Setup
+    public void setup() {
+        documents = new DocumentGenerator(DocumentGenerator.getFieldDefinitions(), 0).generate(documentCount);
+        aggregation = new AggregationBuilder()
+                .setGroupBy(groupBy)
+                .addOperation("sum", new SumOperation("appeal"))
+                .addOperation("avg", new AverageOperation("salary"))
+                .addOperation("count", new CountOperation())
+                .getAggregation();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> aggregate() {
+        return aggregation.aggregate(documents);
+    }
+}
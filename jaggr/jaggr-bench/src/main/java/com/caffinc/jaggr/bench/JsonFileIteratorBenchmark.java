@@ -0,0 +1,57 @@
+package com.caffinc.jaggr.bench;
+
+import com.caffinc.jaggr.utils.JsonFileIterator;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing documents with the <code>JsonFileIterator</code>, reading either every field or only the two an
+ * aggregation would need
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonFileIteratorBenchmark {
+    @Param({"10000"})
+    private int documentCount;
+
+    @Param({"false", "true"})
+    private boolean projected;
+
+    private String json;
+    private List<String> fields;
+
+    @Setup
+    public void setup() {
+        Gson gson = new Gson();
+        StringBuilder builder = new StringBuilder();
+        for (Map<String, Object> document :
+                new DocumentGenerator(DocumentGenerator.getFieldDefinitions(), 0).generate(documentCount)) {
+            builder.append(gson.toJson(document)).append('\n');
+        }
+        json = builder.toString();
+        fields = projected ? Arrays.asList("sex", "appeal") : null;
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        try (JsonFileIterator iterator = new JsonFileIterator(new StringReader(json), fields)) {
+            while (iterator.hasNext()) {
+                blackhole.consume(iterator.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.caffinc.jaggr.bench;
+
+import com.caffinc.jaggr.core.Aggregation;
+import com.caffinc.jaggr.core.AggregationBuilder;
+import com.caffinc.jaggr.core.operations.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each operation on its own, aggregating every document into a single group
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationBenchmark {
+    @Param({"100000"})
+    private int documentCount;
+
+    @Param({"sum", "min", "max", "avg", "stddev", "count", "first", "last", "collect", "collectSet", "distinctCount", "percentile", "heavyHitters", "topN", "topNNumber"})
+    private String operation;
+
+    private List<Map<String, Object>> documents;
+    private Aggregation aggregation;
+
+    @Setup
+    public void setup() {
+        documents = new DocumentGenerator(DocumentGenerator.getFieldDefinitions(), 0).generate(documentCount);
+        aggregation = new AggregationBuilder()
+                .addOperation(operation, createOperation(operation))
+                .getAggregation();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> aggregate() {
+        return aggregation.aggregate(documents);
+    }
+
+    private static Operation createOperation(String operation) {
+        switch (operation) {
+            case "sum":
+                return new SumOperation("appeal");
+            case "min":
+                return new MinOperation("age");
+            case "max":
+                return new MaxOperation("age");
+            case "avg":
+                return new AverageOperation("age");
+            case "stddev":
+                return new StdDevPopOperation("age");
+            case "count":
+                return new CountOperation();
+            case "first":
+                return new FirstObjectOperation("_id");
+            case "last":
+                return new LastObjectOperation("_id");
+            case "collect":
+                return new CollectOperation("age");
+            case "collectSet":
+                return new CollectSetOperation("age");
+            case "distinctCount":
+                return new DistinctCountOperation("name");
+            case "percentile":
+                return new PercentileOperation("appeal", Arrays.asList(0.5, 0.95, 0.99));
+            case "heavyHitters":
+                return new HeavyHittersOperation("age", 10);
+            case "topN":
+                return new TopNOperation<>("salary", 10, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer o1, Integer o2) {
+                        return o1.compareTo(o2);
+                    }
+                });
+            case "topNNumber":
+                return new TopNNumberOperation("salary", 10);
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+}
@@ -1,15 +1,14 @@
 package com.caffinc.jaggr.utils;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.*;
 
 /**
  * Iterates a JSON file
@@ -19,7 +18,13 @@ import java.util.NoSuchElementException;
  */
 public class JsonFileIterator implements Iterator<Map<String, Object>>, Closeable {
     private final BufferedReader bufferedReader;
+    private final JsonProjection projection;
+    private final JsonReader jsonReader;
+    private final JsonFilter filter;
+    private final JsonProjection filterProjection;
+    private final boolean filterReadsFields;
     private String cachedLine;
+    private Map<String, Object> cachedObject;
     private boolean finished = false;
     private Gson gson = new Gson();
 
@@ -30,7 +35,36 @@ public class JsonFileIterator implements Iterator<Map<String, Object>>, Closeabl
      * @throws IOException thrown if there is a problem accessing the file
      */
     public JsonFileIterator(final String fileName) throws IOException {
-        this(Files.newBufferedReader(Paths.get(fileName), Charset.defaultCharset()));
+        this(fileName, null);
+    }
+
+    /**
+     * Constructs an iterator of the objects for a <code>fileName</code>, reading only the given fields of each.
+     *
+     * @param fileName the <code>fileName</code> to read from
+     * @param fields   the fields to read, such as those returned by <code>Aggregation.getRequiredFields()</code>,
+     *                 or null to read every field
+     * @throws IOException thrown if there is a problem accessing the file
+     * @see #JsonFileIterator(Reader, Collection)
+     */
+    public JsonFileIterator(final String fileName, final Collection<String> fields) throws IOException {
+        this(fileName, fields, null);
+    }
+
+    /**
+     * Constructs an iterator of the objects for a <code>fileName</code> accepted by a filter, reading only the
+     * given fields of each.
+     *
+     * @param fileName the <code>fileName</code> to read from
+     * @param fields   the fields to read, such as those returned by <code>Aggregation.getRequiredFields()</code>,
+     *                 or null to read every field
+     * @param filter   the filter objects must pass to be read, or null to read every object
+     * @throws IOException thrown if there is a problem accessing the file
+     * @see #JsonFileIterator(Reader, Collection, JsonFilter)
+     */
+    public JsonFileIterator(final String fileName, final Collection<String> fields, final JsonFilter filter)
+            throws IOException {
+        this(Files.newBufferedReader(Paths.get(fileName), Charset.defaultCharset()), fields, filter);
     }
 
     /**
@@ -40,6 +74,41 @@ public class JsonFileIterator implements Iterator<Map<String, Object>>, Closeabl
      * @throws IllegalArgumentException if the reader is null
      */
     public JsonFileIterator(final Reader reader) throws IllegalArgumentException {
+        this(reader, null);
+    }
+
+    /**
+     * Constructs an iterator of the objects for a <code>Reader</code>, reading only the given fields of each.
+     * <p>
+     * When fields are given, objects are streamed straight from the <code>Reader</code> without first reading
+     * them into lines, and all other fields are skipped over without being parsed. Blank lines are skipped.
+     *
+     * @param reader the <code>Reader</code> to read from, not null
+     * @param fields the fields to read, such as those returned by <code>Aggregation.getRequiredFields()</code>,
+     *               or null to read every field
+     * @throws IllegalArgumentException if the reader is null
+     */
+    public JsonFileIterator(final Reader reader, final Collection<String> fields) throws IllegalArgumentException {
+        this(reader, fields, null);
+    }
+
+    /**
+     * Constructs an iterator of the objects for a <code>Reader</code> accepted by a filter, reading only the given
+     * fields of each.
+     * <p>
+     * With a filter, each line must hold a single object. Only the fields the filter depends on are parsed from
+     * each line at first, skipping over the rest, and lines the filter rejects are dropped without parsing
+     * anything else. The fields to read are then parsed from the accepted lines, or reused if the filter already
+     * read them all. Blank lines are skipped.
+     *
+     * @param reader the <code>Reader</code> to read from, not null
+     * @param fields the fields to read, such as those returned by <code>Aggregation.getRequiredFields()</code>,
+     *               or null to read every field
+     * @param filter the filter objects must pass to be read, or null to read every object
+     * @throws IllegalArgumentException if the reader is null
+     */
+    public JsonFileIterator(final Reader reader, final Collection<String> fields, final JsonFilter filter)
+            throws IllegalArgumentException {
         if (reader == null) {
             throw new IllegalArgumentException("Reader must not be null");
         }
@@ -48,6 +117,17 @@ public class JsonFileIterator implements Iterator<Map<String, Object>>, Closeabl
         } else {
             bufferedReader = new BufferedReader(reader);
         }
+        this.filter = filter;
+        this.filterProjection = filter != null ? new JsonProjection(filter.getFields()) : null;
+        this.filterReadsFields = filter != null && fields != null && filter.getFields().containsAll(fields);
+        projection = fields != null ? new JsonProjection(fields) : null;
+        if (fields != null && filter == null) {
+            jsonReader = new JsonReader(bufferedReader);
+            // Allows a sequence of objects rather than a single one
+            jsonReader.setLenient(true);
+        } else {
+            jsonReader = null;
+        }
     }
 
     /**
@@ -59,10 +139,45 @@ public class JsonFileIterator implements Iterator<Map<String, Object>>, Closeabl
      * @throws IllegalStateException if an IO exception occurs
      */
     public boolean hasNext() {
-        if (cachedLine != null) {
+        if (cachedLine != null || cachedObject != null) {
             return true;
         } else if (finished) {
             return false;
+        } else if (filter != null) {
+            try {
+                String line;
+                while ((line = bufferedReader.readLine()) != null) {
+                    if (line.trim().isEmpty())
+                        continue;
+                    Map<String, Object> filterObject = filterProjection.read(new JsonReader(new StringReader(line)));
+                    if (!filter.accept(filterObject))
+                        continue;
+                    if (filterReadsFields)
+                        cachedObject = filterObject;
+                    else if (projection != null)
+                        cachedObject = projection.read(new JsonReader(new StringReader(line)));
+                    else
+                        cachedLine = line;
+                    return true;
+                }
+                finished = true;
+                return false;
+            } catch (final IOException ioe) {
+                close();
+                throw new IllegalStateException(ioe);
+            }
+        } else if (projection != null) {
+            try {
+                if (jsonReader.peek() == JsonToken.END_DOCUMENT) {
+                    finished = true;
+                    return false;
+                }
+                cachedObject = projection.read(jsonReader);
+                return true;
+            } catch (final IOException ioe) {
+                close();
+                throw new IllegalStateException(ioe);
+            }
         } else {
             try {
                 final String line = bufferedReader.readLine();
@@ -99,6 +214,11 @@ public class JsonFileIterator implements Iterator<Map<String, Object>>, Closeabl
         if (!hasNext()) {
             throw new NoSuchElementException("No more objects");
         }
+        if (cachedObject != null) {
+            final Map<String, Object> currentObject = cachedObject;
+            cachedObject = null;
+            return currentObject;
+        }
         final String currentLine = cachedLine;
         cachedLine = null;
         return gson.fromJson(currentLine, HashMap.class);
@@ -119,6 +239,7 @@ public class JsonFileIterator implements Iterator<Map<String, Object>>, Closeabl
             // ignore
         }
         cachedLine = null;
+        cachedObject = null;
     }
 
     /**
@@ -0,0 +1,28 @@
+package com.caffinc.jaggr.utils;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A condition on JSON objects which readers can check while parsing, reading just the fields it needs before
+ * deciding whether to parse the rest of each object
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public interface JsonFilter {
+    /**
+     * Gets the fields the condition depends on
+     *
+     * @return Dot separated fields, such as those returned by <code>Aggregation.getMatchFields()</code>
+     */
+    Collection<String> getFields();
+
+    /**
+     * Checks whether an object satisfies the condition
+     *
+     * @param object Object holding only the fields returned by <code>getFields()</code>
+     * @return Whether the object should be read
+     */
+    boolean accept(Map<String, Object> object);
+}
@@ -0,0 +1,136 @@
+package com.caffinc.jaggr.utils;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Reads only the given fields of JSON objects from a streaming <code>JsonReader</code>. Every other field is
+ * skipped without being converted into Java objects, which is considerably cheaper than parsing whole objects
+ * when only a few of their fields are needed.
+ * <p>
+ * Values are converted like Gson converts them into a <code>HashMap</code>: numbers become <code>Double</code>,
+ * objects become <code>Map</code> and arrays become <code>List</code>.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class JsonProjection {
+    private final Node root = new Node();
+
+    /**
+     * Constructs a projection of the given fields
+     *
+     * @param fields Dot separated fields to read, such as <code>a.b.c</code>. Reading a field reads all of its
+     *               nested fields.
+     * @throws IllegalArgumentException if the fields are null
+     */
+    public JsonProjection(Collection<String> fields) {
+        if (fields == null) {
+            throw new IllegalArgumentException("Fields must not be null");
+        }
+        for (String field : fields) {
+            Node node = root;
+            for (String segment : field.split("\\.")) {
+                if (node.whole)
+                    break;
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            node.whole = true;
+            node.children.clear();
+        }
+    }
+
+    /**
+     * Reads the next JSON object from the reader, keeping only the projected fields
+     *
+     * @param reader Reader positioned at the start of an object
+     * @return Projected object
+     * @throws IOException if the input can't be read or isn't a JSON object
+     */
+    public Map<String, Object> read(JsonReader reader) throws IOException {
+        return readObject(reader, root);
+    }
+
+    private static Map<String, Object> readObject(JsonReader reader, Node node) throws IOException {
+        Map<String, Object> object = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            Node child = node.children.get(name);
+            if (child == null) {
+                reader.skipValue();
+            } else if (child.whole) {
+                object.put(name, readValue(reader));
+            } else {
+                switch (reader.peek()) {
+                    case BEGIN_OBJECT:
+                        object.put(name, readObject(reader, child));
+                        break;
+                    case NULL:
+                        reader.nextNull();
+                        object.put(name, null);
+                        break;
+                    default:
+                        // Not an object, so none of the nested fields exist
+                        reader.skipValue();
+                }
+            }
+        }
+        reader.endObject();
+        return object;
+    }
+
+    /**
+     * Reads the next value from the reader in its entirety
+     *
+     * @param reader Reader positioned at the start of a value
+     * @return Value
+     * @throws IOException if the input can't be read
+     */
+    static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new HashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    object.put(reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                List<Object> array = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.add(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return reader.nextDouble();
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                throw new IllegalStateException("Unexpected " + reader.peek() + " in JSON");
+        }
+    }
+
+    /**
+     * A field name at one level of nesting
+     */
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean whole;
+    }
+}
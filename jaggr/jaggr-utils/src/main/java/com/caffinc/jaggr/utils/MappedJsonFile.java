@@ -0,0 +1,199 @@
+package com.caffinc.jaggr.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Memory maps a file of JSON objects, one per line, and splits it into partitions that can be parsed
+ * independently of each other, for example on separate threads. Partitions always start at the beginning of a
+ * line, so every object belongs to exactly one partition.
+ * <p>
+ * The file is read as UTF-8.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class MappedJsonFile implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long MAPPING_SIZE = 1L << 28;
+    private final FileChannel channel;
+    private final long size;
+
+    /**
+     * Opens a file for reading
+     *
+     * @param fileName the <code>fileName</code> to read from
+     * @throws IOException thrown if there is a problem accessing the file
+     */
+    public MappedJsonFile(final String fileName) throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    /**
+     * Splits the file into partitions of roughly equal size
+     *
+     * @param partitionCount the number of partitions to split the file into
+     * @return Partitions of the file in the order they appear in it. There may be fewer partitions than requested
+     * if the file has fewer lines.
+     * @throws IOException thrown if there is a problem accessing the file
+     */
+    public List<Iterable<Map<String, Object>>> split(final int partitionCount) throws IOException {
+        return split(partitionCount, null);
+    }
+
+    /**
+     * Splits the file into partitions of roughly equal size, which only read the given fields of each object
+     *
+     * @param partitionCount the number of partitions to split the file into
+     * @param fields         the fields to read, such as those returned by
+     *                       <code>Aggregation.getRequiredFields()</code>, or null to read every field
+     * @return Partitions of the file in the order they appear in it. There may be fewer partitions than requested
+     * if the file has fewer lines.
+     * @throws IOException thrown if there is a problem accessing the file
+     */
+    public List<Iterable<Map<String, Object>>> split(final int partitionCount, final Collection<String> fields)
+            throws IOException {
+        return split(partitionCount, fields, null);
+    }
+
+    /**
+     * Splits the file into partitions of roughly equal size, which only read the given fields of the objects
+     * accepted by a filter
+     *
+     * @param partitionCount the number of partitions to split the file into
+     * @param fields         the fields to read, such as those returned by
+     *                       <code>Aggregation.getRequiredFields()</code>, or null to read every field
+     * @param filter         the filter objects must pass to be read, or null to read every object
+     * @return Partitions of the file in the order they appear in it. There may be fewer partitions than requested
+     * if the file has fewer lines.
+     * @throws IOException thrown if there is a problem accessing the file
+     * @see JsonFileIterator#JsonFileIterator(Reader, Collection, JsonFilter)
+     */
+    public List<Iterable<Map<String, Object>>> split(final int partitionCount, final Collection<String> fields,
+                                                     final JsonFilter filter) throws IOException {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("There must be at least one partition");
+        }
+        List<Iterable<Map<String, Object>>> partitions = new ArrayList<>(partitionCount);
+        long start = 0;
+        for (int i = 1; i <= partitionCount && start < size; i++) {
+            long end = i == partitionCount ? size : nextLineStart(size / partitionCount * i);
+            if (end > start) {
+                partitions.add(new Partition(start, end, fields, filter));
+                start = end;
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Finds the start of the first line beginning at or after the given position
+     *
+     * @param position Position in the file
+     * @return Position just after the first newline at or after <code>position - 1</code>, or the size of the file
+     * @throws IOException thrown if there is a problem accessing the file
+     */
+    private long nextLineStart(long position) throws IOException {
+        if (position <= 0)
+            return 0;
+        long offset = position - 1;
+        while (offset < size) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(MAPPING_SIZE, size - offset));
+            while (buffer.hasRemaining()) {
+                if (buffer.get() == '\n')
+                    return offset + buffer.position();
+            }
+            offset += buffer.limit();
+        }
+        return size;
+    }
+
+    /**
+     * Closes the underlying file. Partitions can't be read once the file is closed.
+     *
+     * @throws IOException thrown if there is a problem closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A range of whole lines in the file
+     */
+    private class Partition implements Iterable<Map<String, Object>> {
+        private final long start;
+        private final long end;
+        private final Collection<String> fields;
+        private final JsonFilter filter;
+
+        Partition(long start, long end, Collection<String> fields, JsonFilter filter) {
+            this.start = start;
+            this.end = end;
+            this.fields = fields;
+            this.filter = filter;
+        }
+
+        @Override
+        public Iterator<Map<String, Object>> iterator() {
+            return new JsonFileIterator(new InputStreamReader(new MappedInputStream(start, end), UTF_8), fields,
+                    filter);
+        }
+    }
+
+    /**
+     * Reads a range of the file through memory mappings of at most <code>MAPPING_SIZE</code> bytes each
+     */
+    private class MappedInputStream extends InputStream {
+        private long position;
+        private final long end;
+        private MappedByteBuffer buffer;
+
+        MappedInputStream(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        private boolean ensureMapped() throws IOException {
+            if (buffer != null && buffer.hasRemaining())
+                return true;
+            if (position >= end)
+                return false;
+            long length = Math.min(MAPPING_SIZE, end - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return ensureMapped() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (!ensureMapped())
+                return -1;
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+    }
+}
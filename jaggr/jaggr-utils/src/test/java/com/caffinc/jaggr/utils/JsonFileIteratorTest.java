@@ -47,4 +47,103 @@ public class JsonFileIteratorTest {
             Files.delete(tempFilePath);
         }
     }
+
+    @Test
+    public void testJsonFileIteratorProjection() throws Exception {
+        Path tempFilePath = Paths.get(TEMP_DIR, "jsontest" + RANDOM.nextInt() + ".json");
+        try {
+            List<Map<String, Object>> expectedData = new ArrayList<>();
+            try (BufferedWriter br = new BufferedWriter(new FileWriter(tempFilePath.toFile()))
+            ) {
+                for (int i = 0; i < 10; i++) {
+                    Map<String, Object> nested = new HashMap<>();
+                    nested.put("a", (double) i);
+                    nested.put("b", "skipped");
+                    Map<String, Object> json = new HashMap<>();
+                    json.put("_id", (double) i);
+                    json.put("val", RANDOM.nextDouble());
+                    json.put("list", Arrays.asList(1, 2, 3));
+                    json.put("nested", i % 2 == 0 ? nested : "not nested");
+                    br.write(GSON.toJson(json) + "\n");
+
+                    Map<String, Object> expected = new HashMap<>();
+                    expected.put("_id", (double) i);
+                    expected.put("list", Arrays.asList(1.0, 2.0, 3.0));
+                    if (i % 2 == 0)
+                        expected.put("nested", Collections.singletonMap("a", (double) i));
+                    expectedData.add(expected);
+                }
+            }
+            try (JsonFileIterator jsonFileIterator = new JsonFileIterator(tempFilePath.toString(),
+                    Arrays.asList("_id", "list", "nested.a", "missing.field"))) {
+                for (Map<String, Object> expected : expectedData) {
+                    Assert.assertTrue("Iterator should have as many objects as the file", jsonFileIterator.hasNext());
+                    Map<String, Object> actual = jsonFileIterator.next();
+                    Assert.assertEquals("Projected value should only hold the projected fields", expected, actual);
+                }
+                Assert.assertFalse("Iterator should have no more objects than the file", jsonFileIterator.hasNext());
+            }
+        } finally {
+            Files.delete(tempFilePath);
+        }
+    }
+
+    @Test
+    public void testJsonFileIteratorFilter() throws Exception {
+        Path tempFilePath = Paths.get(TEMP_DIR, "jsontest" + RANDOM.nextInt() + ".json");
+        try {
+            List<Map<String, Object>> data = new ArrayList<>();
+            try (BufferedWriter br = new BufferedWriter(new FileWriter(tempFilePath.toFile()))
+            ) {
+                for (int i = 0; i < 10; i++) {
+                    Map<String, Object> json = new HashMap<>();
+                    json.put("_id", (double) i);
+                    json.put("even", i % 2 == 0);
+                    json.put("val", RANDOM.nextDouble());
+                    data.add(json);
+                    br.write(GSON.toJson(json) + "\n\n");
+                }
+            }
+            final List<Map<String, Object>> filtered = new ArrayList<>();
+            JsonFilter filter = new JsonFilter() {
+                @Override
+                public Collection<String> getFields() {
+                    return Collections.singletonList("even");
+                }
+
+                @Override
+                public boolean accept(Map<String, Object> object) {
+                    filtered.add(object);
+                    return (Boolean) object.get("even");
+                }
+            };
+            for (Collection<String> fields : Arrays.asList(null, Collections.singletonList("_id"),
+                    Collections.singletonList("even"))) {
+                filtered.clear();
+                List<Map<String, Object>> actual = new ArrayList<>();
+                try (JsonFileIterator jsonFileIterator = new JsonFileIterator(tempFilePath.toString(), fields,
+                        filter)) {
+                    while (jsonFileIterator.hasNext())
+                        actual.add(jsonFileIterator.next());
+                }
+                List<Map<String, Object>> expected = new ArrayList<>();
+                for (Map<String, Object> json : data) {
+                    if ((Boolean) json.get("even")) {
+                        Map<String, Object> projected = new HashMap<>(json);
+                        if (fields != null)
+                            projected.keySet().retainAll(fields);
+                        expected.add(projected);
+                    }
+                }
+                Assert.assertEquals("Only objects accepted by the filter should be read", expected, actual);
+                Assert.assertEquals("Filter should see every object", data.size(), filtered.size());
+                for (Map<String, Object> object : filtered) {
+                    Assert.assertEquals("Filter should only see the fields it needs", Collections.singleton("even"),
+                            object.keySet());
+                }
+            }
+        } finally {
+            Files.delete(tempFilePath);
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package com.caffinc.jaggr.utils;
+
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Tests for the MappedJsonFile
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class MappedJsonFileTest {
+    private static final String TEMP_DIR = System.getProperty("java.io.tmpdir");
+    private static final Random RANDOM = new Random();
+    private static final Gson GSON = new Gson();
+
+    @Test
+    public void testSplit() throws Exception {
+        Path tempFilePath = Paths.get(TEMP_DIR, "jsontest" + RANDOM.nextInt() + ".json");
+        try {
+            List<Map<String, Object>> expectedData = new ArrayList<>();
+            try (BufferedWriter br = Files.newBufferedWriter(tempFilePath, Charset.forName("UTF-8"))) {
+                for (int i = 0; i < 1000; i++) {
+                    Map<String, Object> json = new HashMap<>();
+                    json.put("_id", (double) i);
+                    json.put("val", RANDOM.nextDouble());
+                    json.put("text", "\u00e9t\u00e9 " + RANDOM.nextInt());
+                    expectedData.add(json);
+                    br.write(GSON.toJson(json) + "\n");
+                }
+            }
+            try (MappedJsonFile mappedJsonFile = new MappedJsonFile(tempFilePath.toString())) {
+                for (int partitionCount : new int[]{1, 2, 7, 5000}) {
+                    List<Iterable<Map<String, Object>>> partitions = mappedJsonFile.split(partitionCount);
+                    Assert.assertTrue("There should be no more partitions than requested or lines",
+                            partitions.size() <= Math.min(partitionCount, expectedData.size()));
+                    List<Map<String, Object>> actualData = new ArrayList<>();
+                    for (Iterable<Map<String, Object>> partition : partitions) {
+                        for (Map<String, Object> actual : partition) {
+                            actualData.add(actual);
+                        }
+                    }
+                    Assert.assertEquals("Partitions should hold every line of the file once, in order",
+                            expectedData, actualData);
+                }
+
+                List<Map<String, Object>> projectedData = new ArrayList<>();
+                for (Iterable<Map<String, Object>> partition : mappedJsonFile.split(3, Collections.singleton("_id"))) {
+                    for (Map<String, Object> actual : partition) {
+                        projectedData.add(actual);
+                    }
+                }
+                Assert.assertEquals("Projected partitions should hold every line", expectedData.size(),
+                        projectedData.size());
+                for (int i = 0; i < expectedData.size(); i++) {
+                    Assert.assertEquals("Projected value should only hold the projected fields",
+                            Collections.singletonMap("_id", expectedData.get(i).get("_id")), projectedData.get(i));
+                }
+            }
+        } finally {
+            Files.delete(tempFilePath);
+        }
+    }
+
+    @Test
+    public void testSplitEmptyFile() throws Exception {
+        Path tempFilePath = Paths.get(TEMP_DIR, "jsontest" + RANDOM.nextInt() + ".json");
+        try {
+            Files.createFile(tempFilePath);
+            try (MappedJsonFile mappedJsonFile = new MappedJsonFile(tempFilePath.toString())) {
+                Assert.assertTrue("An empty file should have no partitions", mappedJsonFile.split(4).isEmpty());
+            }
+        } finally {
+            Files.delete(tempFilePath);
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package com.caffinc.jaggr.core;
 
+import com.caffinc.jaggr.core.expressions.Expression;
 import com.caffinc.jaggr.core.operations.Operation;
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
+import com.caffinc.jaggr.utils.JsonFilter;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Aggregates list or iterators of JSON objects based on aggregation operations
@@ -12,14 +19,86 @@ import java.util.*;
  * @since 11/26/2016
  */
 public class Aggregation {
-    private String _id;
-    private String[] idSplit;
+    private static final int PARALLEL_CHUNK_SIZE = 4096;
+    private String[] _id;
+    private String[][] groupingSets;
     private Map<String, Operation> operationMap;
+    private Aggregator aggregator;
+    private ResultPipeline pipeline;
+    private int maxGroupsInMemory;
+    private File spillDirectory;
 
-    Aggregation(String _id, Map<String, Operation> operationMap) {
+    Aggregation(String[] _id, Map<String, Operation> operationMap) {
+        this(_id, null, Collections.<String, Expression>emptyMap(), Collections.<Expression>emptyList(),
+                operationMap, ResultPipeline.Stages.NONE, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Constructs a new Aggregation which spills groups to disk once it holds more than the given number in memory
+     *
+     * @param _id               Fields to group data on
+     * @param groupingSets      Sets of fields to group data on, each forming its own groups, or null
+     * @param computedFields    Expressions computing fields for the grouping and operations to use, keyed by name
+     * @param matches           Conditions objects must satisfy to be aggregated
+     * @param operationMap      Aggregation operations to perform
+     * @param stages            Stages to apply to the groups after grouping
+     * @param maxGroupsInMemory Number of groups to hold in memory before spilling them to disk
+     * @param spillDirectory    Directory to spill groups to, or null for the default temporary directory
+     */
+    Aggregation(String[] _id, String[][] groupingSets, Map<String, Expression> computedFields,
+                List<Expression> matches, Map<String, Operation> operationMap, ResultPipeline.Stages stages,
+                int maxGroupsInMemory, File spillDirectory) {
         this._id = _id;
-        this.idSplit = _id != null ? _id.split("\\.") : null;
+        this.groupingSets = groupingSets;
         this.operationMap = operationMap;
+        this.aggregator = new Aggregator(_id, groupingSets, computedFields, matches, operationMap, false);
+        this.pipeline = new ResultPipeline(aggregator, stages);
+        this.maxGroupsInMemory = maxGroupsInMemory;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Gets the fields of a document used by this aggregation. Parsing just these fields from the input, for
+     * example with <code>JsonFileIterator</code>, gives the same result as parsing entire documents.
+     *
+     * @return Fields used, or null if an operation may use any field of the document
+     */
+    public Set<String> getRequiredFields() {
+        return aggregator.getRequiredFields();
+    }
+
+    /**
+     * Gets the fields of a document used by the matches of this aggregation, including those used to compute the
+     * computed fields they reference. Together with <code>matches()</code>, these allow a reader to check whether a
+     * document matches before parsing the rest of it.
+     *
+     * @return Fields used by the matches, empty if there are none
+     */
+    public Set<String> getMatchFields() {
+        return aggregator.getMatchFields();
+    }
+
+    /**
+     * Checks whether a document satisfies every match of this aggregation. Each call extracts the fields into a
+     * new buffer, so filters checking many documents should use <code>newFilter()</code> instead.
+     *
+     * @param object Document holding at least the fields returned by <code>getMatchFields()</code>
+     * @return Whether the document would be aggregated
+     */
+    public boolean matches(Map<String, Object> object) {
+        return aggregator.matchesFields(object, aggregator.newBuffer());
+    }
+
+    /**
+     * Creates a filter accepting the documents which satisfy every match of this aggregation, to push the matches
+     * down into parsing with <code>JsonFileIterator</code> or <code>MappedJsonFile</code>. The filter depends on
+     * the fields returned by <code>getMatchFields()</code> and extracts just those fields, into a buffer it reuses
+     * for every document a thread checks.
+     *
+     * @return Filter of the documents this aggregation aggregates
+     */
+    public JsonFilter newFilter() {
+        return new MatchFilter(aggregator);
     }
 
     /**
@@ -44,66 +123,355 @@ public class Aggregation {
      * @return aggregation result
      */
     public List<Map<String, Object>> aggregate(final Iterable<Map<String, Object>> objectList) {
-        Map<String, Map<String, Object>> workspace = new HashMap<>();
+        try (Run run = new Run()) {
+            if (objectList != null) {
+                for (Map<String, Object> object : objectList) {
+                    run.aggregate(object);
+                }
+            }
+            return run.computeResults();
+        }
+    }
+
+    /**
+     * Aggregates over an Iterator of JSON Objects using the threads of the given <code>ForkJoinPool</code>
+     *
+     * @param objectIterator JSON Object iterator
+     * @param pool           Pool to run the aggregation in
+     * @return aggregation result
+     * @see #aggregate(Iterable, ForkJoinPool)
+     */
+    public List<Map<String, Object>> aggregate(final Iterator<Map<String, Object>> objectIterator, ForkJoinPool pool) {
+        return aggregate(new Iterable<Map<String, Object>>() {
+            @Override
+            public Iterator<Map<String, Object>> iterator() {
+                return objectIterator;
+            }
+        }, pool);
+    }
+
+    /**
+     * Aggregates over an iterable list of JSON Objects using the threads of the given <code>ForkJoinPool</code>
+     * <p>
+     * The calling thread reads the input and splits it into chunks, each of which is aggregated into its own
+     * workspace by a task in the pool. Partial workspaces are merged in input order as the tasks complete, so
+     * at most twice the pool's parallelism in chunks is held in memory at any time.
+     *
+     * @param objectList Iterable list of JSON Objects
+     * @param pool       Pool to run the aggregation in
+     * @return aggregation result
+     */
+    public List<Map<String, Object>> aggregate(final Iterable<Map<String, Object>> objectList, ForkJoinPool pool) {
+        Map<Object, Object[]> workspace = new HashMap<>();
+        WorkspaceSpill spill = null;
         if (objectList != null) {
-            for (Map<String, Object> object : objectList) {
-                aggregate(object, workspace);
+            Deque<ForkJoinTask<Map<Object, Object[]>>> pendingTasks = new ArrayDeque<>();
+            int maxPendingTasks = pool.getParallelism() * 2;
+            try {
+                List<Map<String, Object>> chunk = new ArrayList<>(PARALLEL_CHUNK_SIZE);
+                for (Map<String, Object> object : objectList) {
+                    chunk.add(object);
+                    if (chunk.size() == PARALLEL_CHUNK_SIZE) {
+                        pendingTasks.add(pool.submit(new ChunkAggregationTask(chunk)));
+                        chunk = new ArrayList<>(PARALLEL_CHUNK_SIZE);
+                        if (pendingTasks.size() >= maxPendingTasks) {
+                            workspace = aggregator.merge(workspace, pendingTasks.poll().join());
+                            if (workspace.size() > maxGroupsInMemory) {
+                                spill = spill(workspace, spill);
+                                workspace = new HashMap<>();
+                            }
+                        }
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    pendingTasks.add(pool.submit(new ChunkAggregationTask(chunk)));
+                }
+                while (!pendingTasks.isEmpty()) {
+                    workspace = aggregator.merge(workspace, pendingTasks.poll().join());
+                    if (workspace.size() > maxGroupsInMemory) {
+                        spill = spill(workspace, spill);
+                        workspace = new HashMap<>();
+                    }
+                }
+                return computeResults(workspace, spill);
+            } finally {
+                // Only non-empty if a task or the input failed
+                for (ForkJoinTask<Map<Object, Object[]>> pendingTask : pendingTasks) {
+                    pendingTask.cancel(true);
+                }
+                if (spill != null)
+                    spill.close();
             }
         }
-        return computeResults(workspace);
+        return pipeline.apply(workspace);
     }
 
     /**
-     * Aggregates a single object into the workspace
+     * Aggregates over partitions of the input, each of which is read and aggregated by its own task in the given
+     * <code>ForkJoinPool</code>
+     * <p>
+     * Unlike {@link #aggregate(Iterable, ForkJoinPool)}, the input is read by the pool's threads rather than the
+     * calling thread, so this scales when reading and parsing the input is the bottleneck, such as with the
+     * partitions of a large file. Partial workspaces are merged in the order of the partitions, so the result is
+     * the same as aggregating the partitions one after another. Iterators that are <code>Closeable</code> are
+     * closed once they have been read.
+     * <p>
+     * If the aggregation may use the disk, each task spills the groups of its partition once it holds more than
+     * the allowed number, so up to that number of groups is held in memory by each task as well as by the
+     * calling thread.
      *
-     * @param object    Object to perform aggregations on
-     * @param workspace Workspace to hold temporary aggregation results in
-     */
-    private void aggregate(Map<String, Object> object, Map<String, Map<String, Object>> workspace) {
-        // Identify the ID of the document
-        String id = "0";
-        if (_id != null) {
-            id = String.valueOf(FieldValueExtractor.getValue(idSplit, object));
-        }
-        if (!workspace.containsKey(id)) {
-            Map<String, Object> groupWorkspace = new HashMap<>();
-            groupWorkspace.put("_id", id);
-            workspace.put(id, groupWorkspace);
-        }
-        // Get the workspace for the given ID
-        Map<String, Object> groupWorkspace = workspace.get(id);
-        for (Map.Entry<String, Operation> operationEntry : operationMap.entrySet()) {
-            // Get the key in the workspace
-            String field = operationEntry.getKey();
-            // Get the operation
-            Operation operation = operationEntry.getValue();
-            // Get the accumulated value in the workspace
-            Object t0 = groupWorkspace.get(field);
-            // Get the new value after performing the operation
-            Object t1 = operation.aggregate(t0, object);
-            // Write the result back in the workspace
-            groupWorkspace.put(field, t1);
-        }
-    }
-
-    /**
-     * Computes final results from the workspace
+     * @param partitions Partitions of the input, in order
+     * @param pool       Pool to run the aggregation in
+     * @return aggregation result
+     */
+    public List<Map<String, Object>> aggregatePartitions(
+            final Collection<? extends Iterable<Map<String, Object>>> partitions, ForkJoinPool pool) {
+        try (Run run = new Run()) {
+            if (partitions != null) {
+                Deque<ForkJoinTask<Run>> pendingTasks = new ArrayDeque<>();
+                try {
+                    for (Iterable<Map<String, Object>> partition : partitions) {
+                        pendingTasks.add(pool.submit(new PartitionAggregationTask(partition)));
+                    }
+                    while (!pendingTasks.isEmpty()) {
+                        run.append(pendingTasks.poll().join());
+                    }
+                } finally {
+                    // Only non-empty if a task failed
+                    for (ForkJoinTask<Run> pendingTask : pendingTasks) {
+                        pendingTask.cancel(true);
+                        if (pendingTask.isDone() && !pendingTask.isCompletedAbnormally())
+                            pendingTask.getRawResult().close();
+                    }
+                }
+            }
+            return run.computeResults();
+        }
+    }
+
+    /**
+     * Spills the groups of a workspace to disk
+     *
+     * @param workspace Workspace to spill, which should be discarded afterwards
+     * @param spill     Spill holding the groups spilled so far, or null if none have been
+     * @return Spill holding the groups spilled so far
+     * @throws IllegalStateException if the groups could not be spilled
+     */
+    private WorkspaceSpill spill(Map<Object, Object[]> workspace, WorkspaceSpill spill) {
+        try {
+            if (spill == null)
+                spill = new WorkspaceSpill(aggregator, spillDirectory, maxGroupsInMemory);
+            spill.spill(workspace);
+            return spill;
+        } catch (IOException e) {
+            if (spill != null)
+                spill.close();
+            throw new IllegalStateException("Could not spill groups to disk", e);
+        }
+    }
+
+    /**
+     * Computes results from the workspace and any groups spilled before it
+     *
+     * @param workspace Workspace holding intermediate results
+     * @param spill     Spill holding the groups of earlier documents, or null if none were spilled
+     * @return Aggregation result
+     * @throws IllegalStateException if the spilled groups could not be read back
+     */
+    private List<Map<String, Object>> computeResults(Map<Object, Object[]> workspace, WorkspaceSpill spill) {
+        if (spill == null)
+            return pipeline.apply(workspace);
+        try {
+            return pipeline.finish(pipeline.combine(spill.computeResults(workspace, pipeline)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read spilled groups from disk", e);
+        }
+    }
+
+    /**
+     * Gets the aggregator applying the grouping and operations of this aggregation
+     *
+     * @return Aggregator
+     */
+    Aggregator getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * Computes the results of a workspace holding the groups of all the input, applying the stages following the
+     * grouping
      *
      * @param workspace Workspace holding intermediate results
-     * @return Final aggregation result
-     */
-    private List<Map<String, Object>> computeResults(Map<String, Map<String, Object>> workspace) {
-        List<Map<String, Object>> resultList = new ArrayList<>();
-        // Loop through all the values in the workspace map
-        for (Map<String, Object> groupWorkspace : workspace.values()) {
-            // Perform final result computation
-            for (Map.Entry<String, Operation> operationEntry : operationMap.entrySet()) {
-                String field = operationEntry.getKey();
-                Operation operation = operationEntry.getValue();
-                groupWorkspace.put(field, operation.result(groupWorkspace.get(field)));
+     * @return Aggregation result
+     */
+    List<Map<String, Object>> computeResults(Map<Object, Object[]> workspace) {
+        return pipeline.apply(workspace);
+    }
+
+    /**
+     * A sequential aggregation of objects given one at a time, spilling groups to disk as needed. A run must be
+     * closed once it is done with, to delete any files it spilled to.
+     */
+    final class Run implements Closeable {
+        private final Aggregator.Buffer buffer = aggregator.newBuffer();
+        private Map<Object, Object[]> workspace = new HashMap<>();
+        private WorkspaceSpill spill = null;
+
+        /**
+         * Aggregates a single object
+         *
+         * @param object Object to aggregate
+         */
+        void aggregate(Map<String, Object> object) {
+            aggregator.aggregate(object, workspace, buffer);
+            if (workspace.size() > maxGroupsInMemory) {
+                spill = spill(workspace, spill);
+                workspace = new HashMap<>();
+            }
+        }
+
+        /**
+         * Moves the groups of another run of this aggregation into this one, as though its objects were aggregated
+         * after those aggregated here so far. The other run is closed.
+         *
+         * @param later Run over the objects following those aggregated here
+         */
+        void append(Run later) {
+            try {
+                if (later.spill == null) {
+                    workspace = aggregator.merge(workspace, later.workspace);
+                    if (workspace.size() > maxGroupsInMemory) {
+                        spill = spill(workspace, spill);
+                        workspace = new HashMap<>();
+                    }
+                    return;
+                }
+                // The groups held here come before those spilled by the later run, which come before those it
+                // still holds
+                spill = spill(workspace, spill);
+                spill.append(later.spill);
+                workspace = later.workspace;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not spill groups to disk", e);
+            } finally {
+                later.workspace = null;
+                later.close();
+            }
+        }
+
+        /**
+         * Computes the result of the objects aggregated so far
+         *
+         * @return Aggregation result
+         */
+        List<Map<String, Object>> computeResults() {
+            return Aggregation.this.computeResults(workspace, spill);
+        }
+
+        @Override
+        public void close() {
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+        }
+    }
+
+    /**
+     * Checks the matches of an aggregation over the fields parsed by a reader. Readers such as the partitions of a
+     * <code>MappedJsonFile</code> may share a filter across threads, so each thread gets a buffer of its own. The
+     * filter doesn't reference the threads, and their buffers can be collected once the filter is.
+     */
+    private static final class MatchFilter implements JsonFilter {
+        private final Aggregator aggregator;
+        private final ThreadLocal<Aggregator.Buffer> buffers;
+
+        MatchFilter(final Aggregator aggregator) {
+            this.aggregator = aggregator;
+            this.buffers = new ThreadLocal<Aggregator.Buffer>() {
+                @Override
+                protected Aggregator.Buffer initialValue() {
+                    return aggregator.newBuffer();
+                }
+            };
+        }
+
+        @Override
+        public Collection<String> getFields() {
+            return aggregator.getMatchFields();
+        }
+
+        @Override
+        public boolean accept(Map<String, Object> object) {
+            return aggregator.matchesFields(object, buffers.get());
+        }
+    }
+
+    /**
+     * Aggregates a chunk of the input into a workspace of its own
+     */
+    private class ChunkAggregationTask extends RecursiveTask<Map<Object, Object[]>> {
+        private static final long serialVersionUID = 1L;
+        private final Iterable<Map<String, Object>> chunk;
+
+        ChunkAggregationTask(Iterable<Map<String, Object>> chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected Map<Object, Object[]> compute() {
+            Map<Object, Object[]> workspace = new HashMap<>();
+            Aggregator.Buffer buffer = aggregator.newBuffer();
+            Iterator<Map<String, Object>> iterator = chunk.iterator();
+            try {
+                while (iterator.hasNext()) {
+                    aggregator.aggregate(iterator.next(), workspace, buffer);
+                }
+            } finally {
+                if (iterator instanceof Closeable) {
+                    try {
+                        ((Closeable) iterator).close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+            return workspace;
+        }
+    }
+
+    /**
+     * Aggregates a partition of the input into a run of its own, spilling groups to disk as needed
+     */
+    private class PartitionAggregationTask extends RecursiveTask<Run> {
+        private static final long serialVersionUID = 1L;
+        private final Iterable<Map<String, Object>> partition;
+
+        PartitionAggregationTask(Iterable<Map<String, Object>> partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        protected Run compute() {
+            Run run = new Run();
+            Iterator<Map<String, Object>> iterator = partition.iterator();
+            try {
+                while (iterator.hasNext()) {
+                    run.aggregate(iterator.next());
+                }
+            } catch (RuntimeException | Error e) {
+                run.close();
+                throw e;
+            } finally {
+                if (iterator instanceof Closeable) {
+                    try {
+                        ((Closeable) iterator).close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
             }
-            resultList.add(groupWorkspace);
+            return run;
         }
-        return resultList;
     }
 }
@@ -1,11 +1,11 @@
 package com.caffinc.jaggr.core;
 
 
+import com.caffinc.jaggr.core.expressions.Expression;
 import com.caffinc.jaggr.core.operations.Operation;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.util.*;
 
 /**
  * Builder for Aggregations
@@ -14,17 +14,167 @@ import java.util.Map;
  * @since 11/26/2016
  */
 public class AggregationBuilder {
-    private String _id = null;
+    private String[] _id = null;
+    private String[][] groupingSets = null;
+    private Map<String, Expression> computedFields = new LinkedHashMap<>();
+    private List<Expression> matches = new ArrayList<>();
     private Map<String, Operation> operationMap = new HashMap<>();
+    private List<Expression> havings = new ArrayList<>();
+    private Map<String, Boolean> sortFields = new LinkedHashMap<>();
+    private int limit = Integer.MAX_VALUE;
+    private Map<String, Expression> projections = new LinkedHashMap<>();
+    private AggregationBuilder next = null;
+    private int maxGroupsInMemory = Integer.MAX_VALUE;
+    private File spillDirectory = null;
 
     /**
-     * Sets the field to group the aggregation by. If field is not set, all documents are grouped together.
+     * Sets the fields to group the aggregation by. If no field is set, all documents are grouped together.
+     * <p>
+     * Documents are grouped by the value of the field as is, so values of different types such as <code>1</code>
+     * and <code>"1"</code> form separate groups, and the <code>_id</code> of each result keeps the type of the
+     * value. Documents missing the field are grouped under a <code>null</code> <code>_id</code>.
+     * <p>
+     * When more than one field is set, documents are grouped by the combination of their values, and the
+     * <code>_id</code> of each result is a sub-document mapping each field to its value.
+     * <p>
+     * This replaces any grouping sets set previously.
      *
-     * @param field Grouping Field
+     * @param fields Grouping Fields
      * @return <code>this</code>
      */
-    public AggregationBuilder setGroupBy(String field) {
-        _id = field;
+    public AggregationBuilder setGroupBy(String... fields) {
+        groupingSets = null;
+        if (fields == null || fields.length == 0 || (fields.length == 1 && fields[0] == null)) {
+            _id = null;
+            return this;
+        }
+        for (String field : fields) {
+            if (field == null)
+                throw new IllegalArgumentException("Grouping fields must not be null");
+        }
+        _id = fields.clone();
+        return this;
+    }
+
+    /**
+     * Sets several sets of fields to group the aggregation by at once, like the <code>GROUPING SETS</code> of
+     * SQL. Every set forms its own groups, and each document is aggregated into one group of every set, from a
+     * single extraction of its fields, so that totals at several levels take a single pass over the data.
+     * <p>
+     * The <code>_id</code> of each result is a sub-document mapping each field of its set to its value, so
+     * <code>{"country": "IN"}</code> is the total of a country, and an empty set gives the grand total with an
+     * empty <code>_id</code>. This replaces any grouping fields set previously.
+     *
+     * @param sets Sets of grouping fields, each of which may be empty
+     * @return <code>this</code>
+     * @throws IllegalArgumentException if there are no sets, or a set or field is null
+     * @see #setRollup(String...)
+     */
+    public AggregationBuilder setGroupingSets(String[]... sets) {
+        if (sets == null || sets.length == 0)
+            throw new IllegalArgumentException("At least one grouping set is required");
+        String[][] groupingSets = new String[sets.length][];
+        for (int i = 0; i < sets.length; i++) {
+            if (sets[i] == null)
+                throw new IllegalArgumentException("Grouping sets must not be null");
+            for (String field : sets[i]) {
+                if (field == null)
+                    throw new IllegalArgumentException("Grouping fields must not be null");
+            }
+            groupingSets[i] = sets[i].clone();
+        }
+        this.groupingSets = groupingSets;
+        _id = null;
+        return this;
+    }
+
+    /**
+     * Groups the aggregation by every prefix of the given fields, like the <code>ROLLUP</code> of SQL. Rolling
+     * up <code>country</code> and <code>city</code> gives the totals of each city, of each country, and the grand
+     * total, in a single pass over the data.
+     *
+     * @param fields Grouping fields, from the coarsest to the finest
+     * @return <code>this</code>
+     * @see #setGroupingSets(String[]...)
+     */
+    public AggregationBuilder setRollup(String... fields) {
+        if (fields == null)
+            throw new IllegalArgumentException("Grouping fields must not be null");
+        String[][] sets = new String[fields.length + 1][];
+        for (int i = 0; i < sets.length; i++) {
+            sets[i] = Arrays.copyOf(fields, fields.length - i);
+        }
+        return setGroupingSets(sets);
+    }
+
+    /**
+     * Adds a field computed from each document by an expression, such as <code>salary * 0.3</code> or
+     * <code>age &gt; 30</code>, which can be grouped on or aggregated by field operations like any other field
+     * <p>
+     * The expression is compiled once, and evaluated over the field values the aggregation extracts from each
+     * document, without copying the document. It may reference the fields of the document and the computed fields
+     * added before it. A computed field hides a field of the document with the same name, though it may compute
+     * its value from that field. Operations which aren't field operations see the document as it is.
+     *
+     * @param field      Name of the computed field
+     * @param expression Expression computing the value of the field
+     * @return <code>this</code>
+     * @throws IllegalArgumentException if the expression is invalid
+     * @see Expression
+     */
+    public AggregationBuilder addComputedField(String field, String expression) {
+        return addComputedField(field, Expression.parse(expression));
+    }
+
+    /**
+     * Adds a field computed from each document by a parsed expression
+     *
+     * @param field      Name of the computed field
+     * @param expression Expression computing the value of the field
+     * @return <code>this</code>
+     * @see #addComputedField(String, String)
+     */
+    public AggregationBuilder addComputedField(String field, Expression expression) {
+        if (field == null || expression == null)
+            throw new IllegalArgumentException("Computed fields must have a name and an expression");
+        // Re-adding a field moves it after the fields added since, which it may now reference
+        computedFields.remove(field);
+        computedFields.put(field, expression);
+        return this;
+    }
+
+    /**
+     * Adds a match, so that only documents for which the condition is true are aggregated, such as
+     * <code>age &gt; 30 &amp;&amp; sex == 'M'</code>. A document must satisfy every match added.
+     * <p>
+     * Matches are checked before grouping, as soon as the fields and computed fields they reference are known, so
+     * the computed fields they don't reference are only computed for matching documents. Documents which don't
+     * match aren't aggregated at all, and don't move the watermark of a <code>WindowedAggregation</code>.
+     * <p>
+     * When reading with <code>JsonFileIterator</code> or <code>MappedJsonFile</code>, the match can also be
+     * pushed down into parsing with the <code>JsonFilter</code> returned by <code>Aggregation.newFilter()</code>,
+     * so that documents which don't match are dropped after parsing just the fields the match depends on.
+     *
+     * @param condition Condition documents must satisfy, true if it is neither null, false nor zero
+     * @return <code>this</code>
+     * @throws IllegalArgumentException if the condition is invalid
+     * @see Expression
+     */
+    public AggregationBuilder addMatch(String condition) {
+        return addMatch(Expression.parse(condition));
+    }
+
+    /**
+     * Adds a match with a parsed condition
+     *
+     * @param condition Condition documents must satisfy
+     * @return <code>this</code>
+     * @see #addMatch(String)
+     */
+    public AggregationBuilder addMatch(Expression condition) {
+        if (condition == null)
+            throw new IllegalArgumentException("Condition must not be null");
+        matches.add(condition);
         return this;
     }
 
@@ -40,6 +190,169 @@ public class AggregationBuilder {
         return this;
     }
 
+    /**
+     * Adds a having condition, so that an <code>Aggregation</code> only returns the results for which it is true,
+     * such as <code>count &gt; 10 &amp;&amp; _id.city != 'Paris'</code>. A result must satisfy every having
+     * condition added.
+     * <p>
+     * The condition references the fields of the result, that is <code>_id</code> and the fields the operations
+     * store their results in. It is checked before the result is built, computing just the results of the
+     * operations it references.
+     *
+     * @param condition Condition results must satisfy, true if it is neither null, false nor zero
+     * @return <code>this</code>
+     * @throws IllegalArgumentException if the condition is invalid
+     * @see Expression
+     */
+    public AggregationBuilder addHaving(String condition) {
+        return addHaving(Expression.parse(condition));
+    }
+
+    /**
+     * Adds a having condition with a parsed condition
+     *
+     * @param condition Condition results must satisfy
+     * @return <code>this</code>
+     * @see #addHaving(String)
+     */
+    public AggregationBuilder addHaving(Expression condition) {
+        if (condition == null)
+            throw new IllegalArgumentException("Condition must not be null");
+        havings.add(condition);
+        return this;
+    }
+
+    /**
+     * Sorts the results of an <code>Aggregation</code> on a field of the results, such as <code>sum</code> or
+     * <code>_id.city</code>. Results are sorted on the fields in the order they are added, later fields breaking
+     * ties of earlier ones.
+     * <p>
+     * In ascending order, null and missing values come first, then numbers, strings, booleans and dates. Numbers
+     * are ordered by value whatever their type. Together with <code>setLimit()</code>, only the first results are
+     * kept in a bounded heap as the groups are sorted, so only as many result documents are built as the limit
+     * allows.
+     *
+     * @param field     Field of the results to sort on
+     * @param ascending Whether to sort in ascending order
+     * @return <code>this</code>
+     */
+    public AggregationBuilder addSort(String field, boolean ascending) {
+        if (field == null)
+            throw new IllegalArgumentException("Sort field must not be null");
+        sortFields.remove(field);
+        sortFields.put(field, ascending);
+        return this;
+    }
+
+    /**
+     * Limits the number of results an <code>Aggregation</code> returns, keeping the first results after sorting
+     * if the results are sorted, or any of them otherwise
+     *
+     * @param limit Largest number of results to return
+     * @return <code>this</code>
+     * @throws IllegalArgumentException if the limit is less than 1
+     */
+    public AggregationBuilder setLimit(int limit) {
+        if (limit < 1)
+            throw new IllegalArgumentException("Limit must be at least 1");
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Adds a field of the results of an <code>Aggregation</code> to its projection. Once a field is projected, the
+     * results only hold the projected fields, in the order they were added. Projecting <code>_id.city</code> gives
+     * the results a field named <code>_id.city</code>, which <code>addProjection(String, String)</code> can name
+     * otherwise.
+     *
+     * @param field Field of the results to keep
+     * @return <code>this</code>
+     */
+    public AggregationBuilder addProjection(String field) {
+        if (field == null)
+            throw new IllegalArgumentException("Projected fields must have a name");
+        return addProjection(field, Expression.parse("`" + field + "`"));
+    }
+
+    /**
+     * Adds a field computed from each result of an <code>Aggregation</code> by an expression to its projection,
+     * such as <code>sum / count</code>
+     *
+     * @param field      Name of the projected field
+     * @param expression Expression computing the value of the field from the fields of the result
+     * @return <code>this</code>
+     * @throws IllegalArgumentException if the expression is invalid
+     * @see #addProjection(String)
+     */
+    public AggregationBuilder addProjection(String field, String expression) {
+        return addProjection(field, Expression.parse(expression));
+    }
+
+    /**
+     * Adds a field computed from each result by a parsed expression to the projection
+     *
+     * @param field      Name of the projected field
+     * @param expression Expression computing the value of the field from the fields of the result
+     * @return <code>this</code>
+     * @see #addProjection(String, String)
+     */
+    public AggregationBuilder addProjection(String field, Expression expression) {
+        if (field == null || expression == null)
+            throw new IllegalArgumentException("Projected fields must have a name and an expression");
+        projections.put(field, expression);
+        return this;
+    }
+
+    /**
+     * Aggregates the results of an <code>Aggregation</code> again, as the input of the aggregation set on the
+     * given builder, after the having conditions, sort, limit and projection are applied. This groups the groups,
+     * such as counting the cities with each number of customers.
+     *
+     * @param next Builder of the aggregation to aggregate the results with, or null to return them as they are
+     * @return <code>this</code>
+     */
+    public AggregationBuilder thenAggregate(AggregationBuilder next) {
+        if (next == this)
+            throw new IllegalArgumentException("An aggregation can't aggregate its own results");
+        this.next = next;
+        return this;
+    }
+
+    /**
+     * Allows an <code>Aggregation</code> to spill groups to temporary files once it holds more than the given
+     * number of groups in memory, so that grouping on fields with very many distinct values doesn't run out of
+     * memory. Groups are merged back from the files one part at a time when the result is computed, splitting
+     * parts with more groups than fit in memory again as needed. This applies to aggregating iterators, iterables
+     * and the partitions given to <code>aggregatePartitions()</code>, sequentially or in parallel.
+     * <p>
+     * Group IDs and accumulated values that aren't JSON values or built in accumulators must be
+     * <code>Serializable</code> to be spilled.
+     *
+     * @param maxGroupsInMemory Number of groups to hold in memory before spilling them to disk
+     * @return <code>this</code>
+     */
+    public AggregationBuilder allowDiskUse(int maxGroupsInMemory) {
+        return allowDiskUse(maxGroupsInMemory, null);
+    }
+
+    /**
+     * Allows an <code>Aggregation</code> to spill groups to temporary files in the given directory once it holds
+     * more than the given number of groups in memory
+     *
+     * @param maxGroupsInMemory Number of groups to hold in memory before spilling them to disk
+     * @param spillDirectory    Directory to create the temporary files in, or null for the default temporary
+     *                          directory
+     * @return <code>this</code>
+     * @see #allowDiskUse(int)
+     */
+    public AggregationBuilder allowDiskUse(int maxGroupsInMemory, File spillDirectory) {
+        if (maxGroupsInMemory < 1)
+            throw new IllegalArgumentException("At least one group must be held in memory");
+        this.maxGroupsInMemory = maxGroupsInMemory;
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
     /**
      * Gets the <code>BatchAggregation</code> object which can be used to aggregate batches of data
      *
@@ -47,7 +360,51 @@ public class AggregationBuilder {
      * previously on this <code>AggregationBuilder</code>
      */
     public BatchAggregation getBatchAggregation() {
-        return new BatchAggregation(_id, Collections.unmodifiableMap(operationMap));
+        return new BatchAggregation(_id, getGroupingSets(), getComputedFields(), getMatches(),
+                Collections.unmodifiableMap(new HashMap<>(operationMap)));
+    }
+
+    /**
+     * Gets the <code>ConcurrentBatchAggregation</code> object which can be used to aggregate batches of data
+     * from several threads at once
+     *
+     * @return <code>ConcurrentBatchAggregation</code> which can perform the grouping and operations set
+     * previously on this <code>AggregationBuilder</code>
+     */
+    public ConcurrentBatchAggregation getConcurrentBatchAggregation() {
+        return new ConcurrentBatchAggregation(_id, getGroupingSets(), getComputedFields(), getMatches(),
+                Collections.unmodifiableMap(new HashMap<>(operationMap)));
+    }
+
+    /**
+     * Gets a <code>WindowedAggregation</code> which aggregates batches of data into tumbling windows, each
+     * object belonging to exactly one window
+     *
+     * @param timestampField Field holding the timestamp of each object, such as milliseconds since the epoch
+     * @param size           Length of each window, in the same unit as the timestamps
+     * @return <code>WindowedAggregation</code> which can perform the grouping and operations set
+     * previously on this <code>AggregationBuilder</code> within each window
+     * @see #getWindowedAggregation(String, long, long, long)
+     */
+    public WindowedAggregation getWindowedAggregation(String timestampField, long size) {
+        return getWindowedAggregation(timestampField, size, size, 0);
+    }
+
+    /**
+     * Gets a <code>WindowedAggregation</code> which aggregates batches of data into sliding windows of the given
+     * size, starting every <code>slide</code>
+     *
+     * @param timestampField  Field holding the timestamp of each object, such as milliseconds since the epoch
+     * @param size            Length of each window, in the same unit as the timestamps
+     * @param slide           Distance between the starts of consecutive windows, no larger than the size
+     * @param allowedLateness How far behind the latest timestamp seen objects may arrive and still be aggregated
+     * @return <code>WindowedAggregation</code> which can perform the grouping and operations set
+     * previously on this <code>AggregationBuilder</code> within each window
+     */
+    public WindowedAggregation getWindowedAggregation(String timestampField, long size, long slide,
+                                                     long allowedLateness) {
+        return new WindowedAggregation(_id, getGroupingSets(), getComputedFields(), getMatches(),
+                Collections.unmodifiableMap(new HashMap<>(operationMap)), timestampField, size, slide, allowedLateness);
     }
 
     /**
@@ -55,8 +412,37 @@ public class AggregationBuilder {
      *
      * @return <code>Aggregation</code> which can perform the grouping and operations set
      * previously on this <code>AggregationBuilder</code>
+     * @throws IllegalArgumentException if a having condition, sort field or projection references a result field
+     *                                  which is neither <code>_id</code> nor the field of an operation
      */
     public Aggregation getAggregation() {
-        return new Aggregation(_id, Collections.unmodifiableMap(operationMap));
+        return new Aggregation(_id, getGroupingSets(), getComputedFields(), getMatches(),
+                Collections.unmodifiableMap(new HashMap<>(operationMap)), getStages(), maxGroupsInMemory,
+                spillDirectory);
+    }
+
+    private String[][] getGroupingSets() {
+        if (groupingSets == null)
+            return null;
+        String[][] copy = new String[groupingSets.length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = groupingSets[i].clone();
+        }
+        return copy;
+    }
+
+    private Map<String, Expression> getComputedFields() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(computedFields));
+    }
+
+    private List<Expression> getMatches() {
+        return Collections.unmodifiableList(new ArrayList<>(matches));
+    }
+
+    private ResultPipeline.Stages getStages() {
+        return new ResultPipeline.Stages(Collections.unmodifiableList(new ArrayList<>(havings)),
+                Collections.unmodifiableMap(new LinkedHashMap<>(sortFields)), limit,
+                Collections.unmodifiableMap(new LinkedHashMap<>(projections)),
+                next != null ? next.getAggregation() : null);
     }
 }
@@ -0,0 +1,680 @@
+package com.caffinc.jaggr.core;
+
+import com.caffinc.jaggr.core.expressions.Expression;
+import com.caffinc.jaggr.core.expressions.FieldBinding;
+import com.caffinc.jaggr.core.operations.CountOperation;
+import com.caffinc.jaggr.core.operations.FieldOperation;
+import com.caffinc.jaggr.core.operations.Operation;
+import com.caffinc.jaggr.core.operations.RetractableOperation;
+import com.caffinc.jaggr.core.utils.FieldPath;
+import com.caffinc.jaggr.core.utils.FieldPathResolver;
+
+import java.util.*;
+
+/**
+ * Applies the grouping and operations of an aggregation to documents. Every field needed by the grouping and
+ * the operations is extracted just once per document, however many operations use it.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class Aggregator {
+    private static final String UNGROUPED_ID = "0";
+    private final Expression[] computedFields;
+    private final int[] computedIndexes;
+    private final Expression[] matches;
+    private final Set<String> matchFields;
+    private final int matchPosition;
+    private final String[] groupBy;
+    private final int[] idIndexes;
+    private final String[][] groupingSets;
+    /**
+     * Slots of the values of the key of each grouping set, starting with a reserved slot holding the position of
+     * the set, so that the groups of different sets never share a key
+     */
+    private final int[][] setIndexes;
+    private final String[] fields;
+    private final Operation[] operations;
+    private final int[] valueIndexes;
+    private final int slotCount;
+    private final FieldPathResolver resolver = new FieldPathResolver();
+    /**
+     * Resolver of just the document fields the matches depend on
+     */
+    private final FieldPathResolver matchResolver;
+
+    /**
+     * Compiles the grouping and operations of an aggregation
+     *
+     * @param groupBy      Fields to group data on, or null to group all documents together
+     * @param operationMap Aggregation operations to perform, keyed by the field to store their results in
+     */
+    Aggregator(String[] groupBy, Map<String, Operation> operationMap) {
+        this(groupBy, null, Collections.<String, Expression>emptyMap(), Collections.<Expression>emptyList(),
+                operationMap, false);
+    }
+
+    /**
+     * Compiles the computed fields, matches, grouping and operations of an aggregation, optionally keeping a
+     * {@link GroupState} with the accumulators of each group to track which groups have changed
+     * <p>
+     * Computed fields are evaluated in order over the field values of each document, after they are extracted.
+     * Each may reference the fields of the document and the computed fields before it, and the matches, grouping
+     * and field operations may reference any of them by name. A computed field hides a field of the document with
+     * the same name, though it may compute its value from that field. Only documents satisfying every match are
+     * aggregated.
+     * <p>
+     * With grouping sets, each document is aggregated into one group of every set, from the same extracted field
+     * values. The key of each group is a <code>CompositeKey</code> of the position of its set followed by the
+     * values of the fields of the set.
+     *
+     * @param groupBy        Fields to group data on, or null to group all documents together
+     * @param groupingSets   Sets of fields to group data on, each forming its own groups, or null to group on
+     *                       <code>groupBy</code> instead
+     * @param computedFields Expressions computing fields, keyed by the name of the field
+     * @param matches        Conditions documents must satisfy to be aggregated
+     * @param operationMap   Aggregation operations to perform, keyed by the field to store their results in
+     * @param trackChanges   Whether to keep a <code>GroupState</code> for each group
+     */
+    Aggregator(String[] groupBy, String[][] groupingSets, Map<String, Expression> computedFields,
+               List<Expression> matches, Map<String, Operation> operationMap, boolean trackChanges) {
+        final Map<String, Integer> computedPositions = new HashMap<>();
+        FieldBinding binding = new FieldBinding() {
+            @Override
+            public int indexOf(FieldPath field) {
+                Integer position = computedPositions.get(field.getField());
+                return position != null ? computedIndexes[position] : resolver.add(field);
+            }
+        };
+        this.computedFields = new Expression[computedFields.size()];
+        this.computedIndexes = new int[computedFields.size()];
+        // The document fields each computed field depends on, directly or through other computed fields
+        List<Set<String>> computedDependencies = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, Expression> computedEntry : computedFields.entrySet()) {
+            this.computedFields[i] = computedEntry.getValue().bind(binding);
+            this.computedIndexes[i] = resolver.reserve();
+            computedDependencies.add(getDependencies(computedEntry.getValue(), computedPositions,
+                    computedDependencies));
+            computedPositions.put(computedEntry.getKey(), i);
+            i++;
+        }
+        this.matches = new Expression[matches.size()];
+        this.matchFields = new LinkedHashSet<>();
+        int matchPosition = 0;
+        for (i = 0; i < this.matches.length; i++) {
+            this.matches[i] = matches.get(i).bind(binding);
+            matchFields.addAll(getDependencies(matches.get(i), computedPositions, computedDependencies));
+            for (FieldPath field : matches.get(i).getFields()) {
+                Integer position = computedPositions.get(field.getField());
+                if (position != null)
+                    matchPosition = Math.max(matchPosition, position + 1);
+            }
+        }
+        this.matchPosition = matchPosition;
+        this.groupBy = groupBy != null ? groupBy : new String[0];
+        this.idIndexes = new int[this.groupBy.length];
+        for (i = 0; i < idIndexes.length; i++) {
+            idIndexes[i] = binding.indexOf(new FieldPath(this.groupBy[i]));
+        }
+        this.groupingSets = groupingSets;
+        this.setIndexes = groupingSets != null ? new int[groupingSets.length][] : null;
+        for (i = 0; setIndexes != null && i < setIndexes.length; i++) {
+            setIndexes[i] = new int[groupingSets[i].length + 1];
+            setIndexes[i][0] = resolver.reserve();
+            for (int j = 0; j < groupingSets[i].length; j++) {
+                setIndexes[i][j + 1] = binding.indexOf(new FieldPath(groupingSets[i][j]));
+            }
+        }
+        this.fields = new String[operationMap.size()];
+        this.operations = new Operation[operationMap.size()];
+        this.valueIndexes = new int[operationMap.size()];
+        i = 0;
+        for (Map.Entry<String, Operation> operationEntry : operationMap.entrySet()) {
+            fields[i] = operationEntry.getKey();
+            operations[i] = operationEntry.getValue();
+            valueIndexes[i] = operations[i] instanceof FieldOperation
+                    ? binding.indexOf(((FieldOperation) operations[i]).getField())
+                    : -1;
+            i++;
+        }
+        this.slotCount = trackChanges ? operations.length + 1 : operations.length;
+        Set<FieldPath> matchPaths = new HashSet<>();
+        for (String matchField : matchFields) {
+            matchPaths.add(new FieldPath(matchField));
+        }
+        this.matchResolver = resolver.restrict(matchPaths);
+    }
+
+    /**
+     * Gets the fields of a document used by the grouping and operations
+     *
+     * @return Fields used, or null if an operation may use any field of the document
+     */
+    Set<String> getRequiredFields() {
+        for (Operation operation : operations) {
+            if (!(operation instanceof FieldOperation) && !(operation instanceof CountOperation))
+                return null;
+        }
+        Set<String> requiredFields = new LinkedHashSet<>();
+        for (FieldPath path : resolver.getPaths()) {
+            requiredFields.add(path.getField());
+        }
+        return requiredFields;
+    }
+
+    /**
+     * Gets the fields of a document used by the matches, including those used to compute the computed fields
+     * they reference
+     *
+     * @return Fields used, empty if there are no matches
+     */
+    Set<String> getMatchFields() {
+        return Collections.unmodifiableSet(matchFields);
+    }
+
+    /**
+     * Gets the document fields an expression depends on
+     *
+     * @param expression           Expression to get the dependencies of
+     * @param computedPositions    Positions of the computed fields the expression may reference, by name
+     * @param computedDependencies Document fields each of those computed fields depends on
+     * @return Document fields the expression depends on
+     */
+    private static Set<String> getDependencies(Expression expression, Map<String, Integer> computedPositions,
+                                               List<Set<String>> computedDependencies) {
+        Set<String> dependencies = new LinkedHashSet<>();
+        for (FieldPath field : expression.getFields()) {
+            Integer position = computedPositions.get(field.getField());
+            if (position != null)
+                dependencies.addAll(computedDependencies.get(position));
+            else
+                dependencies.add(field.getField());
+        }
+        return dependencies;
+    }
+
+    /**
+     * Creates a buffer to hold the field values of a document. A buffer may be reused for any number of
+     * documents, but only by one thread at a time.
+     *
+     * @return Field value buffer
+     */
+    Buffer newBuffer() {
+        return new Buffer();
+    }
+
+    /**
+     * Aggregates a single object into the workspace, unless it is filtered out by a match
+     *
+     * @param object    Object to perform aggregations on
+     * @param workspace Workspace to hold temporary aggregation results in
+     * @param buffer    Buffer to extract the field values of the object into
+     * @return Number of groups the object was aggregated into, whose accumulators the buffer holds, or 0 if the
+     * object didn't match
+     */
+    int aggregate(Map<String, Object> object, Map<Object, Object[]> workspace, Buffer buffer) {
+        return extract(object, buffer) ? aggregateExtracted(object, workspace, buffer) : 0;
+    }
+
+    /**
+     * Extracts the field values of an object into a buffer and computes its computed fields, and checks whether
+     * it matches. Fields computed after the last one the matches depend on are only computed for matching objects.
+     *
+     * @param object Object to extract from
+     * @param buffer Buffer to extract the field values of the object into
+     * @return Whether the object matches
+     */
+    boolean extract(Map<String, Object> object, Buffer buffer) {
+        if (!matches(object, buffer))
+            return false;
+        Object[] values = buffer.values;
+        for (int i = matchPosition; i < computedFields.length; i++) {
+            values[computedIndexes[i]] = computedFields[i].evaluate(values);
+        }
+        return true;
+    }
+
+    /**
+     * Extracts the field values of an object into a buffer, along with the computed fields the matches reference,
+     * and checks whether it matches
+     *
+     * @param object Object to extract from
+     * @param buffer Buffer to extract the field values of the object into
+     * @return Whether the object matches
+     */
+    boolean matches(Map<String, Object> object, Buffer buffer) {
+        resolver.resolve(object, buffer.values);
+        return test(buffer.values);
+    }
+
+    /**
+     * Extracts just the field values the matches depend on into a buffer, and checks whether an object matches.
+     * The buffer can't be used to aggregate the object afterwards.
+     *
+     * @param object Object holding at least the fields returned by <code>getMatchFields()</code>
+     * @param buffer Buffer to extract the field values of the object into
+     * @return Whether the object matches
+     */
+    boolean matchesFields(Map<String, Object> object, Buffer buffer) {
+        matchResolver.resolve(object, buffer.values);
+        return test(buffer.values);
+    }
+
+    /**
+     * Computes the computed fields the matches depend on, and checks every match
+     *
+     * @param values Extracted field values
+     * @return Whether the values satisfy every match
+     */
+    private boolean test(Object[] values) {
+        for (int i = 0; i < matchPosition; i++) {
+            values[computedIndexes[i]] = computedFields[i].evaluate(values);
+        }
+        for (Expression match : matches) {
+            if (!match.test(values))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Aggregates an object whose field values have been extracted into the buffer by <code>extract()</code>
+     *
+     * @param object    Object to perform aggregations on
+     * @param workspace Workspace to hold temporary aggregation results in
+     * @param buffer    Buffer holding the field values of the object
+     * @return Number of groups the object was aggregated into, whose accumulators the buffer holds
+     */
+    int aggregateExtracted(Map<String, Object> object, Map<Object, Object[]> workspace, Buffer buffer) {
+        Object[] values = buffer.values;
+        if (setIndexes != null) {
+            for (int i = 0; i < setIndexes.length; i++) {
+                CompositeKey setKey = buffer.setKeys[i];
+                setKey.rehash();
+                Object[] accumulators = workspace.get(setKey);
+                if (accumulators == null) {
+                    CompositeKey key = setKey.copy();
+                    accumulators = newAccumulators(key);
+                    workspace.put(key, accumulators);
+                }
+                accumulate(object, values, accumulators);
+                buffer.groups[i] = accumulators;
+            }
+            return setIndexes.length;
+        }
+        // Get the accumulators for the ID of the document, one slot per operation
+        Object[] accumulators;
+        if (idIndexes.length > 1) {
+            // Look the group up through the buffer, and only copy its key if the group is new
+            buffer.key.rehash();
+            accumulators = workspace.get(buffer.key);
+            if (accumulators == null) {
+                CompositeKey key = buffer.key.copy();
+                accumulators = newAccumulators(key);
+                workspace.put(key, accumulators);
+            }
+        } else {
+            // Keep the original type of the ID
+            Object id = idIndexes.length == 1 ? values[idIndexes[0]] : UNGROUPED_ID;
+            accumulators = workspace.get(id);
+            if (accumulators == null) {
+                accumulators = newAccumulators(id);
+                workspace.put(id, accumulators);
+            }
+        }
+        accumulate(object, values, accumulators);
+        buffer.groups[0] = accumulators;
+        return 1;
+    }
+
+    private void accumulate(Map<String, Object> object, Object[] values, Object[] accumulators) {
+        for (int i = 0; i < operations.length; i++) {
+            accumulators[i] = valueIndexes[i] >= 0
+                    ? ((FieldOperation) operations[i]).aggregateValue(accumulators[i], values[valueIndexes[i]])
+                    : operations[i].aggregate(accumulators[i], object);
+        }
+        if (slotCount > operations.length)
+            getState(accumulators).documents++;
+    }
+
+    /**
+     * Gets whether objects can be retracted from the workspace, which requires every operation to be retractable
+     * and changes to be tracked
+     *
+     * @return Whether <code>retract()</code> is supported
+     */
+    boolean isRetractable() {
+        for (Operation operation : operations) {
+            if (!(operation instanceof RetractableOperation) || !((RetractableOperation) operation).isRetractable())
+                return false;
+        }
+        return slotCount > operations.length;
+    }
+
+    /**
+     * Retracts a single object aggregated into the workspace earlier, unless it is filtered out by a match.
+     * Groups left without any documents are removed from the workspace. Objects may only be retracted if
+     * <code>isRetractable()</code>, and if an object can't be retracted its groups are left partly retracted.
+     *
+     * @param object    Object to retract, holding the same values it was aggregated with
+     * @param workspace Workspace holding intermediate results
+     * @param buffer    Buffer to extract the field values of the object into
+     * @return Number of groups the object was retracted from, whose accumulators the buffer holds, or 0 if the
+     * object didn't match
+     * @throws IllegalStateException if the object wasn't aggregated into the workspace
+     */
+    int retract(Map<String, Object> object, Map<Object, Object[]> workspace, Buffer buffer) {
+        if (!extract(object, buffer))
+            return 0;
+        Object[] values = buffer.values;
+        if (setIndexes != null) {
+            for (int i = 0; i < setIndexes.length; i++) {
+                CompositeKey setKey = buffer.setKeys[i];
+                setKey.rehash();
+                buffer.groups[i] = retract(object, values, workspace, setKey);
+            }
+            return setIndexes.length;
+        }
+        Object id;
+        if (idIndexes.length > 1) {
+            buffer.key.rehash();
+            id = buffer.key;
+        } else {
+            id = idIndexes.length == 1 ? values[idIndexes[0]] : UNGROUPED_ID;
+        }
+        buffer.groups[0] = retract(object, values, workspace, id);
+        return 1;
+    }
+
+    private Object[] retract(Map<String, Object> object, Object[] values, Map<Object, Object[]> workspace,
+                             Object id) {
+        Object[] accumulators = workspace.get(id);
+        if (accumulators == null)
+            throw new IllegalStateException("No documents were aggregated into group " + computeId(id));
+        for (int i = 0; i < operations.length; i++) {
+            accumulators[i] = valueIndexes[i] >= 0
+                    ? ((FieldOperation) operations[i]).retractValue(accumulators[i], values[valueIndexes[i]])
+                    : ((RetractableOperation) operations[i]).retract(accumulators[i], object);
+        }
+        GroupState state = getState(accumulators);
+        // Look the group up by its own key, as the buffer key changes with the next object
+        if (--state.documents == 0)
+            workspace.remove(state.id);
+        return accumulators;
+    }
+
+    /**
+     * Creates the accumulators of a new group
+     *
+     * @param id ID of the group
+     * @return Accumulators with one empty slot per operation, followed by the state of the group if changes are
+     * tracked
+     */
+    Object[] newAccumulators(Object id) {
+        Object[] accumulators = new Object[slotCount];
+        if (slotCount > operations.length)
+            accumulators[operations.length] = new GroupState(id);
+        return accumulators;
+    }
+
+    /**
+     * Gets the operations of the aggregation, in the order of their accumulators
+     *
+     * @return Operations
+     */
+    Operation[] getOperations() {
+        return operations;
+    }
+
+    /**
+     * Gets the state of a group, if changes are tracked
+     *
+     * @param accumulators Accumulators of the group
+     * @return State of the group
+     */
+    GroupState getState(Object[] accumulators) {
+        return (GroupState) accumulators[operations.length];
+    }
+
+    /**
+     * Merges two workspaces, the first of which holds the results of the earlier documents. The smaller of the
+     * two workspaces is merged into the larger one, which is returned. Neither workspace should be used
+     * afterwards except through the returned workspace.
+     *
+     * @param earlier Workspace holding intermediate results of the earlier documents
+     * @param later   Workspace holding intermediate results of the later documents
+     * @return Workspace holding the intermediate results of both
+     */
+    Map<Object, Object[]> merge(Map<Object, Object[]> earlier, Map<Object, Object[]> later) {
+        boolean intoEarlier = earlier.size() >= later.size();
+        Map<Object, Object[]> target = intoEarlier ? earlier : later;
+        Map<Object, Object[]> source = intoEarlier ? later : earlier;
+        for (Map.Entry<Object, Object[]> sourceEntry : source.entrySet()) {
+            Object[] sourceAccumulators = sourceEntry.getValue();
+            Object[] targetAccumulators = target.get(sourceEntry.getKey());
+            if (targetAccumulators == null) {
+                target.put(sourceEntry.getKey(), sourceAccumulators);
+                continue;
+            }
+            for (int i = 0; i < operations.length; i++) {
+                targetAccumulators[i] = intoEarlier
+                        ? operations[i].merge(targetAccumulators[i], sourceAccumulators[i])
+                        : operations[i].merge(sourceAccumulators[i], targetAccumulators[i]);
+            }
+            if (slotCount > operations.length)
+                getState(targetAccumulators).documents += getState(sourceAccumulators).documents;
+        }
+        return target;
+    }
+
+    /**
+     * Merges the accumulators of a group into a workspace, as though they were accumulated over documents
+     * following those already in the workspace
+     *
+     * @param workspace    Workspace holding intermediate results of the earlier documents
+     * @param id           ID of the group
+     * @param accumulators Accumulators of the group over the later documents
+     */
+    void mergeGroup(Map<Object, Object[]> workspace, Object id, Object[] accumulators) {
+        Object[] targetAccumulators = workspace.get(id);
+        if (targetAccumulators == null) {
+            workspace.put(id, accumulators);
+            return;
+        }
+        for (int i = 0; i < operations.length; i++) {
+            targetAccumulators[i] = operations[i].merge(targetAccumulators[i], accumulators[i]);
+        }
+        if (slotCount > operations.length)
+            getState(targetAccumulators).documents += getState(accumulators).documents;
+    }
+
+    /**
+     * Copies a workspace, so that the copy can be merged or aggregated into without changing the original
+     *
+     * @param workspace Workspace holding intermediate results
+     * @return Copy of the workspace
+     */
+    Map<Object, Object[]> copy(Map<Object, Object[]> workspace) {
+        Map<Object, Object[]> copy = new HashMap<>(workspace.size() * 4 / 3 + 1);
+        for (Map.Entry<Object, Object[]> groupEntry : workspace.entrySet()) {
+            Object[] accumulators = groupEntry.getValue().clone();
+            for (int i = 0; i < operations.length; i++) {
+                accumulators[i] = operations[i].copy(accumulators[i]);
+            }
+            copy.put(groupEntry.getKey(), accumulators);
+        }
+        return copy;
+    }
+
+    /**
+     * Computes results from the workspace. Results of operations that return their accumulator, such as
+     * <code>CollectOperation</code>, change if more data is aggregated into the workspace afterwards.
+     *
+     * @param workspace Workspace holding intermediate results
+     * @return Aggregation result
+     */
+    List<Map<String, Object>> computeResults(Map<Object, Object[]> workspace) {
+        List<Map<String, Object>> resultList = new ArrayList<>(workspace.size());
+        for (Map.Entry<Object, Object[]> groupEntry : workspace.entrySet()) {
+            resultList.add(computeResult(groupEntry.getKey(), groupEntry.getValue()));
+        }
+        return resultList;
+    }
+
+    /**
+     * Computes the result of a single group
+     *
+     * @param id           ID of the group
+     * @param accumulators Accumulated values of the group
+     * @return Result document of the group
+     */
+    Map<String, Object> computeResult(Object id, Object[] accumulators) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("_id", computeId(id));
+        for (int i = 0; i < operations.length; i++) {
+            result.put(fields[i], operations[i].result(accumulators[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the <code>_id</code> of the result of a group
+     *
+     * @param id ID of the group
+     * @return Sub-document of the grouping fields for a compound ID, or the ID itself
+     */
+    Object computeId(Object id) {
+        if (!(id instanceof CompositeKey))
+            return id;
+        // Compound IDs become a sub-document of the grouping fields
+        CompositeKey key = (CompositeKey) id;
+        Map<String, Object> idDocument = new LinkedHashMap<>();
+        if (groupingSets != null) {
+            String[] groupingSet = groupingSets[(Integer) key.get(0)];
+            for (int i = 0; i < groupingSet.length; i++) {
+                idDocument.put(groupingSet[i], key.get(i + 1));
+            }
+        } else {
+            for (int i = 0; i < groupBy.length; i++) {
+                idDocument.put(groupBy[i], key.get(i));
+            }
+        }
+        return idDocument;
+    }
+
+    /**
+     * Computes the result of a single operation of a group
+     *
+     * @param accumulators Accumulated values of the group
+     * @param operation    Index of the operation
+     * @return Result of the operation
+     */
+    Object computeResult(Object[] accumulators, int operation) {
+        return operations[operation].result(accumulators[operation]);
+    }
+
+    /**
+     * Gets the index of the operation storing its result in a field
+     *
+     * @param field Field of the result document
+     * @return Index of the operation, or -1 if no operation stores its result in the field
+     */
+    int indexOfField(String field) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(field))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Computes an immutable result of a single group. Collections and sub-documents in the result are copied,
+     * so the result doesn't change if more data is aggregated into the group afterwards.
+     *
+     * @param id           ID of the group
+     * @param accumulators Accumulated values of the group
+     * @return Unmodifiable result document of the group
+     */
+    Map<String, Object> computeImmutableResult(Object id, Object[] accumulators) {
+        return (Map<String, Object>) immutableCopy(computeResult(id, accumulators));
+    }
+
+    /**
+     * Copies collections and maps, at any depth, into unmodifiable ones. Other values are returned as is.
+     *
+     * @param value Value to copy
+     * @return Unmodifiable copy of the value
+     */
+    private static Object immutableCopy(Object value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), immutableCopy(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        } else if (value instanceof Set) {
+            Set<Object> copy = new LinkedHashSet<>();
+            for (Object element : (Set<?>) value) {
+                copy.add(immutableCopy(element));
+            }
+            return Collections.unmodifiableSet(copy);
+        } else if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                copy.add(immutableCopy(element));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    /**
+     * Tracks changes to a group, kept after its accumulators when changes are tracked
+     */
+    static final class GroupState {
+        final Object id;
+        long version = -1;
+        /**
+         * Number of documents aggregated into the group and not retracted
+         */
+        long documents;
+        /**
+         * Position of the result of the group in the snapshot of a <code>BatchAggregation</code>, or -1
+         */
+        int position = -1;
+
+        GroupState(Object id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Holds the field values of the document being aggregated
+     */
+    final class Buffer {
+        private final Object[] values = new Object[resolver.size()];
+        private final CompositeKey key = new CompositeKey(values, idIndexes);
+        private final CompositeKey[] setKeys;
+        private final Object[][] groups;
+
+        private Buffer() {
+            setKeys = new CompositeKey[setIndexes != null ? setIndexes.length : 0];
+            for (int i = 0; i < setKeys.length; i++) {
+                values[setIndexes[i][0]] = i;
+                setKeys[i] = new CompositeKey(values, setIndexes[i]);
+            }
+            groups = new Object[Math.max(setKeys.length, 1)][];
+        }
+
+        /**
+         * Gets the accumulators of a group the last object was aggregated into
+         *
+         * @param group Position of the group, less than the number returned by <code>aggregate()</code>
+         * @return Accumulators of the group
+         */
+        Object[] getGroup(int group) {
+            return groups[group];
+        }
+    }
+}
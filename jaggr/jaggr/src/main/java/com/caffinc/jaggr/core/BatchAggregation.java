@@ -1,8 +1,10 @@
 package com.caffinc.jaggr.core;
 
+import com.caffinc.jaggr.core.expressions.Expression;
 import com.caffinc.jaggr.core.operations.Operation;
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -12,24 +14,54 @@ import java.util.*;
  * @since 11/29/2016
  */
 public class BatchAggregation {
-    private String _id;
-    private String[] idSplit;
+    private static final int CHECKPOINT_MAGIC = 0x4A414747;
+    private static final int CHECKPOINT_VERSION = 2;
+    private String[] _id;
+    private String[][] groupingSets;
+    private Map<String, Expression> computedFields;
+    private List<Expression> matches;
     private Map<String, Operation> operationMap;
-    private Map<String, Map<String, Object>> workspace;
+    private Aggregator aggregator;
+    private Map<Object, Object[]> workspace;
+    private long version = 0;
+    private List<Aggregator.GroupState> changedGroups = new ArrayList<>();
+    /**
+     * Result documents of the snapshot, at the positions held by the states of their groups
+     */
+    private SnapshotList.Editor<Map<String, Object>> snapshot = SnapshotList.newEditor();
+    private List<Aggregator.GroupState> snapshotStates = new ArrayList<>();
+    private List<Map<String, Object>> snapshotResult = Collections.emptyList();
 
     /**
-     * Constructs a new BatchAggregation for the given grouping <code>_id</code> field and <code>operationMap</code>
+     * Constructs a new BatchAggregation for the given grouping <code>_id</code> fields and <code>operationMap</code>
      *
-     * @param _id          Field to group data on
-     * @param operationMap Aggregation operations to perform
+     * @param _id            Fields to group data on
+     * @param groupingSets   Sets of fields to group data on, each forming its own groups, or null
+     * @param computedFields Expressions computing fields for the grouping and operations to use, keyed by name
+     * @param matches        Conditions objects must satisfy to be aggregated
+     * @param operationMap   Aggregation operations to perform
      */
-    BatchAggregation(String _id, Map<String, Operation> operationMap) {
+    BatchAggregation(String[] _id, String[][] groupingSets, Map<String, Expression> computedFields,
+                     List<Expression> matches, Map<String, Operation> operationMap) {
         this._id = _id;
-        this.idSplit = _id != null ? _id.split("\\.") : null;
+        this.groupingSets = groupingSets;
+        this.computedFields = computedFields;
+        this.matches = matches;
         this.operationMap = operationMap;
+        this.aggregator = new Aggregator(_id, groupingSets, computedFields, matches, operationMap, true);
         this.workspace = new HashMap<>();
     }
 
+    /**
+     * Gets the fields of a document used by this aggregation. Parsing just these fields from the input, for
+     * example with <code>JsonFileIterator</code>, gives the same result as parsing entire documents.
+     *
+     * @return Fields used, or null if an operation may use any field of the document
+     */
+    public Set<String> getRequiredFields() {
+        return aggregator.getRequiredFields();
+    }
+
     /**
      * Aggregates over a batch of Iterator of JSON Objects
      *
@@ -54,61 +86,276 @@ public class BatchAggregation {
      */
     public BatchAggregation aggregateBatch(final Iterable<Map<String, Object>> objectList) {
         if (objectList != null) {
+            Aggregator.Buffer buffer = aggregator.newBuffer();
             for (Map<String, Object> object : objectList) {
-                aggregate(object, workspace);
+                markChanged(buffer, aggregator.aggregate(object, workspace, buffer));
             }
         }
         return this;
     }
 
     /**
-     * Aggregates a single object into the workspace
+     * Retracts a batch of Iterator of JSON Objects
+     *
+     * @param objectIterator JSON Object iterator
+     * @return <code>this</code>
+     * @see #retractBatch(Iterable)
+     */
+    public BatchAggregation retractBatch(final Iterator<Map<String, Object>> objectIterator) {
+        retractBatch(new Iterable<Map<String, Object>>() {
+            @Override
+            public Iterator<Map<String, Object>> iterator() {
+                return objectIterator;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Retracts a batch of iterable list of JSON Objects that were aggregated earlier, leaving the aggregation as
+     * though they had never been seen. Groups left without any documents disappear from the results. A document
+     * is corrected by retracting its old version and aggregating the new one:
+     * <code>retractBatch(oldDocuments).aggregateBatch(newDocuments)</code>
+     * <p>
+     * Every operation must be retractable, such as <code>SumOperation</code>, <code>CountOperation</code> or a
+     * <code>MinOperation</code> created to be retractable. Only the groups of the retracted documents are
+     * updated, in time proportional to the size of the batch rather than of the data seen so far.
+     *
+     * @param objectList Iterable list of JSON Objects, each holding the same values it was aggregated with
+     * @return <code>this</code>
+     * @throws IllegalStateException if an operation isn't retractable, or a document wasn't aggregated, in which
+     *                               case the aggregation is left in an inconsistent state
+     * @see com.caffinc.jaggr.core.operations.RetractableOperation
+     */
+    public BatchAggregation retractBatch(final Iterable<Map<String, Object>> objectList) {
+        if (!aggregator.isRetractable())
+            throw new IllegalStateException("Every operation must be retractable to retract documents");
+        if (objectList != null) {
+            Aggregator.Buffer buffer = aggregator.newBuffer();
+            for (Map<String, Object> object : objectList) {
+                markChanged(buffer, aggregator.retract(object, workspace, buffer));
+            }
+        }
+        return this;
+    }
+
+    private void markChanged(Aggregator.Buffer buffer, int groupCount) {
+        for (int i = 0; i < groupCount; i++) {
+            Aggregator.GroupState state = aggregator.getState(buffer.getGroup(i));
+            if (state.version != version) {
+                state.version = version;
+                changedGroups.add(state);
+            }
+        }
+    }
+
+    /**
+     * Merges the data aggregated so far by another <code>BatchAggregation</code> into this one, as though its
+     * batches had been passed to this aggregation after the ones it has already seen. The other aggregation is
+     * reset, exactly as if <code>getFinalResult()</code> had been called on it.
+     * <p>
+     * This allows batches to be aggregated independently, for example on separate threads, and combined once
+     * they are done. Both aggregations must have the same grouping, computed fields, matches and operations, as
+     * when created by the same or identically configured <code>AggregationBuilder</code>s. They are compared the
+     * same way as by <code>restore()</code>.
+     *
+     * @param other <code>BatchAggregation</code> to merge into this one
+     * @return <code>this</code>
+     * @throws IllegalArgumentException if the other aggregation groups by different fields, computes different
+     *                                  fields, matches different objects or performs different operations
+     */
+    public BatchAggregation merge(BatchAggregation other) {
+        if (other == this)
+            return this;
+        if (!getSignature().equals(other.getSignature()))
+            throw new IllegalArgumentException("Only BatchAggregations with the same grouping, matches and operations "
+                    + "can be merged");
+        Map<Object, Object[]> otherWorkspace = other.workspace;
+        other.reset();
+        workspace = aggregator.merge(workspace, otherWorkspace);
+        // Groups of either aggregation may have changed, and the states of the other's groups are out of step, so
+        // the snapshot is built again from every group
+        snapshot = SnapshotList.newEditor();
+        snapshotStates = new ArrayList<>();
+        changedGroups.clear();
+        version++;
+        for (Object[] accumulators : workspace.values()) {
+            Aggregator.GroupState state = aggregator.getState(accumulators);
+            state.version = version;
+            changedGroups.add(state);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the data aggregated so far to a stream in a compact, versioned binary format, from which
+     * <code>restore()</code> rebuilds it, for example after the process restarts. Groups are written straight
+     * from the workspace, one at a time, so writing a checkpoint takes no more memory however many groups there
+     * are. The aggregation itself is unchanged.
+     * <p>
+     * The stream is flushed, but not closed.
      *
-     * @param object    Object to perform aggregations on
-     * @param workspace Workspace to hold temporary aggregation results in
-     */
-    private void aggregate(Map<String, Object> object, Map<String, Map<String, Object>> workspace) {
-        // Identify the ID of the document
-        String id = "0";
-        if (_id != null) {
-            id = String.valueOf(FieldValueExtractor.getValue(idSplit, object));
+     * @param out Stream to write the checkpoint to
+     * @return <code>this</code>
+     * @throws IOException if the checkpoint could not be written, including if an accumulator holds a value
+     *                     which is neither supported nor <code>Serializable</code>
+     */
+    public BatchAggregation checkpoint(OutputStream out) throws IOException {
+        WorkspaceCodec codec = new WorkspaceCodec(aggregator);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(out));
+        output.writeInt(CHECKPOINT_MAGIC);
+        output.writeInt(CHECKPOINT_VERSION);
+        // Written as UTF-8 bytes after their length, as writeUTF() is limited to 65535 bytes
+        byte[] signature = getSignature().getBytes(StandardCharsets.UTF_8);
+        output.writeInt(signature.length);
+        output.write(signature);
+        output.writeInt(workspace.size());
+        for (Map.Entry<Object, Object[]> groupEntry : workspace.entrySet()) {
+            codec.writeGroup(output, groupEntry.getKey(), groupEntry.getValue());
         }
-        if (!workspace.containsKey(id)) {
-            Map<String, Object> groupWorkspace = new HashMap<>();
-            groupWorkspace.put("_id", id);
-            workspace.put(id, groupWorkspace);
+        output.flush();
+        return this;
+    }
+
+    /**
+     * Restores data from a checkpoint written by <code>checkpoint()</code>, as though the batches aggregated
+     * before the checkpoint had been passed to this aggregation after the ones it has already seen. Usually
+     * this is a new aggregation, created by the same <code>AggregationBuilder</code> as the one that wrote the
+     * checkpoint, which carries on where that one stopped.
+     * <p>
+     * The stream is read through a buffer, so it may be read past the end of the checkpoint. It is not closed.
+     *
+     * @param in Stream to read the checkpoint from
+     * @return <code>this</code>
+     * @throws IOException              if the checkpoint could not be read, or was written in an unsupported
+     *                                  format
+     * @throws IllegalArgumentException if the checkpoint was written by an aggregation with different grouping,
+     *                                  computed fields, matches or operations
+     */
+    public BatchAggregation restore(InputStream in) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(in));
+        if (input.readInt() != CHECKPOINT_MAGIC)
+            throw new IOException("Not a checkpoint of a BatchAggregation");
+        int checkpointVersion = input.readInt();
+        if (checkpointVersion != CHECKPOINT_VERSION)
+            throw new IOException("Unsupported checkpoint version: " + checkpointVersion);
+        byte[] signature = getSignature().getBytes(StandardCharsets.UTF_8);
+        // A signature of a different length doesn't match, so it is rejected without being read
+        if (input.readInt() != signature.length || !Arrays.equals(signature, readFully(input, signature.length)))
+            throw new IllegalArgumentException("Only checkpoints of BatchAggregations with the same grouping, "
+                    + "matches and operations can be restored");
+        int groupCount = input.readInt();
+        WorkspaceCodec codec = new WorkspaceCodec(aggregator);
+        if (workspace.isEmpty())
+            workspace = new HashMap<>(groupCount * 4 / 3 + 1);
+        for (int i = 0; i < groupCount; i++) {
+            codec.readGroup(input, workspace);
         }
-        // Get the workspace for the given ID
-        Map<String, Object> groupWorkspace = workspace.get(id);
-        for (Map.Entry<String, Operation> operationEntry : operationMap.entrySet()) {
-            // Get the key in the workspace
-            String field = operationEntry.getKey();
-            // Get the operation
+        markAllChanged();
+        return this;
+    }
+
+    private static byte[] readFully(DataInputStream input, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Describes the grouping, computed fields, matches and operations of the aggregation, including the field
+     * and parameters of each operation, so that checkpoints of other aggregations are recognized
+     */
+    private String getSignature() {
+        StringBuilder signature = new StringBuilder()
+                .append(Arrays.toString(_id))
+                .append(Arrays.deepToString(groupingSets))
+                .append(computedFields)
+                .append(matches);
+        // Sorted, as the iteration order of a hash map depends on the order its keys were added in
+        for (Map.Entry<String, Operation> operationEntry : new TreeMap<>(operationMap).entrySet()) {
             Operation operation = operationEntry.getValue();
-            // Get the accumulated value in the workspace
-            Object t0 = groupWorkspace.get(field);
-            // Get the new value after performing the operation
-            Object t1 = operation.aggregate(t0, object);
-            // Write the result back in the workspace
-            groupWorkspace.put(field, t1);
+            signature.append(operationEntry.getKey()).append('=').append(operation.getClass().getName());
+            if (describesItself(operation))
+                signature.append(':').append(operation);
+            signature.append(';');
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Checks whether an operation overrides <code>toString()</code>, as the default includes the identity hash
+     * code, which differs between aggregations
+     */
+    private static boolean describesItself(Operation operation) {
+        try {
+            return operation.getClass().getMethod("toString").getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Marks every group as changed, skipping those already marked
+     */
+    private void markAllChanged() {
+        for (Object[] accumulators : workspace.values()) {
+            Aggregator.GroupState state = aggregator.getState(accumulators);
+            if (state.version != version) {
+                state.version = version;
+                changedGroups.add(state);
+            }
         }
     }
 
     /**
      * Gets the result of the aggregation in the current state
      * <p>
-     * <code>Note:</code>
-     * This process is resource intensive as it creates a copy of the partial result and finalizes computations
-     * However this copy is a shallow copy. Further computations that operate on non-primitive results, such as
-     * <code>CollectOperation</code> and <code>CollectSetOperation</code> will result in intermediate results that
-     * change as more batches are computed. Handle with care. I should just remove this method :|
+     * The result is an immutable snapshot: neither the list nor the result documents, including collections in
+     * them such as the results of <code>CollectOperation</code> and <code>CollectSetOperation</code>, can be
+     * modified or change as more batches are computed.
+     * <p>
+     * Result documents are cached between calls, and only the groups that changed since the last call are
+     * computed again. The new snapshot shares everything else with the previous one, so a call takes time
+     * proportional to the number of groups that changed rather than the number of groups, and frequent calls
+     * remain cheap when few groups change in between. Groups keep their position in the snapshot, except that
+     * the last group takes the place of a group which is removed.
      * <p>
      * Use <code>getFinalResult()</code> if you require only the final result of all batches
      *
      * @return Intermediate result of computations on data processed so far
      */
     public List<Map<String, Object>> getItermediateResult() {
-        return computeIntermediateResults(workspace);
+        if (!changedGroups.isEmpty()) {
+            for (Aggregator.GroupState state : changedGroups) {
+                Object[] accumulators = workspace.get(state.id);
+                boolean published = state.position >= 0 && state.position < snapshotStates.size()
+                        && snapshotStates.get(state.position) == state;
+                if (accumulators != null && aggregator.getState(accumulators) == state) {
+                    Map<String, Object> result = aggregator.computeImmutableResult(state.id, accumulators);
+                    if (published) {
+                        snapshot.set(state.position, result);
+                    } else {
+                        state.position = snapshotStates.size();
+                        snapshotStates.add(state);
+                        snapshot.add(result);
+                    }
+                } else if (published) {
+                    // The documents of the group were all retracted, so the last group takes its place
+                    Aggregator.GroupState last = snapshotStates.remove(snapshotStates.size() - 1);
+                    Map<String, Object> lastResult = snapshot.removeLast();
+                    if (last != state) {
+                        last.position = state.position;
+                        snapshotStates.set(last.position, last);
+                        snapshot.set(last.position, lastResult);
+                    }
+                }
+            }
+            changedGroups = new ArrayList<>();
+            // Later changes to a group are tracked again
+            version++;
+            snapshotResult = snapshot.publish();
+        }
+        return snapshotResult;
     }
 
     /**
@@ -122,52 +369,20 @@ public class BatchAggregation {
      */
     public List<Map<String, Object>> getFinalResult() {
         // Compute the results
-        List<Map<String, Object>> result = computeFinalResults(workspace);
+        List<Map<String, Object>> result = aggregator.computeResults(workspace);
         // Clear the workspace
-        workspace = new HashMap<>();
+        reset();
         return result;
     }
 
     /**
-     * Computes final results from the workspace
-     *
-     * @param workspace Workspace holding intermediate results
-     * @return Final aggregation result
-     */
-    private List<Map<String, Object>> computeFinalResults(Map<String, Map<String, Object>> workspace) {
-        List<Map<String, Object>> resultList = new ArrayList<>();
-        // Loop through all the values in the workspace map
-        for (Map<String, Object> groupWorkspace : workspace.values()) {
-            // Perform final result computation
-            for (Map.Entry<String, Operation> operationEntry : operationMap.entrySet()) {
-                String field = operationEntry.getKey();
-                Operation operation = operationEntry.getValue();
-                groupWorkspace.put(field, operation.result(groupWorkspace.get(field)));
-            }
-            resultList.add(groupWorkspace);
-        }
-        return resultList;
-    }
-
-    /**
-     * Computes intermediate results from the workspace
-     *
-     * @param workspace Workspace holding intermediate results
-     * @return Intermediate aggregation result
-     */
-    private List<Map<String, Object>> computeIntermediateResults(Map<String, Map<String, Object>> workspace) {
-        List<Map<String, Object>> resultList = new ArrayList<>();
-        // Loop through all the values in the workspace map
-        for (Map<String, Object> groupWorkspace : workspace.values()) {
-            Map<String, Object> intermediateResult = new HashMap<>(groupWorkspace);
-            // Perform result computation and insert into intermediate result
-            for (Map.Entry<String, Operation> operationEntry : operationMap.entrySet()) {
-                String field = operationEntry.getKey();
-                Operation operation = operationEntry.getValue();
-                intermediateResult.put(field, operation.result(groupWorkspace.get(field)));
-            }
-            resultList.add(intermediateResult);
-        }
-        return resultList;
+     * Clears out the intermediate data and the snapshot
+     */
+    private void reset() {
+        workspace = new HashMap<>();
+        changedGroups = new ArrayList<>();
+        snapshot = SnapshotList.newEditor();
+        snapshotStates = new ArrayList<>();
+        snapshotResult = Collections.emptyList();
     }
 }
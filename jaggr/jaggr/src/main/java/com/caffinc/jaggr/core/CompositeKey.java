@@ -0,0 +1,110 @@
+package com.caffinc.jaggr.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Key of a group formed by the values of several fields. A key can read its values straight out of the field
+ * value buffer of a document, which allows groups to be looked up without building a key for every document.
+ * Only keys that are copied with <code>copy()</code> are safe to store.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+final class CompositeKey {
+    private final Object[] values;
+    private final int[] indexes;
+    private int hash;
+
+    /**
+     * Creates a key that reads its values from the given positions of a buffer, as they are when
+     * <code>rehash()</code> is called
+     *
+     * @param buffer  Buffer holding the values of the key
+     * @param indexes Positions of the values of the key in the buffer
+     */
+    CompositeKey(Object[] buffer, int[] indexes) {
+        this.values = buffer;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Creates a key holding the given values
+     *
+     * @param values Values of the key
+     */
+    CompositeKey(Object[] values) {
+        this.values = values;
+        this.indexes = null;
+        rehash();
+    }
+
+    /**
+     * Recomputes the hash code of this key after the values in its buffer have changed
+     */
+    void rehash() {
+        int h = 1;
+        for (int i = 0; i < size(); i++) {
+            h = 31 * h + Objects.hashCode(get(i));
+        }
+        hash = h;
+    }
+
+    /**
+     * Gets the number of values in this key
+     *
+     * @return Number of values
+     */
+    int size() {
+        return indexes == null ? values.length : indexes.length;
+    }
+
+    /**
+     * Gets a value of this key
+     *
+     * @param i Position of the value in the key
+     * @return Value
+     */
+    Object get(int i) {
+        return indexes == null ? values[i] : values[indexes[i]];
+    }
+
+    /**
+     * Copies the current values of this key into a key that doesn't change with the buffer
+     *
+     * @return Copy of this key
+     */
+    CompositeKey copy() {
+        Object[] copy = new Object[size()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = get(i);
+        }
+        return new CompositeKey(copy);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof CompositeKey))
+            return false;
+        CompositeKey other = (CompositeKey) o;
+        if (hash != other.hash || size() != other.size())
+            return false;
+        for (int i = 0; i < size(); i++) {
+            if (!Objects.equals(get(i), other.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(copy().values);
+    }
+}
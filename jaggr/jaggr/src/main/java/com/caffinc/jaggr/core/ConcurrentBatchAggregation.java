@@ -0,0 +1,200 @@
+package com.caffinc.jaggr.core;
+
+import com.caffinc.jaggr.core.expressions.Expression;
+import com.caffinc.jaggr.core.operations.Operation;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Aggregates batches of JSON objects based on aggregation operations, accepting batches from several threads at
+ * once
+ * <p>
+ * Each thread aggregates its batches into a workspace of its own, without contending with the others, and the
+ * workspaces are merged when a result is requested. Every batch is aggregated entirely into one result:
+ * <code>getFinalResult()</code> waits for batches in progress to complete, and batches started after it are
+ * treated as entirely new data.
+ * <p>
+ * Batches from different threads are merged in no particular order, so the results of order dependent operations
+ * such as <code>FirstObjectOperation</code> and <code>CollectOperation</code> only follow the order of the
+ * batches of each thread.
+ * <p>
+ * The workspaces of the threads are only referenced by the aggregation, never by the threads themselves, so a
+ * pooled thread which stops aggregating doesn't keep any data alive once <code>getFinalResult()</code> has been
+ * called.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class ConcurrentBatchAggregation {
+    private final Aggregator aggregator;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Generation generation = new Generation();
+
+    /**
+     * Constructs a new ConcurrentBatchAggregation for the given grouping <code>_id</code> fields and
+     * <code>operationMap</code>
+     *
+     * @param _id            Fields to group data on
+     * @param groupingSets   Sets of fields to group data on, each forming its own groups, or null
+     * @param computedFields Expressions computing fields for the grouping and operations to use, keyed by name
+     * @param matches        Conditions objects must satisfy to be aggregated
+     * @param operationMap   Aggregation operations to perform
+     */
+    ConcurrentBatchAggregation(String[] _id, String[][] groupingSets, Map<String, Expression> computedFields,
+                               List<Expression> matches, Map<String, Operation> operationMap) {
+        this.aggregator = new Aggregator(_id, groupingSets, computedFields, matches, operationMap, false);
+    }
+
+    /**
+     * Gets the fields of a document used by this aggregation. Parsing just these fields from the input, for
+     * example with <code>JsonFileIterator</code>, gives the same result as parsing entire documents.
+     *
+     * @return Fields used, or null if an operation may use any field of the document
+     */
+    public Set<String> getRequiredFields() {
+        return aggregator.getRequiredFields();
+    }
+
+    /**
+     * Aggregates over a batch of Iterator of JSON Objects. May be called by several threads at once.
+     *
+     * @param objectIterator JSON Object iterator
+     * @return <code>this</code>
+     */
+    public ConcurrentBatchAggregation aggregateBatch(final Iterator<Map<String, Object>> objectIterator) {
+        aggregateBatch(new Iterable<Map<String, Object>>() {
+            @Override
+            public Iterator<Map<String, Object>> iterator() {
+                return objectIterator;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Aggregates over a batch of iterable list of JSON Objects. May be called by several threads at once.
+     *
+     * @param objectList Iterable list of JSON Objects
+     * @return <code>this</code>
+     */
+    public ConcurrentBatchAggregation aggregateBatch(final Iterable<Map<String, Object>> objectList) {
+        if (objectList != null) {
+            lock.readLock().lock();
+            try {
+                // Only the current thread adds its own slot, so there is no race between the lookup and the put
+                Thread thread = Thread.currentThread();
+                Slot slot = generation.slots.get(thread);
+                if (slot == null) {
+                    slot = new Slot(aggregator.newBuffer());
+                    generation.slots.put(thread, slot);
+                }
+                for (Map<String, Object> object : objectList) {
+                    aggregator.aggregate(object, slot.workspace, slot.buffer);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Gets the result of the aggregation in the current state, waiting for batches in progress to complete
+     * <p>
+     * The result is an immutable snapshot which doesn't change as more batches are computed. Unlike
+     * <code>BatchAggregation.getItermediateResult()</code>, the result document of every group is computed again
+     * on each call.
+     *
+     * @return Intermediate result of computations on data processed so far
+     */
+    public List<Map<String, Object>> getItermediateResult() {
+        lock.writeLock().lock();
+        try {
+            Map<Object, Object[]> workspace = generation.collect(aggregator);
+            List<Map<String, Object>> result = new ArrayList<>(workspace.size());
+            for (Map.Entry<Object, Object[]> groupEntry : workspace.entrySet()) {
+                result.add(aggregator.computeImmutableResult(groupEntry.getKey(), groupEntry.getValue()));
+            }
+            return Collections.unmodifiableList(result);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the final result of the aggregation
+     * <p>
+     * <code>Note:</code>
+     * This process finalizes the computation on the data passed to this system so far, and clears out the
+     * intermediate data. Batches in progress are completed first and included in the result, while additional
+     * batches are treated as entirely new data.
+     *
+     * @return Final result of computations on data processed
+     */
+    public List<Map<String, Object>> getFinalResult() {
+        Generation finished;
+        lock.writeLock().lock();
+        try {
+            finished = generation;
+            generation = new Generation();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // No thread aggregates into a finished generation, so it can be merged without holding the lock
+        return aggregator.computeResults(finished.finish(aggregator));
+    }
+
+    /**
+     * Workspaces of the threads aggregating between two calls to <code>getFinalResult()</code>, keyed by thread
+     */
+    private static final class Generation {
+        private final ConcurrentMap<Thread, Slot> slots = new ConcurrentHashMap<>();
+        private Map<Object, Object[]> workspace = new HashMap<>();
+
+        /**
+         * Merges the workspace of each thread into the workspace of the generation. Threads must not be
+         * aggregating into the generation while this runs.
+         *
+         * @param aggregator Aggregator the workspaces belong to
+         * @return Workspace holding the intermediate results of all threads
+         */
+        Map<Object, Object[]> collect(Aggregator aggregator) {
+            for (Slot slot : slots.values()) {
+                if (!slot.workspace.isEmpty()) {
+                    workspace = aggregator.merge(workspace, slot.workspace);
+                    slot.workspace = new HashMap<>();
+                }
+            }
+            return workspace;
+        }
+
+        /**
+         * Merges the workspace of each thread and releases the generation, which must not be used afterwards
+         *
+         * @param aggregator Aggregator the workspaces belong to
+         * @return Workspace holding the intermediate results of all threads
+         */
+        Map<Object, Object[]> finish(Aggregator aggregator) {
+            Map<Object, Object[]> collected = collect(aggregator);
+            slots.clear();
+            workspace = null;
+            return collected;
+        }
+    }
+
+    /**
+     * Workspace of a single thread within a generation
+     */
+    private static final class Slot {
+        private final Aggregator.Buffer buffer;
+        private Map<Object, Object[]> workspace = new HashMap<>();
+
+        Slot(Aggregator.Buffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.caffinc.jaggr.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs several independent aggregations over the same input in a single pass, so that the input is read and
+ * parsed once however many aggregations there are. Each object is fed to every aggregation in turn, and the
+ * result is one result list per aggregation, in the order the aggregations were given.
+ * <p>
+ * Reading a file with <code>JsonFileIterator</code> or <code>MappedJsonFile</code> restricted to the fields
+ * returned by <code>getRequiredFields()</code> parses just the fields used by any of the aggregations.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class MultiAggregation {
+    private final Aggregation[] aggregations;
+
+    /**
+     * Creates an executor for the given aggregations, which may still be used on their own as well
+     *
+     * @param aggregations Aggregations to run together, at least one
+     * @throws IllegalArgumentException if there are no aggregations or one of them is null
+     */
+    public MultiAggregation(Aggregation... aggregations) {
+        this(aggregations == null ? null : Arrays.asList(aggregations));
+    }
+
+    /**
+     * Creates an executor for the given aggregations, which may still be used on their own as well
+     *
+     * @param aggregations Aggregations to run together, at least one
+     * @throws IllegalArgumentException if there are no aggregations or one of them is null
+     */
+    public MultiAggregation(List<Aggregation> aggregations) {
+        if (aggregations == null || aggregations.isEmpty())
+            throw new IllegalArgumentException("At least one aggregation is required");
+        for (Aggregation aggregation : aggregations) {
+            if (aggregation == null)
+                throw new IllegalArgumentException("Aggregations must not be null");
+        }
+        this.aggregations = aggregations.toArray(new Aggregation[aggregations.size()]);
+    }
+
+    /**
+     * Gets the fields of a document used by any of the aggregations
+     *
+     * @return Fields used, or null if an operation may use any field of the document
+     */
+    public Set<String> getRequiredFields() {
+        Set<String> requiredFields = new LinkedHashSet<>();
+        for (Aggregation aggregation : aggregations) {
+            Set<String> fields = aggregation.getRequiredFields();
+            if (fields == null)
+                return null;
+            requiredFields.addAll(fields);
+        }
+        return requiredFields;
+    }
+
+    /**
+     * Aggregates over an Iterator of JSON Objects
+     *
+     * @param objectIterator JSON Object iterator
+     * @return Result of each aggregation, in the order the aggregations were given
+     */
+    public List<List<Map<String, Object>>> aggregate(final Iterator<Map<String, Object>> objectIterator) {
+        return aggregate(new Iterable<Map<String, Object>>() {
+            @Override
+            public Iterator<Map<String, Object>> iterator() {
+                return objectIterator;
+            }
+        });
+    }
+
+    /**
+     * Aggregates over an iterable list of JSON Objects, reading each object once and feeding it to every
+     * aggregation. Aggregations allowed to use the disk spill their groups as they would on their own.
+     *
+     * @param objectList Iterable list of JSON Objects
+     * @return Result of each aggregation, in the order the aggregations were given
+     */
+    public List<List<Map<String, Object>>> aggregate(Iterable<Map<String, Object>> objectList) {
+        List<Aggregation.Run> runs = new ArrayList<>(aggregations.length);
+        try {
+            for (Aggregation aggregation : aggregations) {
+                runs.add(aggregation.new Run());
+            }
+            if (objectList != null) {
+                for (Map<String, Object> object : objectList) {
+                    for (Aggregation.Run run : runs) {
+                        run.aggregate(object);
+                    }
+                }
+            }
+            List<List<Map<String, Object>>> results = new ArrayList<>(runs.size());
+            for (Aggregation.Run run : runs) {
+                results.add(run.computeResults());
+            }
+            return results;
+        } finally {
+            for (Aggregation.Run run : runs) {
+                run.close();
+            }
+        }
+    }
+
+    /**
+     * Aggregates over partitions of the input, each of which is read once and aggregated by every aggregation in
+     * a task of the given <code>ForkJoinPool</code>
+     * <p>
+     * Partial workspaces are merged in the order of the partitions, so the result of each aggregation is the same
+     * as aggregating the partitions one after another. Iterators that are <code>Closeable</code> are closed once
+     * they have been read. Aggregations allowed to use the disk spill the groups of each partition as they would
+     * on their own.
+     *
+     * @param partitions Partitions of the input, in order
+     * @param pool       Pool to run the aggregations in
+     * @return Result of each aggregation, in the order the aggregations were given
+     * @see Aggregation#aggregatePartitions(Collection, ForkJoinPool)
+     */
+    public List<List<Map<String, Object>>> aggregatePartitions(
+            Collection<? extends Iterable<Map<String, Object>>> partitions, ForkJoinPool pool) {
+        List<Aggregation.Run> runs = newRuns();
+        try {
+            if (partitions != null) {
+                Deque<ForkJoinTask<List<Aggregation.Run>>> pendingTasks = new ArrayDeque<>();
+                try {
+                    for (Iterable<Map<String, Object>> partition : partitions) {
+                        pendingTasks.add(pool.submit(new PartitionAggregationTask(partition)));
+                    }
+                    while (!pendingTasks.isEmpty()) {
+                        List<Aggregation.Run> partitionRuns = pendingTasks.poll().join();
+                        try {
+                            for (int i = 0; i < runs.size(); i++) {
+                                runs.get(i).append(partitionRuns.get(i));
+                            }
+                        } finally {
+                            close(partitionRuns);
+                        }
+                    }
+                } finally {
+                    // Only non-empty if a task failed
+                    for (ForkJoinTask<List<Aggregation.Run>> pendingTask : pendingTasks) {
+                        pendingTask.cancel(true);
+                        if (pendingTask.isDone() && !pendingTask.isCompletedAbnormally())
+                            close(pendingTask.getRawResult());
+                    }
+                }
+            }
+            List<List<Map<String, Object>>> results = new ArrayList<>(runs.size());
+            for (Aggregation.Run run : runs) {
+                results.add(run.computeResults());
+            }
+            return results;
+        } finally {
+            close(runs);
+        }
+    }
+
+    private List<Aggregation.Run> newRuns() {
+        List<Aggregation.Run> runs = new ArrayList<>(aggregations.length);
+        for (Aggregation aggregation : aggregations) {
+            runs.add(aggregation.new Run());
+        }
+        return runs;
+    }
+
+    private static void close(List<Aggregation.Run> runs) {
+        for (Aggregation.Run run : runs) {
+            run.close();
+        }
+    }
+
+    /**
+     * Aggregates a partition of the input into a run of its own for each aggregation
+     */
+    private class PartitionAggregationTask extends RecursiveTask<List<Aggregation.Run>> {
+        private static final long serialVersionUID = 1L;
+        private final Iterable<Map<String, Object>> partition;
+
+        PartitionAggregationTask(Iterable<Map<String, Object>> partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        protected List<Aggregation.Run> compute() {
+            List<Aggregation.Run> runs = newRuns();
+            Iterator<Map<String, Object>> iterator = partition.iterator();
+            try {
+                while (iterator.hasNext()) {
+                    Map<String, Object> object = iterator.next();
+                    for (Aggregation.Run run : runs) {
+                        run.aggregate(object);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                close(runs);
+                throw e;
+            } finally {
+                if (iterator instanceof Closeable) {
+                    try {
+                        ((Closeable) iterator).close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+            return runs;
+        }
+    }
+}
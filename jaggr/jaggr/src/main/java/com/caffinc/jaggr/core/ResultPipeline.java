@@ -0,0 +1,392 @@
+package com.caffinc.jaggr.core;
+
+import com.caffinc.jaggr.core.entities.TopNAccumulator;
+import com.caffinc.jaggr.core.expressions.Expression;
+import com.caffinc.jaggr.core.expressions.FieldBinding;
+import com.caffinc.jaggr.core.utils.FieldPath;
+import com.caffinc.jaggr.core.utils.FieldPathResolver;
+
+import java.util.*;
+
+/**
+ * Applies the stages following the grouping of an aggregation to its groups: having conditions, then sorting,
+ * then a limit, then a projection, and finally the aggregation of the results by another aggregation
+ * <p>
+ * Having conditions and sort keys are evaluated over the IDs of the groups and the results of just the operations
+ * they reference, before any result document is built. A sort followed by a limit keeps the first groups in a
+ * bounded heap, so only as many result documents are built as the limit allows, however many groups there are.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+final class ResultPipeline {
+    private static final int ID = -1;
+    private final Aggregator aggregator;
+    private final Expression[] havings;
+    /**
+     * Result fields referenced by the having conditions and sort keys, each read into its own slot
+     */
+    private final List<FieldPath> paths = new ArrayList<>();
+    /**
+     * Slot of the top level field each path starts with, whose value is computed once per group
+     */
+    private final int[] pathFields;
+    /**
+     * Rest of each path below its top level field, or null if the path is a top level field
+     */
+    private final FieldPath[] subPaths;
+    /**
+     * Operation computing each top level field, or <code>ID</code> for the ID of the group
+     */
+    private final int[] fieldOperations;
+    private final int[] sortIndexes;
+    private final FieldPath[] sortPaths;
+    private final boolean[] descending;
+    private final int limit;
+    private final String[] projectedFields;
+    private final Expression[] projections;
+    private final FieldPathResolver projectionResolver = new FieldPathResolver();
+    private final Aggregation next;
+    private final Comparator<Candidate> order = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate o1, Candidate o2) {
+            for (int i = 0; i < descending.length; i++) {
+                int comparison = compareValues(o1.keys[i], o2.keys[i]);
+                if (comparison != 0)
+                    return descending[i] ? -comparison : comparison;
+            }
+            return 0;
+        }
+    };
+
+    /**
+     * Compiles the stages following the grouping of an aggregation
+     *
+     * @param aggregator Aggregator computing the results of the groups
+     * @param stages     Stages to apply to the groups
+     * @throws IllegalArgumentException if a stage references a result field which is neither <code>_id</code> nor
+     *                                  the field of an operation
+     */
+    ResultPipeline(Aggregator aggregator, Stages stages) {
+        this.aggregator = aggregator;
+        final Map<FieldPath, Integer> slots = new HashMap<>();
+        FieldBinding binding = new FieldBinding() {
+            @Override
+            public int indexOf(FieldPath field) {
+                Integer slot = slots.get(field);
+                if (slot == null) {
+                    slot = paths.size();
+                    slots.put(field, slot);
+                    paths.add(field);
+                }
+                return slot;
+            }
+        };
+        this.havings = new Expression[stages.havings.size()];
+        for (int i = 0; i < havings.length; i++) {
+            havings[i] = stages.havings.get(i).bind(binding);
+        }
+        this.sortIndexes = new int[stages.sortFields.size()];
+        this.sortPaths = new FieldPath[sortIndexes.length];
+        this.descending = new boolean[sortIndexes.length];
+        int i = 0;
+        for (Map.Entry<String, Boolean> sortEntry : stages.sortFields.entrySet()) {
+            sortPaths[i] = new FieldPath(sortEntry.getKey());
+            sortIndexes[i] = binding.indexOf(sortPaths[i]);
+            descending[i] = !sortEntry.getValue();
+            i++;
+        }
+        this.pathFields = new int[paths.size()];
+        this.subPaths = new FieldPath[paths.size()];
+        Map<String, Integer> fieldSlots = new HashMap<>();
+        List<Integer> operations = new ArrayList<>();
+        for (i = 0; i < pathFields.length; i++) {
+            String field = paths.get(i).getSegments()[0];
+            Integer slot = fieldSlots.get(field);
+            if (slot == null) {
+                slot = operations.size();
+                fieldSlots.put(field, slot);
+                operations.add(indexOfResultField(field));
+            }
+            pathFields[i] = slot;
+            String path = paths.get(i).getField();
+            subPaths[i] = path.length() > field.length() ? new FieldPath(path.substring(field.length() + 1)) : null;
+        }
+        this.fieldOperations = new int[operations.size()];
+        for (i = 0; i < fieldOperations.length; i++) {
+            fieldOperations[i] = operations.get(i);
+        }
+        this.limit = stages.limit;
+        this.projectedFields = stages.projections.keySet().toArray(new String[stages.projections.size()]);
+        this.projections = new Expression[projectedFields.length];
+        FieldBinding projectionBinding = new FieldBinding() {
+            @Override
+            public int indexOf(FieldPath field) {
+                indexOfResultField(field.getSegments()[0]);
+                return projectionResolver.add(field);
+            }
+        };
+        for (i = 0; i < projections.length; i++) {
+            projections[i] = stages.projections.get(projectedFields[i]).bind(projectionBinding);
+        }
+        this.next = stages.next;
+    }
+
+    /**
+     * Gets the operation computing a top level field of the results
+     *
+     * @param field Top level field of the results
+     * @return Index of the operation, or <code>ID</code> for the ID of the group
+     * @throws IllegalArgumentException if the field is neither <code>_id</code> nor the field of an operation
+     */
+    private int indexOfResultField(String field) {
+        if ("_id".equals(field))
+            return ID;
+        int operation = aggregator.indexOfField(field);
+        if (operation < 0)
+            throw new IllegalArgumentException("Results have no field " + field
+                    + ", only _id and the fields of the operations");
+        return operation;
+    }
+
+    /**
+     * Computes the results of the groups of a workspace and applies every stage to them
+     *
+     * @param workspace Workspace holding intermediate results
+     * @return Aggregation result
+     */
+    List<Map<String, Object>> apply(Map<Object, Object[]> workspace) {
+        return finish(select(workspace));
+    }
+
+    /**
+     * Applies the having conditions, sort and limit to the groups of a workspace, and computes the results of
+     * just the groups selected
+     *
+     * @param workspace Workspace holding intermediate results
+     * @return Results of the selected groups, in order if they are sorted
+     */
+    List<Map<String, Object>> select(Map<Object, Object[]> workspace) {
+        if (havings.length == 0 && sortIndexes.length == 0 && limit == Integer.MAX_VALUE)
+            return aggregator.computeResults(workspace);
+        Object[] values = new Object[paths.size()];
+        Object[] fieldValues = new Object[fieldOperations.length];
+        List<Map<String, Object>> resultList = new ArrayList<>();
+        if (sortIndexes.length == 0) {
+            for (Map.Entry<Object, Object[]> groupEntry : workspace.entrySet()) {
+                if (resultList.size() == limit)
+                    break;
+                if (accept(groupEntry.getKey(), groupEntry.getValue(), values, fieldValues))
+                    resultList.add(aggregator.computeResult(groupEntry.getKey(), groupEntry.getValue()));
+            }
+            return resultList;
+        }
+        List<Candidate> candidates;
+        if (limit < workspace.size()) {
+            // The heap keeps the largest candidates, so it is given the reverse of the sort order
+            TopNAccumulator<Candidate> heap = new TopNAccumulator<>(limit, Collections.reverseOrder(order));
+            for (Map.Entry<Object, Object[]> groupEntry : workspace.entrySet()) {
+                if (accept(groupEntry.getKey(), groupEntry.getValue(), values, fieldValues))
+                    heap.offer(new Candidate(groupEntry.getKey(), groupEntry.getValue(), sortKeys(values)));
+            }
+            candidates = heap.toSortedList();
+        } else {
+            candidates = new ArrayList<>(workspace.size());
+            for (Map.Entry<Object, Object[]> groupEntry : workspace.entrySet()) {
+                if (accept(groupEntry.getKey(), groupEntry.getValue(), values, fieldValues))
+                    candidates.add(new Candidate(groupEntry.getKey(), groupEntry.getValue(), sortKeys(values)));
+            }
+            Collections.sort(candidates, order);
+        }
+        for (Candidate candidate : candidates) {
+            resultList.add(aggregator.computeResult(candidate.id, candidate.accumulators));
+        }
+        return resultList;
+    }
+
+    /**
+     * Combines the results selected from separate workspaces holding different groups, sorting them and applying
+     * the limit again
+     *
+     * @param resultList Results selected from each of the workspaces
+     * @return Combined results, in order if they are sorted
+     */
+    List<Map<String, Object>> combine(List<Map<String, Object>> resultList) {
+        if (sortIndexes.length > 0) {
+            List<Candidate> candidates = new ArrayList<>(resultList.size());
+            for (Map<String, Object> result : resultList) {
+                Object[] keys = new Object[sortPaths.length];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = sortPaths[i].getValue(result);
+                }
+                candidates.add(new Candidate(result, keys));
+            }
+            Collections.sort(candidates, order);
+            resultList = new ArrayList<>(resultList.size());
+            for (Candidate candidate : candidates) {
+                resultList.add(candidate.result);
+            }
+        }
+        return resultList.size() > limit ? new ArrayList<>(resultList.subList(0, limit)) : resultList;
+    }
+
+    /**
+     * Projects the selected results and aggregates them by the next aggregation, if there is one
+     *
+     * @param resultList Selected results
+     * @return Aggregation result
+     */
+    List<Map<String, Object>> finish(List<Map<String, Object>> resultList) {
+        if (projections.length > 0) {
+            Object[] values = new Object[projectionResolver.size()];
+            for (int i = 0; i < resultList.size(); i++) {
+                projectionResolver.resolve(resultList.get(i), values);
+                Map<String, Object> projected = new LinkedHashMap<>();
+                for (int j = 0; j < projections.length; j++) {
+                    projected.put(projectedFields[j], projections[j].evaluate(values));
+                }
+                resultList.set(i, projected);
+            }
+        }
+        return next != null ? next.aggregate(resultList) : resultList;
+    }
+
+    /**
+     * Reads the fields referenced by the having conditions and sort keys of a group, and checks the conditions
+     *
+     * @param id           ID of the group
+     * @param accumulators Accumulators of the group
+     * @param values       Slots to read the fields into
+     * @param fieldValues  Slots to compute the top level fields the paths start with into
+     * @return Whether the group satisfies every having condition
+     */
+    private boolean accept(Object id, Object[] accumulators, Object[] values, Object[] fieldValues) {
+        for (int i = 0; i < fieldOperations.length; i++) {
+            int operation = fieldOperations[i];
+            fieldValues[i] = operation == ID
+                    ? aggregator.computeId(id)
+                    : aggregator.computeResult(accumulators, operation);
+        }
+        for (int i = 0; i < values.length; i++) {
+            Object value = fieldValues[pathFields[i]];
+            if (subPaths[i] != null)
+                value = value instanceof Map ? subPaths[i].getValue((Map<String, Object>) value) : null;
+            values[i] = value;
+        }
+        for (Expression having : havings) {
+            if (!having.test(values))
+                return false;
+        }
+        return true;
+    }
+
+    private Object[] sortKeys(Object[] values) {
+        Object[] keys = new Object[sortIndexes.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = values[sortIndexes[i]];
+        }
+        return keys;
+    }
+
+    /**
+     * Orders two values, with null first, then numbers by value whatever their type, then strings, booleans and
+     * dates. Values of any other type are considered equal.
+     *
+     * @param value1 First value
+     * @param value2 Second value
+     * @return Negative, zero or positive as the first value is ordered before, with or after the second
+     */
+    static int compareValues(Object value1, Object value2) {
+        int rank1 = rank(value1);
+        int rank2 = rank(value2);
+        if (rank1 != rank2)
+            return rank1 < rank2 ? -1 : 1;
+        if (value1 instanceof Number) {
+            Number number1 = (Number) value1;
+            Number number2 = (Number) value2;
+            if (isIntegral(number1) && isIntegral(number2))
+                return Long.compare(number1.longValue(), number2.longValue());
+            return Double.compare(number1.doubleValue(), number2.doubleValue());
+        }
+        if (value1 instanceof String || value1 instanceof Boolean || value1 instanceof Date)
+            return ((Comparable<Object>) value1).compareTo(value2);
+        return 0;
+    }
+
+    private static int rank(Object value) {
+        if (value == null)
+            return 0;
+        if (value instanceof Number)
+            return 1;
+        if (value instanceof String)
+            return 2;
+        if (value instanceof Boolean)
+            return 3;
+        if (value instanceof Date)
+            return 4;
+        return 5;
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte;
+    }
+
+    /**
+     * A group or result being sorted, along with its sort keys
+     */
+    private static final class Candidate {
+        private final Object id;
+        private final Object[] accumulators;
+        private final Map<String, Object> result;
+        private final Object[] keys;
+
+        Candidate(Object id, Object[] accumulators, Object[] keys) {
+            this.id = id;
+            this.accumulators = accumulators;
+            this.result = null;
+            this.keys = keys;
+        }
+
+        Candidate(Map<String, Object> result, Object[] keys) {
+            this.id = null;
+            this.accumulators = null;
+            this.result = result;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * The stages following the grouping of an aggregation, as set on an <code>AggregationBuilder</code>
+     */
+    static final class Stages {
+        static final Stages NONE = new Stages(Collections.<Expression>emptyList(),
+                Collections.<String, Boolean>emptyMap(), Integer.MAX_VALUE, Collections.<String, Expression>emptyMap(),
+                null);
+        final List<Expression> havings;
+        final Map<String, Boolean> sortFields;
+        final int limit;
+        final Map<String, Expression> projections;
+        final Aggregation next;
+
+        /**
+         * Creates the stages following the grouping of an aggregation
+         *
+         * @param havings     Conditions results must satisfy
+         * @param sortFields  Fields to sort the results on, in order of precedence, each mapped to whether it is
+         *                    sorted in ascending order
+         * @param limit       Largest number of results to keep
+         * @param projections Expressions computing the fields of the projected results, keyed by name, or empty to
+         *                    keep the results as they are
+         * @param next        Aggregation aggregating the results, or null
+         */
+        Stages(List<Expression> havings, Map<String, Boolean> sortFields, int limit,
+               Map<String, Expression> projections, Aggregation next) {
+            this.havings = havings;
+            this.sortFields = sortFields;
+            this.limit = limit;
+            this.projections = projections;
+            this.next = next;
+        }
+    }
+}
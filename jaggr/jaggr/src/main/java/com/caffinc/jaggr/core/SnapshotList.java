@@ -0,0 +1,150 @@
+package com.caffinc.jaggr.core;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list which shares its structure with the lists published before and after it, so that publishing a
+ * new version after changing a few elements costs time proportional to the number of changes rather than the
+ * size of the list
+ * <p>
+ * The elements are held in a trie of nodes of 32 children, indexed by 5 bits of the position of the element at
+ * each level. An <code>Editor</code> changes copies of the nodes on the path to each changed element, reusing the
+ * copies it has already made until the next list is published, so published lists never change.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+final class SnapshotList<E> extends AbstractList<E> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private final Node root;
+    /**
+     * Number of bits to shift a position by to get the index of its child of the root, 0 if the root is a leaf
+     */
+    private final int shift;
+    private final int size;
+
+    private SnapshotList(Node root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    /**
+     * Creates an editor starting from an empty list
+     *
+     * @return Editor of an empty list
+     */
+    static <E> Editor<E> newEditor() {
+        return new Editor<>();
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return (E) find(root, shift, index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private static Object find(Node node, int shift, int index) {
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.children[(index >>> level) & MASK];
+        }
+        return node.children[index & MASK];
+    }
+
+    /**
+     * Changes a list and publishes immutable versions of it. An editor must only be used by one thread at a time.
+     */
+    static final class Editor<E> {
+        /**
+         * Marks the nodes copied since the last list was published, which may be changed in place
+         */
+        private Object owner = new Object();
+        private Node root = new Node(owner, new Object[WIDTH]);
+        private int shift;
+        private int size;
+
+        private Editor() {
+        }
+
+        E get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            return (E) find(root, shift, index);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void set(int index, E element) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            root = set(root, shift, index, element);
+        }
+
+        void add(E element) {
+            if (size == 1 << (shift + BITS)) {
+                // The trie is full, so it becomes the first child of a new root
+                Node newRoot = new Node(owner, new Object[WIDTH]);
+                newRoot.children[0] = root;
+                root = newRoot;
+                shift += BITS;
+            }
+            root = set(root, shift, size++, element);
+        }
+
+        /**
+         * Removes the last element
+         *
+         * @return Element removed
+         */
+        E removeLast() {
+            E last = get(size - 1);
+            root = set(root, shift, size - 1, null);
+            size--;
+            return last;
+        }
+
+        /**
+         * Publishes the current elements as an immutable list, which later changes don't affect
+         *
+         * @return List of the current elements
+         */
+        SnapshotList<E> publish() {
+            // Nodes of the published list must be copied again before they are changed
+            owner = new Object();
+            return new SnapshotList<>(root, shift, size);
+        }
+
+        private Node set(Node node, int level, int index, Object element) {
+            Node editable = node == null
+                    ? new Node(owner, new Object[WIDTH])
+                    : node.owner == owner ? node : new Node(owner, node.children.clone());
+            int i = (index >>> level) & MASK;
+            editable.children[i] = level == 0
+                    ? element
+                    : set((Node) editable.children[i], level - BITS, index, element);
+            return editable;
+        }
+    }
+
+    private static final class Node {
+        private final Object owner;
+        private final Object[] children;
+
+        Node(Object owner, Object[] children) {
+            this.owner = owner;
+            this.children = children;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.caffinc.jaggr.core;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of the aggregation of a single time window
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class WindowResult {
+    private final long start;
+    private final long end;
+    private final List<Map<String, Object>> result;
+
+    WindowResult(long start, long end, List<Map<String, Object>> result) {
+        this.start = start;
+        this.end = end;
+        this.result = result;
+    }
+
+    /**
+     * Gets the start of the window
+     *
+     * @return Earliest timestamp in the window, inclusive
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the end of the window
+     *
+     * @return Timestamp just after the latest one in the window, exclusive
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Gets the result of the aggregation over the documents in the window
+     *
+     * @return Aggregation result, one document per group
+     */
+    public List<Map<String, Object>> getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "WindowResult{" +
+                "start=" + start +
+                ", end=" + end +
+                ", result=" + result +
+                '}';
+    }
+}
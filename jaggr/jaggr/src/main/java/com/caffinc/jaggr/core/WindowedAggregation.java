@@ -0,0 +1,252 @@
+package com.caffinc.jaggr.core;
+
+import com.caffinc.jaggr.core.expressions.Expression;
+import com.caffinc.jaggr.core.operations.Operation;
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.*;
+
+/**
+ * Aggregates batches of JSON objects into time windows based on a timestamp field of each object
+ * <p>
+ * Windows are <code>size</code> long and start every <code>slide</code>, at multiples of <code>slide</code>. When
+ * <code>slide</code> equals <code>size</code> the windows are tumbling, and each object belongs to exactly one;
+ * otherwise they are sliding and overlap. Objects are aggregated once into a pane, the largest span of time that
+ * is never split by a window boundary, and the panes of a window are merged when it is complete.
+ * <p>
+ * The watermark trails the latest timestamp seen by the allowed lateness. A window is complete once its end is
+ * at or before the watermark. Its result is then computed, and panes no longer needed by any later window are
+ * evicted, so memory is bounded by the panes of the windows still open. Objects that only belong to windows
+ * that have already been completed are dropped and counted as late. Objects without a numeric or
+ * <code>Date</code> timestamp are ignored.
+ * <p>
+ * Panes are merged in order of time, so order dependent operations such as <code>FirstObjectOperation</code> and
+ * <code>CollectOperation</code> follow the order of the panes, and the order of arrival within each pane.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class WindowedAggregation {
+    private final Aggregator aggregator;
+    private final FieldPath timestampField;
+    private final long size;
+    private final long slide;
+    private final long paneSize;
+    private final long allowedLateness;
+    private TreeMap<Long, Map<Object, Object[]>> panes = new TreeMap<>();
+    private List<WindowResult> completedWindows = new ArrayList<>();
+    private long maxTimestamp = Long.MIN_VALUE;
+    private long nextWindowStart = Long.MIN_VALUE;
+    private long lateCount = 0;
+
+    /**
+     * Constructs a new WindowedAggregation for the given grouping <code>_id</code> fields and
+     * <code>operationMap</code>
+     *
+     * @param _id             Fields to group data on
+     * @param groupingSets    Sets of fields to group data on, each forming its own groups, or null
+     * @param computedFields  Expressions computing fields for the grouping and operations to use, keyed by name
+     * @param matches         Conditions objects must satisfy to be aggregated
+     * @param operationMap    Aggregation operations to perform
+     * @param timestampField  Field holding the timestamp of each object
+     * @param size            Length of each window
+     * @param slide           Distance between the starts of consecutive windows
+     * @param allowedLateness Distance the watermark trails the latest timestamp by
+     * @throws IllegalArgumentException if the timestamp field is null, the size or slide aren't positive, the
+     *                                  slide is larger than the size or the allowed lateness is negative
+     */
+    WindowedAggregation(String[] _id, String[][] groupingSets, Map<String, Expression> computedFields,
+                        List<Expression> matches, Map<String, Operation> operationMap, String timestampField,
+                        long size, long slide, long allowedLateness) {
+        if (size <= 0 || slide <= 0 || slide > size) {
+            throw new IllegalArgumentException("Windows must have a positive size and a slide no larger than the size");
+        }
+        if (allowedLateness < 0) {
+            throw new IllegalArgumentException("Allowed lateness must not be negative");
+        }
+        this.aggregator = new Aggregator(_id, groupingSets, computedFields, matches, operationMap, false);
+        this.timestampField = new FieldPath(timestampField);
+        this.size = size;
+        this.slide = slide;
+        this.paneSize = gcd(size, slide);
+        this.allowedLateness = allowedLateness;
+    }
+
+    /**
+     * Aggregates over a batch of Iterator of JSON Objects
+     *
+     * @param objectIterator JSON Object iterator
+     * @return <code>this</code>
+     */
+    public WindowedAggregation aggregateBatch(final Iterator<Map<String, Object>> objectIterator) {
+        aggregateBatch(new Iterable<Map<String, Object>>() {
+            @Override
+            public Iterator<Map<String, Object>> iterator() {
+                return objectIterator;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Aggregates over a batch of iterable list of JSON Objects, completing the windows the watermark has passed
+     * at the end of the batch
+     *
+     * @param objectList Iterable list of JSON Objects
+     * @return <code>this</code>
+     */
+    public WindowedAggregation aggregateBatch(final Iterable<Map<String, Object>> objectList) {
+        if (objectList != null) {
+            Aggregator.Buffer buffer = aggregator.newBuffer();
+            for (Map<String, Object> object : objectList) {
+                // Objects which don't match are dropped before they can move the watermark
+                if (!aggregator.extract(object, buffer))
+                    continue;
+                Object value = timestampField.getValue(object);
+                long timestamp;
+                if (value instanceof Number) {
+                    timestamp = ((Number) value).longValue();
+                } else if (value instanceof Date) {
+                    timestamp = ((Date) value).getTime();
+                } else {
+                    continue;
+                }
+                long paneStart = floor(timestamp, paneSize);
+                if (paneStart < nextWindowStart) {
+                    // Every window of the pane has been completed
+                    lateCount++;
+                    continue;
+                }
+                Map<Object, Object[]> pane = panes.get(paneStart);
+                if (pane == null) {
+                    pane = new HashMap<>();
+                    panes.put(paneStart, pane);
+                }
+                aggregator.aggregateExtracted(object, pane, buffer);
+                maxTimestamp = Math.max(maxTimestamp, timestamp);
+            }
+            completeWindows(getWatermark());
+        }
+        return this;
+    }
+
+    /**
+     * Moves the watermark forward, for example when no data has arrived for a while, completing the windows it
+     * passes. The watermark never moves back.
+     *
+     * @param watermark Timestamp up to which all data is expected to have arrived
+     * @return <code>this</code>
+     */
+    public WindowedAggregation advanceWatermark(long watermark) {
+        if (watermark > getWatermark()) {
+            maxTimestamp = watermark > Long.MAX_VALUE - allowedLateness ? Long.MAX_VALUE : watermark + allowedLateness;
+            completeWindows(getWatermark());
+        }
+        return this;
+    }
+
+    /**
+     * Gets the watermark, before which all windows are complete
+     *
+     * @return Latest timestamp seen less the allowed lateness, or <code>Long.MIN_VALUE</code> if no data was seen
+     */
+    public long getWatermark() {
+        return maxTimestamp == Long.MIN_VALUE ? Long.MIN_VALUE : maxTimestamp - allowedLateness;
+    }
+
+    /**
+     * Gets the number of objects dropped because all of their windows had already been completed
+     *
+     * @return Number of late objects
+     */
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * Gets the results of the windows completed since the last call, in order of their start. Windows without
+     * any data are left out.
+     *
+     * @return Results of completed windows
+     */
+    public List<WindowResult> getCompletedWindows() {
+        List<WindowResult> result = completedWindows;
+        completedWindows = new ArrayList<>();
+        return result;
+    }
+
+    /**
+     * Gets the final result of the aggregation, completing every window regardless of the watermark
+     * <p>
+     * <code>Note:</code>
+     * This process finalizes the computation on the data passed to this system so far, and clears out the
+     * intermediate data. Additional batches of aggregations will be treated as entirely new data.
+     *
+     * @return Results of all windows not yet returned by <code>getCompletedWindows()</code>, in order of their start
+     */
+    public List<WindowResult> getFinalResult() {
+        completeWindows(Long.MAX_VALUE);
+        List<WindowResult> result = completedWindows;
+        completedWindows = new ArrayList<>();
+        panes = new TreeMap<>();
+        maxTimestamp = Long.MIN_VALUE;
+        nextWindowStart = Long.MIN_VALUE;
+        return result;
+    }
+
+    /**
+     * Computes the results of the windows ending at or before the watermark and evicts the panes that no later
+     * window needs
+     *
+     * @param watermark Timestamp before which all windows are complete
+     */
+    private void completeWindows(long watermark) {
+        while (!panes.isEmpty()) {
+            // Skip windows without data, up to the earliest window of the first pane
+            long start = Math.max(nextWindowStart, floor(panes.firstKey() - size, slide) + slide);
+            if (start > Long.MAX_VALUE - size || start + size > watermark && watermark != Long.MAX_VALUE) {
+                break;
+            }
+            long end = start + size;
+            long nextStart = start + slide;
+            Map<Object, Object[]> workspace = new HashMap<>();
+            Iterator<Map.Entry<Long, Map<Object, Object[]>>> paneIterator =
+                    panes.subMap(start, end).entrySet().iterator();
+            while (paneIterator.hasNext()) {
+                Map.Entry<Long, Map<Object, Object[]>> paneEntry = paneIterator.next();
+                if (paneEntry.getKey() < nextStart) {
+                    // Last window of the pane, so its accumulators can be merged as they are
+                    workspace = aggregator.merge(workspace, paneEntry.getValue());
+                    paneIterator.remove();
+                } else {
+                    workspace = aggregator.merge(workspace, aggregator.copy(paneEntry.getValue()));
+                }
+            }
+            if (!workspace.isEmpty()) {
+                completedWindows.add(new WindowResult(start, end, aggregator.computeResults(workspace)));
+            }
+            nextWindowStart = nextStart;
+        }
+    }
+
+    /**
+     * Rounds a timestamp down to a multiple of the unit
+     *
+     * @param timestamp Timestamp to round
+     * @param unit      Positive unit to round to
+     * @return Largest multiple of the unit not larger than the timestamp
+     */
+    private static long floor(long timestamp, long unit) {
+        long remainder = timestamp % unit;
+        return remainder < 0 ? timestamp - remainder - unit : timestamp - remainder;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+}
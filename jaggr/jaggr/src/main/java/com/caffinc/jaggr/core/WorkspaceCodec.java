@@ -0,0 +1,419 @@
+package com.caffinc.jaggr.core;
+
+import com.caffinc.jaggr.core.entities.CountAccumulator;
+import com.caffinc.jaggr.core.entities.DoubleTopNAccumulator;
+import com.caffinc.jaggr.core.entities.HyperLogLog;
+import com.caffinc.jaggr.core.entities.MeanAccumulator;
+import com.caffinc.jaggr.core.entities.Multiset;
+import com.caffinc.jaggr.core.entities.NumberAccumulator;
+import com.caffinc.jaggr.core.entities.SpaceSaving;
+import com.caffinc.jaggr.core.entities.TDigest;
+import com.caffinc.jaggr.core.entities.TopNAccumulator;
+import com.caffinc.jaggr.core.entities.VarianceAccumulator;
+import com.caffinc.jaggr.core.operations.MaxOperation;
+import com.caffinc.jaggr.core.operations.MinOperation;
+import com.caffinc.jaggr.core.operations.Operation;
+import com.caffinc.jaggr.core.operations.TopNOperation;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Writes the groups of a workspace to binary streams and reads them back. Group IDs, accumulators and the JSON
+ * values held by them are written in a compact tagged format, falling back to Java serialization for any other
+ * type of value.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+final class WorkspaceCodec {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte LONG = 3;
+    private static final byte INTEGER = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte LIST = 6;
+    private static final byte SET = 7;
+    private static final byte MAP = 8;
+    private static final byte DATE = 9;
+    private static final byte COMPOSITE_KEY = 10;
+    private static final byte NUMBER_ACCUMULATOR = 11;
+    private static final byte MEAN_ACCUMULATOR = 12;
+    private static final byte VARIANCE_ACCUMULATOR = 13;
+    private static final byte COUNT_ACCUMULATOR = 14;
+    private static final byte TOP_N_ACCUMULATOR = 15;
+    private static final byte HYPER_LOG_LOG = 16;
+    private static final byte T_DIGEST = 17;
+    private static final byte SPACE_SAVING = 18;
+    private static final byte DOUBLE_TOP_N_ACCUMULATOR = 19;
+    private static final byte MULTISET = 20;
+    private static final byte SERIALIZED = 127;
+
+    private final Aggregator aggregator;
+    private final Operation[] operations;
+
+    /**
+     * Creates a codec for the workspaces of an aggregator
+     *
+     * @param aggregator Aggregator whose workspaces are written and read
+     */
+    WorkspaceCodec(Aggregator aggregator) {
+        this.aggregator = aggregator;
+        this.operations = aggregator.getOperations();
+    }
+
+    /**
+     * Writes a group, along with the number of documents in it if the aggregator tracks changes
+     *
+     * @param out          Output to write to
+     * @param id           ID of the group
+     * @param accumulators Accumulators of the group
+     * @throws IOException if the group could not be written, including if it holds a value which is neither
+     *                     supported nor <code>Serializable</code>
+     */
+    void writeGroup(DataOutput out, Object id, Object[] accumulators) throws IOException {
+        writeValue(out, id);
+        for (int i = 0; i < operations.length; i++) {
+            writeValue(out, accumulators[i]);
+        }
+        if (accumulators.length > operations.length)
+            out.writeLong(aggregator.getState(accumulators).documents);
+    }
+
+    /**
+     * Reads a group and merges it into a workspace, as though it was accumulated over documents following those
+     * already in the workspace
+     *
+     * @param in        Input to read from
+     * @param workspace Workspace to merge the group into
+     * @throws IOException if the group could not be read
+     */
+    void readGroup(DataInput in, Map<Object, Object[]> workspace) throws IOException {
+        Object id = readValue(in, null);
+        Object[] accumulators = aggregator.newAccumulators(id);
+        for (int i = 0; i < operations.length; i++) {
+            accumulators[i] = readValue(in, operations[i]);
+        }
+        if (accumulators.length > operations.length)
+            aggregator.getState(accumulators).documents = in.readLong();
+        aggregator.mergeGroup(workspace, id, accumulators);
+    }
+
+    private void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            byte[] bytes = ((String) value).getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Date && value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof CompositeKey) {
+            CompositeKey key = (CompositeKey) value;
+            out.writeByte(COMPOSITE_KEY);
+            out.writeInt(key.size());
+            for (int i = 0; i < key.size(); i++) {
+                writeValue(out, key.get(i));
+            }
+        } else if (value instanceof NumberAccumulator) {
+            NumberAccumulator accumulator = (NumberAccumulator) value;
+            out.writeByte(NUMBER_ACCUMULATOR);
+            out.writeLong(accumulator.longValue);
+            out.writeDouble(accumulator.doubleValue);
+            out.writeBoolean(accumulator.hasLong);
+            out.writeBoolean(accumulator.hasDouble);
+            out.writeLong(accumulator.longCount);
+            out.writeLong(accumulator.doubleCount);
+        } else if (value instanceof MeanAccumulator) {
+            MeanAccumulator accumulator = (MeanAccumulator) value;
+            out.writeByte(MEAN_ACCUMULATOR);
+            out.writeDouble(accumulator.sum);
+            out.writeLong(accumulator.count);
+        } else if (value instanceof VarianceAccumulator) {
+            VarianceAccumulator accumulator = (VarianceAccumulator) value;
+            out.writeByte(VARIANCE_ACCUMULATOR);
+            out.writeDouble(accumulator.mean);
+            out.writeDouble(accumulator.m2);
+            out.writeLong(accumulator.count);
+        } else if (value instanceof CountAccumulator) {
+            out.writeByte(COUNT_ACCUMULATOR);
+            out.writeInt(((CountAccumulator) value).count);
+        } else if (value instanceof HyperLogLog) {
+            HyperLogLog sketch = (HyperLogLog) value;
+            out.writeByte(HYPER_LOG_LOG);
+            out.writeByte(sketch.precision);
+            out.writeBoolean(sketch.registers != null);
+            if (sketch.registers != null) {
+                out.write(sketch.registers);
+            } else {
+                out.writeInt(sketch.sparseSize);
+                for (long hash : sketch.sparse) {
+                    if (hash != 0)
+                        out.writeLong(hash);
+                }
+            }
+        } else if (value instanceof TDigest) {
+            // Buffered values are written as they are, since compressing them would change the aggregation
+            TDigest sketch = (TDigest) value;
+            out.writeByte(T_DIGEST);
+            out.writeDouble(sketch.compression);
+            out.writeDouble(sketch.min);
+            out.writeDouble(sketch.max);
+            out.writeInt(sketch.centroidCount);
+            for (int i = 0; i < sketch.centroidCount; i++) {
+                out.writeDouble(sketch.means[i]);
+                out.writeDouble(sketch.weights[i]);
+            }
+            out.writeInt(sketch.bufferSize);
+            for (int i = 0; i < sketch.bufferSize; i++) {
+                out.writeDouble(sketch.buffer[i]);
+            }
+        } else if (value instanceof SpaceSaving) {
+            SpaceSaving sketch = (SpaceSaving) value;
+            List<SpaceSaving.Counter> counters = sketch.getCounters();
+            out.writeByte(SPACE_SAVING);
+            out.writeInt(sketch.capacity);
+            out.writeInt(counters.size());
+            for (SpaceSaving.Counter counter : counters) {
+                writeValue(out, counter.getValue());
+                out.writeLong(counter.getCount());
+                out.writeLong(counter.getError());
+            }
+        } else if (value instanceof TopNAccumulator) {
+            // The comparator of the accumulator is restored from the operation when it is read
+            TopNAccumulator<?> accumulator = (TopNAccumulator<?>) value;
+            out.writeByte(TOP_N_ACCUMULATOR);
+            out.writeInt(accumulator.n);
+            writeElements(out, accumulator.values());
+        } else if (value instanceof Multiset) {
+            // The comparator of a sorted multiset is restored from the operation when it is read
+            Map<Object, Long> counts = ((Multiset) value).getCounts();
+            out.writeByte(MULTISET);
+            out.writeBoolean(((Multiset) value).comparator != null);
+            out.writeInt(counts.size());
+            for (Map.Entry<Object, Long> countEntry : counts.entrySet()) {
+                writeValue(out, countEntry.getKey());
+                out.writeLong(countEntry.getValue());
+            }
+        } else if (value instanceof DoubleTopNAccumulator) {
+            DoubleTopNAccumulator accumulator = (DoubleTopNAccumulator) value;
+            out.writeByte(DOUBLE_TOP_N_ACCUMULATOR);
+            out.writeInt(accumulator.n);
+            out.writeInt(accumulator.size());
+            for (int i = 0; i < accumulator.size(); i++) {
+                out.writeDouble(accumulator.get(i));
+            }
+        } else if (value instanceof List) {
+            out.writeByte(LIST);
+            writeElements(out, (Collection<?>) value);
+        } else if (value instanceof Set) {
+            out.writeByte(SET);
+            writeElements(out, (Collection<?>) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            out.writeByte(SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+                objectOut.writeObject(value);
+            }
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+        }
+    }
+
+    private void writeElements(DataOutput out, Collection<?> elements) throws IOException {
+        out.writeInt(elements.size());
+        for (Object element : elements) {
+            writeValue(out, element);
+        }
+    }
+
+    /**
+     * Reads a value
+     *
+     * @param in        Input to read from
+     * @param operation Operation the value is an accumulator of, if any
+     * @return Value read
+     * @throws IOException if the value could not be read
+     */
+    private Object readValue(DataInput in, Operation operation) throws IOException {
+        byte tag = in.readByte();
+        int size;
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, UTF_8);
+            case DOUBLE:
+                return in.readDouble();
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DATE:
+                return new Date(in.readLong());
+            case COMPOSITE_KEY:
+                Object[] values = new Object[in.readInt()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readValue(in, null);
+                }
+                return new CompositeKey(values);
+            case NUMBER_ACCUMULATOR:
+                NumberAccumulator numberAccumulator = new NumberAccumulator();
+                numberAccumulator.longValue = in.readLong();
+                numberAccumulator.doubleValue = in.readDouble();
+                numberAccumulator.hasLong = in.readBoolean();
+                numberAccumulator.hasDouble = in.readBoolean();
+                numberAccumulator.longCount = in.readLong();
+                numberAccumulator.doubleCount = in.readLong();
+                return numberAccumulator;
+            case MEAN_ACCUMULATOR:
+                MeanAccumulator meanAccumulator = new MeanAccumulator();
+                meanAccumulator.sum = in.readDouble();
+                meanAccumulator.count = in.readLong();
+                return meanAccumulator;
+            case VARIANCE_ACCUMULATOR:
+                VarianceAccumulator varianceAccumulator = new VarianceAccumulator();
+                varianceAccumulator.mean = in.readDouble();
+                varianceAccumulator.m2 = in.readDouble();
+                varianceAccumulator.count = in.readLong();
+                return varianceAccumulator;
+            case COUNT_ACCUMULATOR:
+                CountAccumulator countAccumulator = new CountAccumulator();
+                countAccumulator.count = in.readInt();
+                return countAccumulator;
+            case HYPER_LOG_LOG:
+                HyperLogLog sketch = new HyperLogLog(in.readByte());
+                if (in.readBoolean()) {
+                    sketch.registers = new byte[1 << sketch.precision];
+                    sketch.sparse = null;
+                    in.readFully(sketch.registers);
+                } else {
+                    size = in.readInt();
+                    for (int i = 0; i < size; i++) {
+                        sketch.addHash(in.readLong());
+                    }
+                }
+                return sketch;
+            case T_DIGEST:
+                TDigest digest = new TDigest(in.readDouble());
+                digest.min = in.readDouble();
+                digest.max = in.readDouble();
+                digest.centroidCount = in.readInt();
+                digest.means = new double[digest.centroidCount];
+                digest.weights = new double[digest.centroidCount];
+                for (int i = 0; i < digest.centroidCount; i++) {
+                    digest.means[i] = in.readDouble();
+                    digest.weights[i] = in.readDouble();
+                }
+                digest.bufferSize = in.readInt();
+                digest.buffer = new double[digest.bufferSize];
+                for (int i = 0; i < digest.bufferSize; i++) {
+                    digest.buffer[i] = in.readDouble();
+                }
+                return digest;
+            case SPACE_SAVING:
+                SpaceSaving spaceSaving = new SpaceSaving(in.readInt());
+                size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    Object counted = readValue(in, operation);
+                    spaceSaving.restore(counted, in.readLong(), in.readLong());
+                }
+                return spaceSaving;
+            case TOP_N_ACCUMULATOR:
+                TopNAccumulator<Object> topN = new TopNAccumulator<>(in.readInt(),
+                        ((TopNOperation<Object>) operation).getComparator());
+                size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    topN.offer(readValue(in, null));
+                }
+                return topN;
+            case MULTISET:
+                Multiset multiset = new Multiset(in.readBoolean() ? getComparator(operation) : null);
+                size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    Object counted = readValue(in, null);
+                    multiset.add(counted, in.readLong());
+                }
+                return multiset;
+            case DOUBLE_TOP_N_ACCUMULATOR:
+                DoubleTopNAccumulator doubleTopN = new DoubleTopNAccumulator(in.readInt());
+                size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    doubleTopN.offer(in.readDouble());
+                }
+                return doubleTopN;
+            case LIST:
+                size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, null));
+                }
+                return list;
+            case SET:
+                size = in.readInt();
+                Set<Object> set = new LinkedHashSet<>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    set.add(readValue(in, null));
+                }
+                return set;
+            case MAP:
+                size = in.readInt();
+                Map<Object, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(in, null);
+                    map.put(key, readValue(in, null));
+                }
+                return map;
+            case SERIALIZED:
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                    return objectIn.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    /**
+     * Gets the comparator ordering the values kept by a retractable operation
+     */
+    private static Comparator<?> getComparator(Operation operation) throws IOException {
+        if (operation instanceof TopNOperation)
+            return ((TopNOperation<?>) operation).getComparator();
+        if (operation instanceof MinOperation || operation instanceof MaxOperation)
+            return Multiset.NUMBER_ORDER;
+        throw new IOException("No comparator for the values of " + operation);
+    }
+}
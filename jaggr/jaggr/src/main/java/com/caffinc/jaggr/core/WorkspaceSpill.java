@@ -0,0 +1,212 @@
+package com.caffinc.jaggr.core;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spills the groups of a workspace to temporary files, so that the number of groups held in memory stays
+ * bounded. Groups are split across files by the hash of their ID, and each file is merged back separately when
+ * the results are computed, so that only the groups of one file are held in memory at a time.
+ * <p>
+ * A file holding more groups than fit in memory is split again while it is read back, with a different hash,
+ * into as many files as it needs, so that however many groups are spilled no more than the given number are
+ * held in memory at once.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+final class WorkspaceSpill implements Closeable {
+    private static final int PARTITION_COUNT = 16;
+    private static final int MAX_PARTITION_COUNT = 256;
+    /**
+     * Depth after which files are read back whole, as IDs with the same hash code are never split apart
+     */
+    private static final int MAX_DEPTH = 8;
+    private final WorkspaceCodec codec;
+    private final File directory;
+    private final int maxGroupsInMemory;
+    private final int depth;
+    private final File[] files;
+    private final DataOutputStream[] outputs;
+    /**
+     * Number of groups written to each file, counting a group once each time it is spilled
+     */
+    private final long[] groupCounts;
+
+    /**
+     * Creates the temporary files to spill groups to
+     *
+     * @param aggregator        Aggregator whose workspaces are spilled
+     * @param directory         Directory to create the files in, or null for the default temporary directory
+     * @param maxGroupsInMemory Number of groups to hold in memory while merging the files back
+     * @throws IOException if the files could not be created
+     */
+    WorkspaceSpill(Aggregator aggregator, File directory, int maxGroupsInMemory) throws IOException {
+        this(new WorkspaceCodec(aggregator), directory, maxGroupsInMemory, PARTITION_COUNT, 0);
+    }
+
+    private WorkspaceSpill(WorkspaceCodec codec, File directory, int maxGroupsInMemory, int partitionCount,
+                           int depth) throws IOException {
+        this.codec = codec;
+        this.directory = directory;
+        this.maxGroupsInMemory = maxGroupsInMemory;
+        this.depth = depth;
+        this.files = new File[partitionCount];
+        this.outputs = new DataOutputStream[partitionCount];
+        this.groupCounts = new long[partitionCount];
+        try {
+            for (int i = 0; i < partitionCount; i++) {
+                files[i] = directory == null
+                        ? Files.createTempFile("jaggr-spill", ".bin").toFile()
+                        : Files.createTempFile(directory.toPath(), "jaggr-spill", ".bin").toFile();
+                files[i].deleteOnExit();
+                outputs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[i])));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes every group of the workspace to the files. The groups must have been accumulated over documents
+     * following those of the groups spilled before. The workspace should be discarded afterwards.
+     *
+     * @param workspace Workspace to spill
+     * @throws IOException if a group could not be written
+     */
+    void spill(Map<Object, Object[]> workspace) throws IOException {
+        for (Map.Entry<Object, Object[]> groupEntry : workspace.entrySet()) {
+            Object id = groupEntry.getKey();
+            int partition = partition(id);
+            codec.writeGroup(outputs[partition], id, groupEntry.getValue());
+            groupCounts[partition]++;
+        }
+    }
+
+    /**
+     * Moves the groups spilled by another spill of the same aggregator into this one, as though they were
+     * spilled after the groups spilled here so far. The other spill is closed.
+     *
+     * @param other Spill holding groups of documents following those of the groups spilled here
+     * @throws IOException if the groups could not be moved
+     */
+    void append(WorkspaceSpill other) throws IOException {
+        try {
+            for (int i = 0; i < files.length; i++) {
+                // Both spills split groups the same way, so each file is appended to the matching one
+                other.outputs[i].close();
+                other.outputs[i] = null;
+                Files.copy(other.files[i].toPath(), outputs[i]);
+                groupCounts[i] += other.groupCounts[i];
+            }
+        } finally {
+            other.close();
+        }
+    }
+
+    /**
+     * Selects the results of all the groups spilled so far, followed by those of the given workspace, one file at
+     * a time. The files are deleted afterwards.
+     *
+     * @param workspace Workspace holding intermediate results of the documents following the spilled ones
+     * @param pipeline  Pipeline selecting the results of the groups of each file
+     * @return Results selected from each of the files, to be combined by the pipeline
+     * @throws IOException if the groups could not be read back
+     */
+    List<Map<String, Object>> computeResults(Map<Object, Object[]> workspace, ResultPipeline pipeline)
+            throws IOException {
+        spill(workspace);
+        List<Map<String, Object>> resultList = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            outputs[i].close();
+            outputs[i] = null;
+            resultList.addAll(computeResults(i, pipeline));
+        }
+        return resultList;
+    }
+
+    /**
+     * Merges the groups of a file back and selects their results. Once more groups are read than fit in memory,
+     * they are spilled to files of their own, along with the rest of the file, which are merged back in turn.
+     */
+    private List<Map<String, Object>> computeResults(int partition, ResultPipeline pipeline) throws IOException {
+        Map<Object, Object[]> workspace = new HashMap<>();
+        WorkspaceSpill overflow = null;
+        try {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(files[partition])))) {
+                while (!isAtEnd(input)) {
+                    codec.readGroup(input, workspace);
+                    if (workspace.size() > maxGroupsInMemory && depth < MAX_DEPTH) {
+                        if (overflow == null) {
+                            int partitionCount = (int) Math.min(MAX_PARTITION_COUNT,
+                                    Math.max(2, groupCounts[partition] / maxGroupsInMemory + 1));
+                            overflow = new WorkspaceSpill(codec, directory, maxGroupsInMemory, partitionCount,
+                                    depth + 1);
+                        }
+                        overflow.spill(workspace);
+                        workspace = new HashMap<>();
+                    }
+                }
+            }
+            Files.delete(files[partition].toPath());
+            files[partition] = null;
+            return overflow == null ? pipeline.select(workspace) : overflow.computeResults(workspace, pipeline);
+        } finally {
+            if (overflow != null)
+                overflow.close();
+        }
+    }
+
+    /**
+     * Checks whether a stream has been read completely, without consuming any data
+     *
+     * @param input Stream supporting <code>mark()</code>
+     * @return true if there is no more data
+     * @throws IOException if the stream could not be read
+     */
+    private static boolean isAtEnd(DataInputStream input) throws IOException {
+        input.mark(1);
+        int next = input.read();
+        input.reset();
+        return next < 0;
+    }
+
+    /**
+     * Closes and deletes any files that remain
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < files.length; i++) {
+            if (outputs[i] != null) {
+                try {
+                    outputs[i].close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                outputs[i] = null;
+            }
+            if (files[i] != null) {
+                files[i].delete();
+                files[i] = null;
+            }
+        }
+    }
+
+    private int partition(Object id) {
+        // Mix the bits with a seed for each depth, since the workspaces reading each partition back use the same
+        // hash, and the files split again at the next depth must split the groups of this one
+        int hash = (id == null ? 0 : id.hashCode()) ^ (depth * 0x9e3779b9);
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return (hash & 0x7fffffff) % files.length;
+    }
+}
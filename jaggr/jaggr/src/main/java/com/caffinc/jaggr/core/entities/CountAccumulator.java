@@ -0,0 +1,22 @@
+package com.caffinc.jaggr.core.entities;
+
+/**
+ * Mutable accumulator holding a count
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class CountAccumulator {
+    public int count;
+
+    /**
+     * Creates a copy of this accumulator
+     *
+     * @return Accumulator holding the same count
+     */
+    public CountAccumulator copy() {
+        CountAccumulator copy = new CountAccumulator();
+        copy.count = count;
+        return copy;
+    }
+}
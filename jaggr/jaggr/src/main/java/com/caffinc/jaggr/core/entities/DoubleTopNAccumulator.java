@@ -0,0 +1,132 @@
+package com.caffinc.jaggr.core.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mutable accumulator holding the N largest numbers seen as primitive doubles, in a min-heap whose root is the
+ * smallest number kept
+ * <p>
+ * As in <code>TopNAccumulator</code>, a number which isn't larger than the root is rejected with a single
+ * comparison, and one which is replaces the root with a single sift, without boxing or calls to a comparator.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class DoubleTopNAccumulator {
+    private static final int INITIAL_CAPACITY = 16;
+
+    public final int n;
+    private double[] heap;
+    private int size;
+
+    /**
+     * Creates an empty accumulator
+     *
+     * @param n Number of values to keep, at least 1
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    public DoubleTopNAccumulator(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("N must be at least 1");
+        this.n = n;
+        this.heap = new double[Math.min(n, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Offers a number, keeping it if it is among the N largest numbers seen
+     *
+     * @param value Number to offer, not NaN
+     */
+    public void offer(double value) {
+        if (size < n) {
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, (int) Math.min(n, heap.length * 2L));
+            siftUp(size++, value);
+        } else if (value > heap[0]) {
+            siftDown(value);
+        }
+    }
+
+    /**
+     * Offers all the numbers of another accumulator, leaving it unchanged
+     *
+     * @param other Accumulator to merge
+     */
+    public void merge(DoubleTopNAccumulator other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.heap[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets a number kept
+     *
+     * @param index Index of the number, from 0 to <code>size() - 1</code>, in no particular order
+     * @return Number at the index
+     */
+    public double get(int index) {
+        return heap[index];
+    }
+
+    /**
+     * Gets the numbers kept, sorted with the largest first
+     *
+     * @return New list of the numbers
+     */
+    public List<Double> toSortedList() {
+        double[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted);
+        List<Double> result = new ArrayList<>(size);
+        for (int i = size - 1; i >= 0; i--) {
+            result.add(sorted[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a copy of this accumulator
+     *
+     * @return Accumulator holding the same numbers
+     */
+    public DoubleTopNAccumulator copy() {
+        DoubleTopNAccumulator copy = new DoubleTopNAccumulator(n);
+        copy.heap = Arrays.copyOf(heap, heap.length);
+        copy.size = size;
+        return copy;
+    }
+
+    private void siftUp(int index, double value) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= value)
+                break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * Replaces the root with a larger number and restores the heap order
+     */
+    private void siftDown(double value) {
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child])
+                child++;
+            if (value <= heap[child])
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
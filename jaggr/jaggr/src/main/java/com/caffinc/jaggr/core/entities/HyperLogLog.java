@@ -0,0 +1,229 @@
+package com.caffinc.jaggr.core.entities;
+
+import java.nio.charset.Charset;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values added to it
+ * <p>
+ * The sketch holds <code>2^precision</code> one byte registers, and its estimates have a relative standard error
+ * of about <code>1.04 / sqrt(2^precision)</code>. Until it has seen a thirty-second as many distinct values as it
+ * has registers, the sketch instead keeps the hashes of the values themselves and counts them exactly, so that
+ * sketches of few values take less memory than the registers would.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int INITIAL_SPARSE_CAPACITY = 8;
+
+    public final int precision;
+    /**
+     * Registers of the dense sketch, or null while the sketch is sparse
+     */
+    public byte[] registers;
+    /**
+     * Open addressing hash set of the hashes added while the sketch is sparse, with 0 marking empty slots
+     */
+    public long[] sparse;
+    public int sparseSize;
+
+    /**
+     * Creates an empty sketch
+     *
+     * @param precision Number of bits of the hash used to pick a register, from <code>MIN_PRECISION</code> to
+     *                  <code>MAX_PRECISION</code>
+     * @throws IllegalArgumentException if the precision is out of range
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        this.precision = precision;
+        this.sparse = new long[INITIAL_SPARSE_CAPACITY];
+    }
+
+    /**
+     * Adds a value to the sketch
+     *
+     * @param value Value to add, not null
+     */
+    public void add(Object value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * Adds the 64 bit hash of a value to the sketch
+     *
+     * @param hash Hash of the value
+     */
+    public void addHash(long hash) {
+        if (registers != null) {
+            addToRegisters(registers, hash);
+            return;
+        }
+        // 0 marks empty slots, so it stands in for 1, which is just as unlikely
+        if (hash == 0)
+            hash = 1;
+        int mask = sparse.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (sparse[slot] != 0) {
+            if (sparse[slot] == hash)
+                return;
+            slot = (slot + 1) & mask;
+        }
+        sparse[slot] = hash;
+        sparseSize++;
+        if (sparseSize > (1 << precision) / 32) {
+            toDense();
+        } else if (sparseSize * 2 > sparse.length) {
+            long[] hashes = sparse;
+            sparse = new long[hashes.length * 2];
+            sparseSize = 0;
+            for (long existing : hashes) {
+                if (existing != 0)
+                    addHash(existing);
+            }
+        }
+    }
+
+    /**
+     * Merges another sketch of the same precision into this one
+     *
+     * @param other Sketch to merge, which is left unchanged
+     * @throws IllegalArgumentException if the sketches have different precisions
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("Only sketches of the same precision can be merged");
+        if (other.registers == null) {
+            for (long hash : other.sparse) {
+                if (hash != 0)
+                    addHash(hash);
+            }
+            return;
+        }
+        if (registers == null)
+            toDense();
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values added to the sketch
+     *
+     * @return Estimated number of distinct values, exact while the sketch is sparse
+     */
+    public long estimate() {
+        if (registers == null)
+            return sparseSize;
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0)
+                zeros++;
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Creates a copy of this sketch
+     *
+     * @return Sketch holding the same values
+     */
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        copy.registers = registers == null ? null : registers.clone();
+        copy.sparse = sparse == null ? null : sparse.clone();
+        copy.sparseSize = sparseSize;
+        return copy;
+    }
+
+    /**
+     * Computes a 64 bit hash of a value. Values that are equal have the same hash, and the hash of a value only
+     * depends on its type and contents, so it is the same in every JVM.
+     *
+     * @param value Value to hash, not null
+     * @return Hash of the value
+     */
+    public static long hash(Object value) {
+        long hash;
+        if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(UTF_8);
+            hash = 0x9E3779B97F4A7C15L ^ bytes.length;
+            for (byte b : bytes) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+            }
+        } else if (value instanceof Double) {
+            hash = Double.doubleToLongBits((Double) value) ^ 0x5851F42D4C957F2DL;
+        } else if (value instanceof Long) {
+            hash = (Long) value ^ 0x14057B7EF767814FL;
+        } else {
+            hash = ((long) value.getClass().getName().hashCode() << 32) ^ value.hashCode();
+        }
+        return mix(hash);
+    }
+
+    private void toDense() {
+        byte[] dense = new byte[1 << precision];
+        for (long hash : sparse) {
+            if (hash != 0)
+                addToRegisters(dense, hash);
+        }
+        registers = dense;
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private void addToRegisters(byte[] registers, long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Position of the first set bit in the remaining bits, with a guard bit in case they are all 0
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[index])
+            registers[index] = rank;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * Finalizes a hash so that every bit of the input affects every bit of the output
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog{" +
+                "precision=" + precision +
+                ", estimate=" + estimate() +
+                ", sparse=" + (registers == null) +
+                '}';
+    }
+}
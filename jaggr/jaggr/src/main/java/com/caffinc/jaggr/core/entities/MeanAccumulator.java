@@ -0,0 +1,24 @@
+package com.caffinc.jaggr.core.entities;
+
+/**
+ * Mutable accumulator holding the sum and count of a set of values
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class MeanAccumulator {
+    public double sum;
+    public long count;
+
+    /**
+     * Creates a copy of this accumulator
+     *
+     * @return Accumulator holding the same values
+     */
+    public MeanAccumulator copy() {
+        MeanAccumulator copy = new MeanAccumulator();
+        copy.sum = sum;
+        copy.count = count;
+        return copy;
+    }
+}
@@ -0,0 +1,216 @@
+package com.caffinc.jaggr.core.entities;
+
+import java.util.*;
+
+/**
+ * Mutable multiset counting how many times each value was added, so that values can be removed again
+ * <p>
+ * With a comparator, the values are kept in a sorted map, so the smallest and largest values are found in
+ * O(log n) time. Values the comparator considers equal but which aren't <code>equals()</code> are counted
+ * separately. Without a comparator, the values are kept in a hash map and have no order.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class Multiset {
+    /**
+     * Orders numbers by value whatever their type, integral values before floating point ones of the same value
+     */
+    public static final Comparator<Object> NUMBER_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object o1, Object o2) {
+            Number n1 = (Number) o1;
+            Number n2 = (Number) o2;
+            boolean integral1 = n1 instanceof Long || n1 instanceof Integer;
+            boolean integral2 = n2 instanceof Long || n2 instanceof Integer;
+            if (integral1 && integral2)
+                return Long.compare(n1.longValue(), n2.longValue());
+            int comparison = Double.compare(n1.doubleValue(), n2.doubleValue());
+            if (comparison != 0 || integral1 == integral2)
+                return comparison;
+            return integral1 ? -1 : 1;
+        }
+    };
+
+    public final Comparator<Object> comparator;
+    /**
+     * Counts of the values, by the first value added of each set of values the comparator considers equal
+     */
+    private final TreeMap<Object, Map<Object, long[]>> sorted;
+    private final Map<Object, long[]> unsorted;
+    private long size;
+
+    /**
+     * Creates an empty multiset
+     *
+     * @param comparator Comparator ordering the values, or null to keep them in no order
+     */
+    public Multiset(Comparator<?> comparator) {
+        this.comparator = (Comparator<Object>) comparator;
+        this.sorted = comparator != null ? new TreeMap<Object, Map<Object, long[]>>(this.comparator) : null;
+        this.unsorted = comparator != null ? null : new HashMap<Object, long[]>();
+    }
+
+    /**
+     * Adds a value once
+     *
+     * @param value Value to add
+     */
+    public void add(Object value) {
+        add(value, 1);
+    }
+
+    /**
+     * Adds a value a number of times
+     *
+     * @param value Value to add
+     * @param count Number of times to add it, at least 1
+     */
+    public void add(Object value, long count) {
+        Map<Object, long[]> counts = unsorted;
+        if (sorted != null) {
+            counts = sorted.get(value);
+            if (counts == null) {
+                counts = new LinkedHashMap<>(2);
+                sorted.put(value, counts);
+            }
+        }
+        long[] valueCount = counts.get(value);
+        if (valueCount == null)
+            counts.put(value, new long[]{count});
+        else
+            valueCount[0] += count;
+        size += count;
+    }
+
+    /**
+     * Removes a value once
+     *
+     * @param value Value to remove
+     * @return Whether the value was in the multiset
+     */
+    public boolean remove(Object value) {
+        Map<Object, long[]> counts = sorted != null ? sorted.get(value) : unsorted;
+        long[] valueCount = counts == null ? null : counts.get(value);
+        if (valueCount == null)
+            return false;
+        if (--valueCount[0] == 0) {
+            counts.remove(value);
+            if (sorted != null && counts.isEmpty())
+                sorted.remove(value);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Gets the number of values, counting each as many times as it was added
+     *
+     * @return Number of values
+     */
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the smallest value of a sorted multiset
+     *
+     * @return Smallest value, or null if the multiset is empty
+     */
+    public Object first() {
+        return sorted.isEmpty() ? null : sorted.firstEntry().getValue().keySet().iterator().next();
+    }
+
+    /**
+     * Gets the largest value of a sorted multiset
+     *
+     * @return Largest value, or null if the multiset is empty
+     */
+    public Object last() {
+        return sorted.isEmpty() ? null : sorted.lastEntry().getValue().keySet().iterator().next();
+    }
+
+    /**
+     * Gets the largest values of a sorted multiset, each as many times as it was added
+     *
+     * @param n Number of values to get
+     * @return Up to n values, largest first
+     */
+    public List<Object> largest(int n) {
+        List<Object> largest = new ArrayList<>((int) Math.min(n, size));
+        for (Map<Object, long[]> counts : sorted.descendingMap().values()) {
+            for (Map.Entry<Object, long[]> countEntry : counts.entrySet()) {
+                for (long i = 0; i < countEntry.getValue()[0]; i++) {
+                    if (largest.size() == n)
+                        return largest;
+                    largest.add(countEntry.getKey());
+                }
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Gets the distinct values
+     *
+     * @return New set of the values, in order if the multiset is sorted
+     */
+    public Set<Object> elementSet() {
+        if (unsorted != null)
+            return new HashSet<>(unsorted.keySet());
+        Set<Object> elements = new LinkedHashSet<>();
+        for (Map<Object, long[]> counts : sorted.values()) {
+            elements.addAll(counts.keySet());
+        }
+        return elements;
+    }
+
+    /**
+     * Gets the number of times each distinct value was added
+     *
+     * @return New map of the counts, by value, in order if the multiset is sorted
+     */
+    public Map<Object, Long> getCounts() {
+        Map<Object, Long> counts = new LinkedHashMap<>();
+        if (unsorted != null) {
+            putCounts(unsorted, counts);
+        } else {
+            for (Map<Object, long[]> sortedCounts : sorted.values()) {
+                putCounts(sortedCounts, counts);
+            }
+        }
+        return counts;
+    }
+
+    private static void putCounts(Map<Object, long[]> source, Map<Object, Long> target) {
+        for (Map.Entry<Object, long[]> countEntry : source.entrySet()) {
+            target.put(countEntry.getKey(), countEntry.getValue()[0]);
+        }
+    }
+
+    /**
+     * Adds all the values of another multiset, leaving it unchanged
+     *
+     * @param other Multiset to merge
+     */
+    public void merge(Multiset other) {
+        for (Map.Entry<Object, Long> countEntry : other.getCounts().entrySet()) {
+            add(countEntry.getKey(), countEntry.getValue());
+        }
+    }
+
+    /**
+     * Creates a copy of this multiset
+     *
+     * @return Multiset holding the same values
+     */
+    public Multiset copy() {
+        Multiset copy = new Multiset(comparator);
+        copy.merge(this);
+        return copy;
+    }
+}
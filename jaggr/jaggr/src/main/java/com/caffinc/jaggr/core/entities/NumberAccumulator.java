@@ -0,0 +1,65 @@
+package com.caffinc.jaggr.core.entities;
+
+/**
+ * Mutable accumulator for numeric values that keeps integral and floating point values apart, so that integral
+ * values are never rounded through a <code>double</code>
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class NumberAccumulator {
+    public long longValue;
+    public double doubleValue;
+    public boolean hasLong;
+    public boolean hasDouble;
+    /**
+     * Number of integral and floating point values added, kept by operations which retract values so that they
+     * know when none are left
+     */
+    public long longCount;
+    public long doubleCount;
+
+    /**
+     * Adds an integral value to <code>longValue</code>, moving the integral sum over to <code>doubleValue</code>
+     * if it would overflow
+     *
+     * @param value Value to add
+     */
+    public void addLong(long value) {
+        long sum = longValue + value;
+        if (((longValue ^ sum) & (value ^ sum)) < 0) {
+            doubleValue += (double) longValue + value;
+            hasDouble = true;
+            longValue = 0;
+        } else {
+            longValue = sum;
+        }
+        hasLong = true;
+    }
+
+    /**
+     * Adds a floating point value to <code>doubleValue</code>
+     *
+     * @param value Value to add
+     */
+    public void addDouble(double value) {
+        doubleValue += value;
+        hasDouble = true;
+    }
+
+    /**
+     * Creates a copy of this accumulator
+     *
+     * @return Accumulator holding the same values
+     */
+    public NumberAccumulator copy() {
+        NumberAccumulator copy = new NumberAccumulator();
+        copy.longValue = longValue;
+        copy.doubleValue = doubleValue;
+        copy.hasLong = hasLong;
+        copy.hasDouble = hasDouble;
+        copy.longCount = longCount;
+        copy.doubleCount = doubleCount;
+        return copy;
+    }
+}
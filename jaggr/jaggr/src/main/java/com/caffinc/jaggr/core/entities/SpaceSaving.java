@@ -0,0 +1,256 @@
+package com.caffinc.jaggr.core.entities;
+
+import java.util.*;
+
+/**
+ * Space-Saving sketch estimating the most frequent values added to it with a fixed number of counters
+ * <p>
+ * While there are fewer distinct values than counters, every value is counted exactly. Once all the counters are
+ * taken, a new value takes over the counter with the smallest count, starting from that count plus one, and the
+ * count it took over is recorded as its error. The count of a value is therefore never underestimated, and
+ * overestimated by at most its error, which is never more than <code>total / capacity</code>. Any value occurring
+ * more often than that is guaranteed to hold a counter.
+ * <p>
+ * The counters are kept in a min-heap by count, so that adding a value takes O(log capacity) time.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class SpaceSaving {
+    public final int capacity;
+    private final Map<Object, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+
+    /**
+     * Creates an empty sketch
+     *
+     * @param capacity Number of counters, at least 1
+     * @throws IllegalArgumentException if the capacity is less than 1
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        this.capacity = capacity;
+        this.counters = new HashMap<>();
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Counts an occurrence of a value
+     *
+     * @param value Value to count, not null
+     */
+    public void add(Object value) {
+        Counter counter = counters.get(value);
+        if (counter != null) {
+            counter.count++;
+            siftDown(counter.index);
+        } else if (size < capacity) {
+            insert(new Counter(value, 1, 0));
+        } else {
+            Counter min = heap[0];
+            counters.remove(min.value);
+            counter = new Counter(value, min.count + 1, min.count);
+            counter.index = 0;
+            heap[0] = counter;
+            counters.put(value, counter);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Adds a counter for a value which isn't counted yet, as restored from a serialized sketch
+     *
+     * @param value Value counted
+     * @param count Estimated count of the value
+     * @param error Amount by which the count may be overestimated
+     * @throws IllegalStateException if the value is already counted or all counters are taken
+     */
+    public void restore(Object value, long count, long error) {
+        if (size == capacity || counters.containsKey(value))
+            throw new IllegalStateException("Value " + value + " can't be restored");
+        insert(new Counter(value, count, error));
+    }
+
+    /**
+     * Merges another sketch into this one, leaving the other sketch unchanged
+     * <p>
+     * A value counted by only one of the sketches may have occurred up to the smallest count of the other sketch
+     * if all its counters are taken, so that count is added to both its count and its error. The counters with the
+     * highest combined counts are then kept.
+     *
+     * @param other Sketch to merge
+     */
+    public void merge(SpaceSaving other) {
+        long minCount = minCount();
+        long otherMinCount = other.minCount();
+        List<Counter> merged = new ArrayList<>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            Counter otherCounter = other.counters.get(counter.value);
+            if (otherCounter == null)
+                merged.add(new Counter(counter.value, counter.count + otherMinCount, counter.error + otherMinCount));
+            else
+                merged.add(new Counter(counter.value, counter.count + otherCounter.count,
+                        counter.error + otherCounter.error));
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter otherCounter = other.heap[i];
+            if (!counters.containsKey(otherCounter.value))
+                merged.add(new Counter(otherCounter.value, otherCounter.count + minCount,
+                        otherCounter.error + minCount));
+        }
+        if (merged.size() > capacity) {
+            Collections.sort(merged, BY_COUNT_DESCENDING);
+            merged = merged.subList(0, capacity);
+        }
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        for (Counter counter : merged) {
+            insert(counter);
+        }
+    }
+
+    /**
+     * Gets the smallest count a value which isn't counted may have occurred, which is 0 until all counters are
+     * taken
+     *
+     * @return Smallest count
+     */
+    public long minCount() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    /**
+     * Gets the counters of the most frequent values
+     *
+     * @param k Number of counters to get
+     * @return Up to k counters, highest count first
+     */
+    public List<Counter> top(int k) {
+        List<Counter> top = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        Collections.sort(top, BY_COUNT_DESCENDING);
+        return k < top.size() ? top.subList(0, k) : top;
+    }
+
+    /**
+     * Gets every counter in the internal order of the sketch, so that restoring them in this order gives a sketch
+     * which goes on to count exactly like this one
+     *
+     * @return Counters, in no particular order of count
+     */
+    public List<Counter> getCounters() {
+        return new ArrayList<>(Arrays.asList(heap).subList(0, size));
+    }
+
+    /**
+     * Creates a copy of this sketch
+     *
+     * @return Sketch holding the same counts
+     */
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            Counter counterCopy = new Counter(counter.value, counter.count, counter.error);
+            counterCopy.index = i;
+            copy.heap[i] = counterCopy;
+            copy.counters.put(counter.value, counterCopy);
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    private void insert(Counter counter) {
+        counter.index = size;
+        heap[size++] = counter;
+        counters.put(counter.value, counter);
+        siftUp(counter.index);
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count)
+                break;
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count)
+                child++;
+            if (counter.count <= heap[child].count)
+                break;
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    private static final Comparator<Counter> BY_COUNT_DESCENDING = new Comparator<Counter>() {
+        @Override
+        public int compare(Counter o1, Counter o2) {
+            if (o1.count != o2.count)
+                return o1.count > o2.count ? -1 : 1;
+            return o1.error < o2.error ? -1 : (o1.error > o2.error ? 1 : 0);
+        }
+    };
+
+    /**
+     * Estimated count of a value, which may be overestimated by up to its error
+     */
+    public static class Counter {
+        private final Object value;
+        private long count;
+        private long error;
+        private int index;
+
+        private Counter(Object value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * Gets the estimated count of the value, which is never less than the true count
+         *
+         * @return Estimated count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the amount by which the count may be overestimated, so that the value occurred at least
+         * <code>count - error</code> times
+         *
+         * @return Maximum overestimation of the count
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return value + "=" + count + " (error " + error + ")";
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.caffinc.jaggr.core.entities;
+
+import java.util.Arrays;
+
+/**
+ * Merging t-digest sketch estimating the quantiles of the values added to it
+ * <p>
+ * The sketch summarizes the values as a sorted list of centroids, each holding the mean and number of the values
+ * it stands for. Centroids near the median may stand for many values while those near the extremes stand for few,
+ * as bounded by the arcsine scale function, so that the estimates of extreme quantiles are the most accurate. The
+ * sketch holds at most about <code>compression</code> centroids, plus a buffer of up to
+ * <code>5 * compression</code> values which are merged into the centroids whenever it fills up. The buffer grows
+ * as values are added, so a sketch of a few values takes little memory.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class TDigest {
+    private static final int BUFFER_FACTOR = 5;
+    private static final int INITIAL_BUFFER_SIZE = 8;
+    private static final double[] EMPTY = new double[0];
+
+    public final double compression;
+    /**
+     * Means of the centroids, in ascending order
+     */
+    public double[] means;
+    /**
+     * Number of values each centroid stands for
+     */
+    public double[] weights;
+    public int centroidCount;
+    /**
+     * Values added since the centroids were last merged, of which only the first <code>bufferSize</code> are used
+     */
+    public double[] buffer;
+    public int bufferSize;
+    public double min = Double.POSITIVE_INFINITY;
+    public double max = Double.NEGATIVE_INFINITY;
+    /**
+     * Number of values buffered before they are merged into the centroids
+     */
+    private final int bufferCapacity;
+
+    /**
+     * Creates an empty sketch
+     *
+     * @param compression Bound on the number of centroids, higher values giving more accurate estimates
+     * @throws IllegalArgumentException if the compression is less than 10
+     */
+    public TDigest(double compression) {
+        if (!(compression >= 10))
+            throw new IllegalArgumentException("Compression must be at least 10");
+        this.compression = compression;
+        this.means = EMPTY;
+        this.weights = EMPTY;
+        this.buffer = EMPTY;
+        this.bufferCapacity = (int) Math.ceil(BUFFER_FACTOR * compression);
+    }
+
+    /**
+     * Adds a value to the sketch
+     *
+     * @param value Value to add, not NaN
+     */
+    public void add(double value) {
+        if (bufferSize == buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.min(bufferCapacity, Math.max(INITIAL_BUFFER_SIZE, bufferSize * 2)));
+        buffer[bufferSize++] = value;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+        if (bufferSize == bufferCapacity)
+            compress();
+    }
+
+    /**
+     * Merges another sketch into this one. The buffered values of the other sketch are merged into its own
+     * centroids first, rather than into a copy of it.
+     *
+     * @param other Sketch to merge
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        compress();
+        merge(other.means, other.weights, other.centroidCount, null, 0);
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Merges the buffered values into the centroids
+     */
+    public void compress() {
+        if (bufferSize == 0)
+            return;
+        Arrays.sort(buffer, 0, bufferSize);
+        merge(null, null, 0, buffer, bufferSize);
+        bufferSize = 0;
+    }
+
+    /**
+     * Gets the total number of values added to the sketch
+     *
+     * @return Number of values
+     */
+    public double count() {
+        double count = bufferSize;
+        for (int i = 0; i < centroidCount; i++) {
+            count += weights[i];
+        }
+        return count;
+    }
+
+    /**
+     * Estimates a quantile of the values added to the sketch, interpolating between the centroids. The sketch is
+     * left unchanged, the buffered values being merged into temporary centroids.
+     *
+     * @param q Quantile to estimate, from 0 to 1
+     * @return Estimated value, or NaN if the sketch is empty
+     * @throws IllegalArgumentException if the quantile is out of range
+     */
+    public double quantile(double q) {
+        return quantiles(new double[]{q})[0];
+    }
+
+    /**
+     * Estimates several quantiles of the values added to the sketch, merging the buffered values into temporary
+     * centroids just once. The sketch is left unchanged.
+     *
+     * @param qs Quantiles to estimate, from 0 to 1
+     * @return Estimated value of each quantile, NaN if the sketch is empty
+     * @throws IllegalArgumentException if a quantile is out of range
+     */
+    public double[] quantiles(double[] qs) {
+        for (double q : qs) {
+            if (!(q >= 0 && q <= 1))
+                throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        }
+        TDigest compressed = compressed();
+        double[] estimates = new double[qs.length];
+        for (int i = 0; i < qs.length; i++) {
+            estimates[i] = compressed.estimate(qs[i]);
+        }
+        return estimates;
+    }
+
+    /**
+     * Gets a sketch holding the centroids of this one with the buffered values merged in, without changing this
+     * sketch. The centroid arrays are never written in place, so they are shared rather than copied.
+     */
+    private TDigest compressed() {
+        if (bufferSize == 0)
+            return this;
+        TDigest compressed = new TDigest(compression);
+        compressed.means = means;
+        compressed.weights = weights;
+        compressed.centroidCount = centroidCount;
+        compressed.min = min;
+        compressed.max = max;
+        double[] values = Arrays.copyOf(buffer, bufferSize);
+        Arrays.sort(values);
+        compressed.merge(null, null, 0, values, values.length);
+        return compressed;
+    }
+
+    /**
+     * Estimates a quantile from the centroids, ignoring any buffered values
+     */
+    private double estimate(double q) {
+        if (centroidCount == 0)
+            return Double.NaN;
+        if (centroidCount == 1)
+            return means[0];
+        double total = count();
+        double index = q * total;
+        // Below the centre of the first centroid and above that of the last, interpolate towards the extremes
+        if (index < weights[0] / 2)
+            return min + index / (weights[0] / 2) * (means[0] - min);
+        double tail = total - index;
+        int last = centroidCount - 1;
+        if (tail < weights[last] / 2)
+            return max - tail / (weights[last] / 2) * (max - means[last]);
+        double centre = weights[0] / 2;
+        for (int i = 0; i < last; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (index <= centre + step)
+                return means[i] + (index - centre) / step * (means[i + 1] - means[i]);
+            centre += step;
+        }
+        return means[last];
+    }
+
+    /**
+     * Creates a copy of this sketch
+     *
+     * @return Sketch holding the same centroids and buffered values
+     */
+    public TDigest copy() {
+        TDigest copy = new TDigest(compression);
+        copy.means = Arrays.copyOf(means, centroidCount);
+        copy.weights = Arrays.copyOf(weights, centroidCount);
+        copy.centroidCount = centroidCount;
+        copy.buffer = Arrays.copyOf(buffer, bufferSize);
+        copy.bufferSize = bufferSize;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    /**
+     * Merges the centroids of this sketch with sorted centroids or sorted values of weight one, combining
+     * neighbouring centroids as long as the scale function allows
+     */
+    private void merge(double[] otherMeans, double[] otherWeights, int otherCount, double[] values, int valueCount) {
+        int incomingCount = otherCount + valueCount;
+        if (incomingCount == 0)
+            return;
+        double total = 0;
+        for (int i = 0; i < centroidCount; i++) {
+            total += weights[i];
+        }
+        for (int i = 0; i < otherCount; i++) {
+            total += otherWeights[i];
+        }
+        total += valueCount;
+
+        double[] mergedMeans = new double[Math.min(centroidCount + incomingCount, (int) Math.ceil(compression) * 2)];
+        double[] mergedWeights = new double[mergedMeans.length];
+        int mergedCount = 0;
+        double currentMean = 0;
+        double currentWeight = 0;
+        double weightSoFar = 0;
+        double limit = 0;
+        int i = 0;
+        int j = 0;
+        while (i < centroidCount || j < incomingCount) {
+            double mean;
+            double weight;
+            double incomingMean = j < incomingCount ? (values != null ? values[j] : otherMeans[j]) : 0;
+            if (j >= incomingCount || (i < centroidCount && means[i] <= incomingMean)) {
+                mean = means[i];
+                weight = weights[i];
+                i++;
+            } else {
+                mean = incomingMean;
+                weight = values != null ? 1 : otherWeights[j];
+                j++;
+            }
+            if (currentWeight > 0 && weightSoFar + currentWeight + weight <= limit) {
+                currentWeight += weight;
+                currentMean += (mean - currentMean) * weight / currentWeight;
+            } else {
+                if (currentWeight > 0) {
+                    if (mergedCount == mergedMeans.length) {
+                        mergedMeans = Arrays.copyOf(mergedMeans, mergedCount * 2);
+                        mergedWeights = Arrays.copyOf(mergedWeights, mergedCount * 2);
+                    }
+                    mergedMeans[mergedCount] = currentMean;
+                    mergedWeights[mergedCount] = currentWeight;
+                    mergedCount++;
+                    weightSoFar += currentWeight;
+                }
+                currentMean = mean;
+                currentWeight = weight;
+                limit = total * maxQuantile(weightSoFar / total);
+            }
+        }
+        if (mergedCount == mergedMeans.length) {
+            mergedMeans = Arrays.copyOf(mergedMeans, mergedCount + 1);
+            mergedWeights = Arrays.copyOf(mergedWeights, mergedCount + 1);
+        }
+        mergedMeans[mergedCount] = currentMean;
+        mergedWeights[mergedCount] = currentWeight;
+        means = mergedMeans;
+        weights = mergedWeights;
+        centroidCount = mergedCount + 1;
+    }
+
+    /**
+     * Gets the largest quantile a centroid starting at the given quantile may extend to, keeping the arcsine scale
+     * function <code>k(q) = compression / (2 * pi) * asin(2q - 1)</code> from growing by more than one within it
+     */
+    private double maxQuantile(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * q - 1) + 1;
+        if (k >= compression / 4)
+            return 1;
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+}
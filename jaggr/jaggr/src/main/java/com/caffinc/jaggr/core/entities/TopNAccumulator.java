@@ -0,0 +1,137 @@
+package com.caffinc.jaggr.core.entities;
+
+import java.util.*;
+
+/**
+ * Mutable accumulator holding the N largest values seen, in a min-heap whose root is the smallest value kept
+ * <p>
+ * Once N values are held, a value is rejected with a single comparison against the root if it isn't larger, and
+ * otherwise replaces the root with a single sift, instead of the insertion and removal of a
+ * <code>PriorityQueue</code>. The heap grows as values are added, so that N may be large without allocating N
+ * slots for every group.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class TopNAccumulator<T> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    public final int n;
+    public final Comparator<? super T> comparator;
+    private Object[] heap;
+    private int size;
+
+    /**
+     * Creates an empty accumulator
+     *
+     * @param n          Number of values to keep, at least 1
+     * @param comparator Comparator ordering the values
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    public TopNAccumulator(int n, Comparator<? super T> comparator) {
+        if (n < 1)
+            throw new IllegalArgumentException("N must be at least 1");
+        this.n = n;
+        this.comparator = comparator;
+        this.heap = new Object[Math.min(n, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Offers a value, keeping it if it is among the N largest values seen
+     *
+     * @param value Value to offer
+     */
+    public void offer(T value) {
+        if (size < n) {
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, (int) Math.min(n, heap.length * 2L));
+            siftUp(size++, value);
+        } else if (comparator.compare(value, root()) > 0) {
+            siftDown(value);
+        }
+    }
+
+    /**
+     * Offers all the values of another accumulator, leaving it unchanged
+     *
+     * @param other Accumulator to merge
+     */
+    public void merge(TopNAccumulator<T> other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.get(i));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the values kept, in no particular order
+     *
+     * @return Unmodifiable list of the values
+     */
+    public List<T> values() {
+        return Collections.unmodifiableList((List<T>) Arrays.asList(heap).subList(0, size));
+    }
+
+    /**
+     * Gets the values kept, sorted with the largest first
+     *
+     * @return New list of the values
+     */
+    public List<T> toSortedList() {
+        T[] sorted = (T[]) Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, Collections.reverseOrder(comparator));
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
+
+    /**
+     * Creates a copy of this accumulator
+     *
+     * @return Accumulator holding the same values
+     */
+    public TopNAccumulator<T> copy() {
+        TopNAccumulator<T> copy = new TopNAccumulator<>(n, comparator);
+        copy.heap = Arrays.copyOf(heap, heap.length);
+        copy.size = size;
+        return copy;
+    }
+
+    private T get(int index) {
+        return (T) heap[index];
+    }
+
+    private T root() {
+        return (T) heap[0];
+    }
+
+    private void siftUp(int index, T value) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (comparator.compare(get(parent), value) <= 0)
+                break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * Replaces the root with a larger value and restores the heap order
+     */
+    private void siftDown(T value) {
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && comparator.compare(get(child + 1), get(child)) < 0)
+                child++;
+            if (comparator.compare(value, get(child)) <= 0)
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
@@ -0,0 +1,27 @@
+package com.caffinc.jaggr.core.entities;
+
+/**
+ * Mutable accumulator holding the running mean, sum of squared differences from the mean and count of a set of
+ * values, as used by Welford's method
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class VarianceAccumulator {
+    public double mean;
+    public double m2;
+    public long count;
+
+    /**
+     * Creates a copy of this accumulator
+     *
+     * @return Accumulator holding the same values
+     */
+    public VarianceAccumulator copy() {
+        VarianceAccumulator copy = new VarianceAccumulator();
+        copy.mean = mean;
+        copy.m2 = m2;
+        copy.count = count;
+        return copy;
+    }
+}
@@ -0,0 +1,103 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Collection;
+
+/**
+ * Binary arithmetic, keeping integers as Longs except in a division and giving null if either side is null
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class Arithmetic extends Expression {
+    enum Operator {
+        ADD("+"), SUBTRACT("-"), MULTIPLY("*"), DIVIDE("/"), MODULO("%");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    private final Operator operator;
+    private final Expression left;
+    private final Expression right;
+
+    Arithmetic(Operator operator, Expression left, Expression right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public Object evaluate(Object[] values) {
+        Object leftValue = left.evaluate(values);
+        if (leftValue == null)
+            return null;
+        Object rightValue = right.evaluate(values);
+        if (rightValue == null)
+            return null;
+        return apply(operator, leftValue, rightValue);
+    }
+
+    static Object apply(Operator operator, Object leftValue, Object rightValue) {
+        if (operator == Operator.ADD && (leftValue instanceof String || rightValue instanceof String))
+            return String.valueOf(leftValue) + rightValue;
+        if (!(leftValue instanceof Number) || !(rightValue instanceof Number))
+            throw new IllegalArgumentException("Can't apply " + operator.symbol + " to " + leftValue + " and "
+                    + rightValue);
+        Number l = (Number) leftValue;
+        Number r = (Number) rightValue;
+        if (isIntegral(l) && isIntegral(r) && operator != Operator.DIVIDE) {
+            long a = l.longValue();
+            long b = r.longValue();
+            switch (operator) {
+                case ADD:
+                    return a + b;
+                case SUBTRACT:
+                    return a - b;
+                case MULTIPLY:
+                    return a * b;
+                default:
+                    return b == 0 ? null : a % b;
+            }
+        }
+        double a = l.doubleValue();
+        double b = r.doubleValue();
+        switch (operator) {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                return b == 0 ? null : a / b;
+            default:
+                return b == 0 ? null : a % b;
+        }
+    }
+
+    static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte;
+    }
+
+    @Override
+    public Expression bind(FieldBinding binding) {
+        return new Arithmetic(operator, left.bind(binding), right.bind(binding));
+    }
+
+    @Override
+    void collectFields(Collection<FieldPath> fields) {
+        left.collectFields(fields);
+        right.collectFields(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + " " + operator.symbol + " " + right + ")";
+    }
+}
@@ -0,0 +1,142 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Comparison of two values. Numbers are compared by value whatever their type, and strings, booleans and dates
+ * with values of the same type. Values which can't be ordered are only equal if they are <code>equals()</code>.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class Comparison extends Expression {
+    enum Operator {
+        EQUAL("=="), NOT_EQUAL("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Gets the operator giving the same result with its operands swapped
+         */
+        Operator swap() {
+            switch (this) {
+                case LESS:
+                    return GREATER;
+                case LESS_OR_EQUAL:
+                    return GREATER_OR_EQUAL;
+                case GREATER:
+                    return LESS;
+                case GREATER_OR_EQUAL:
+                    return LESS_OR_EQUAL;
+                default:
+                    return this;
+            }
+        }
+
+        /**
+         * Gets whether the result of a comparison satisfies this operator
+         */
+        boolean matches(int comparison) {
+            switch (this) {
+                case EQUAL:
+                    return comparison == 0;
+                case NOT_EQUAL:
+                    return comparison != 0;
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case GREATER:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    private final Operator operator;
+    private final Expression left;
+    private final Expression right;
+
+    Comparison(Operator operator, Expression left, Expression right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public Object evaluate(Object[] values) {
+        return test(values);
+    }
+
+    @Override
+    public boolean test(Object[] values) {
+        return apply(operator, left.evaluate(values), right.evaluate(values));
+    }
+
+    static boolean apply(Operator operator, Object leftValue, Object rightValue) {
+        if (leftValue == null || rightValue == null) {
+            boolean equal = leftValue == rightValue;
+            return operator == Operator.EQUAL ? equal : operator == Operator.NOT_EQUAL && !equal;
+        }
+        Integer comparison = compare(leftValue, rightValue);
+        if (comparison == null) {
+            boolean equal = leftValue.equals(rightValue);
+            return operator == Operator.EQUAL ? equal : operator == Operator.NOT_EQUAL && !equal;
+        }
+        return operator.matches(comparison);
+    }
+
+    /**
+     * Orders two values of comparable types
+     *
+     * @return Negative, zero or positive as the first value is less than, equal to or greater than the second, or
+     * null if they can't be ordered
+     */
+    static Integer compare(Object leftValue, Object rightValue) {
+        if (leftValue instanceof Number && rightValue instanceof Number) {
+            Number l = (Number) leftValue;
+            Number r = (Number) rightValue;
+            if (Arithmetic.isIntegral(l) && Arithmetic.isIntegral(r))
+                return Long.compare(l.longValue(), r.longValue());
+            double a = l.doubleValue();
+            double b = r.doubleValue();
+            return a < b ? -1 : (a > b ? 1 : (a == b ? 0 : Double.compare(a, b)));
+        }
+        if (leftValue instanceof String && rightValue instanceof String)
+            return ((String) leftValue).compareTo((String) rightValue);
+        if (leftValue instanceof Boolean && rightValue instanceof Boolean)
+            return Boolean.compare((Boolean) leftValue, (Boolean) rightValue);
+        if (leftValue instanceof Date && rightValue instanceof Date)
+            return ((Date) leftValue).compareTo((Date) rightValue);
+        return null;
+    }
+
+    @Override
+    public Expression bind(FieldBinding binding) {
+        return new Comparison(operator, left.bind(binding), right.bind(binding));
+    }
+
+    @Override
+    void collectFields(Collection<FieldPath> fields) {
+        left.collectFields(fields);
+        right.collectFields(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + " " + operator + " " + right + ")";
+    }
+}
@@ -0,0 +1,39 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Collection;
+
+/**
+ * A literal value, or a sub-expression folded into its value when parsed
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class Constant extends Expression {
+    final Object value;
+
+    Constant(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public Object evaluate(Object[] values) {
+        return value;
+    }
+
+    @Override
+    public Expression bind(FieldBinding binding) {
+        return this;
+    }
+
+    @Override
+    void collectFields(Collection<FieldPath> fields) {
+    }
+
+    @Override
+    public String toString() {
+        return value instanceof String ? "'" + ((String) value).replace("\\", "\\\\").replace("'", "\\'") + "'"
+                : String.valueOf(value);
+    }
+}
@@ -0,0 +1,135 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+import com.caffinc.jaggr.core.utils.FieldPathResolver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression computing a value from the fields of a document, such as <code>salary * 0.3</code> or
+ * <code>age &gt; 30 &amp;&amp; sex == 'M'</code>
+ * <p>
+ * Expressions are parsed once into a tree of nodes, with constant sub-expressions folded and comparisons against
+ * constant numbers specialized. Before evaluation, an expression is bound to the slots of a value array holding
+ * the values of the fields it references, so that an aggregation can evaluate it over the field values it has
+ * already extracted from each document without copying the document.
+ * <p>
+ * The syntax supports:
+ * <ul>
+ * <li>Numbers such as <code>3</code> and <code>0.5e3</code>, strings in single or double quotes,
+ * <code>true</code>, <code>false</code> and <code>null</code></li>
+ * <li>Dot separated field paths such as <code>test.f</code>, or any field name in backquotes</li>
+ * <li>Arithmetic: <code>+ - * / %</code> and unary <code>-</code>. Integers stay integers except in a
+ * division, and <code>+</code> concatenates if either side is a string.</li>
+ * <li>Comparison: <code>== != &lt; &lt;= &gt; &gt;=</code>. Numbers are compared by value whatever their
+ * type, and values of different types are never ordered.</li>
+ * <li>Boolean logic: <code>&amp;&amp; || !</code>, or <code>and or not</code>, treating null, false and zero as
+ * false</li>
+ * </ul>
+ * Arithmetic on a missing field gives null, as does dividing by zero.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public abstract class Expression {
+    /**
+     * Parses an expression
+     *
+     * @param expression Expression to parse
+     * @return Parsed expression, which must be bound before it is evaluated over a value array
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static Expression parse(String expression) {
+        return new ExpressionParser(expression).parse();
+    }
+
+    /**
+     * Evaluates this bound expression
+     *
+     * @param values Values of the fields, in the slots this expression was bound to
+     * @return Value of the expression
+     */
+    public abstract Object evaluate(Object[] values);
+
+    /**
+     * Evaluates this bound expression as a condition
+     *
+     * @param values Values of the fields, in the slots this expression was bound to
+     * @return Whether the value of the expression is true, that is neither null, false nor zero
+     */
+    public boolean test(Object[] values) {
+        return isTrue(evaluate(values));
+    }
+
+    /**
+     * Creates a copy of this expression whose field references read the slots of a value array
+     *
+     * @param binding Binding assigning each referenced field a slot
+     * @return Bound expression
+     */
+    public abstract Expression bind(FieldBinding binding);
+
+    /**
+     * Gets the fields referenced by this expression
+     *
+     * @return Distinct fields, in the order they first appear
+     */
+    public List<FieldPath> getFields() {
+        Collection<FieldPath> fields = new LinkedHashSet<>();
+        collectFields(fields);
+        return new ArrayList<>(fields);
+    }
+
+    /**
+     * Evaluates this expression over a single document. This binds the expression each time, so an aggregation
+     * binds it once instead.
+     *
+     * @param document Document to evaluate over
+     * @return Value of the expression
+     */
+    public Object evaluate(Map<String, Object> document) {
+        final FieldPathResolver resolver = new FieldPathResolver();
+        Expression bound = bind(new FieldBinding() {
+            @Override
+            public int indexOf(FieldPath field) {
+                return resolver.add(field);
+            }
+        });
+        Object[] values = new Object[resolver.size()];
+        resolver.resolve(document, values);
+        return bound.evaluate(values);
+    }
+
+    /**
+     * Evaluates this expression as a condition over a single document
+     *
+     * @param document Document to evaluate over
+     * @return Whether the value of the expression is true
+     * @see #evaluate(Map)
+     */
+    public boolean test(Map<String, Object> document) {
+        return isTrue(evaluate(document));
+    }
+
+    abstract void collectFields(Collection<FieldPath> fields);
+
+    /**
+     * Gets whether a value counts as true in a condition
+     *
+     * @param value Value to check
+     * @return False if the value is null, false or zero, true otherwise
+     */
+    public static boolean isTrue(Object value) {
+        if (value == null)
+            return false;
+        if (value instanceof Boolean)
+            return (Boolean) value;
+        if (value instanceof Number)
+            return ((Number) value).doubleValue() != 0;
+        return true;
+    }
+}
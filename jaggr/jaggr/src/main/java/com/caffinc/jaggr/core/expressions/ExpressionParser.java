@@ -0,0 +1,274 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+/**
+ * Recursive descent parser for expressions, folding sub-expressions without field references into constants as
+ * it goes
+ * <p>
+ * From the lowest precedence to the highest, the grammar is:
+ * <pre>
+ * or             := and (("||" | "or") and)*
+ * and            := not (("&amp;&amp;" | "and") not)*
+ * not            := ("!" | "not") not | comparison
+ * comparison     := additive (("==" | "!=" | "&lt;" | "&lt;=" | "&gt;" | "&gt;=") additive)?
+ * additive       := multiplicative (("+" | "-") multiplicative)*
+ * multiplicative := unary (("*" | "/" | "%") unary)*
+ * unary          := "-" unary | primary
+ * primary        := number | string | "true" | "false" | "null" | field | "(" or ")"
+ * </pre>
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class ExpressionParser {
+    private static final Object[] NO_VALUES = new Object[0];
+    private final String expression;
+    private int position;
+
+    ExpressionParser(String expression) {
+        if (expression == null)
+            throw new IllegalArgumentException("Expression must not be null");
+        this.expression = expression;
+    }
+
+    Expression parse() {
+        Expression result = parseOr();
+        skipWhitespace();
+        if (position < expression.length())
+            throw error("Unexpected '" + expression.charAt(position) + "'");
+        return result;
+    }
+
+    private Expression parseOr() {
+        Expression left = parseAnd();
+        while (consume("||") || consumeWord("or")) {
+            left = fold(new Logical(false, left, parseAnd()));
+        }
+        return left;
+    }
+
+    private Expression parseAnd() {
+        Expression left = parseNot();
+        while (consume("&&") || consumeWord("and")) {
+            left = fold(new Logical(true, left, parseNot()));
+        }
+        return left;
+    }
+
+    private Expression parseNot() {
+        if (consumeOperator("!", "=") || consumeWord("not"))
+            return fold(new Not(parseNot()));
+        return parseComparison();
+    }
+
+    private Expression parseComparison() {
+        Expression left = parseAdditive();
+        Comparison.Operator operator;
+        if (consume("=="))
+            operator = Comparison.Operator.EQUAL;
+        else if (consume("!="))
+            operator = Comparison.Operator.NOT_EQUAL;
+        else if (consume("<="))
+            operator = Comparison.Operator.LESS_OR_EQUAL;
+        else if (consume("<"))
+            operator = Comparison.Operator.LESS;
+        else if (consume(">="))
+            operator = Comparison.Operator.GREATER_OR_EQUAL;
+        else if (consume(">"))
+            operator = Comparison.Operator.GREATER;
+        else
+            return left;
+        Expression right = parseAdditive();
+        // Compare against constant numbers with primitives
+        if (right instanceof Constant && ((Constant) right).value instanceof Number && !(left instanceof Constant))
+            return new NumberComparison(operator, left, (Number) ((Constant) right).value);
+        if (left instanceof Constant && ((Constant) left).value instanceof Number && !(right instanceof Constant))
+            return new NumberComparison(operator.swap(), right, (Number) ((Constant) left).value);
+        return fold(new Comparison(operator, left, right));
+    }
+
+    private Expression parseAdditive() {
+        Expression left = parseMultiplicative();
+        while (true) {
+            if (consume("+"))
+                left = fold(new Arithmetic(Arithmetic.Operator.ADD, left, parseMultiplicative()));
+            else if (consume("-"))
+                left = fold(new Arithmetic(Arithmetic.Operator.SUBTRACT, left, parseMultiplicative()));
+            else
+                return left;
+        }
+    }
+
+    private Expression parseMultiplicative() {
+        Expression left = parseUnary();
+        while (true) {
+            if (consume("*"))
+                left = fold(new Arithmetic(Arithmetic.Operator.MULTIPLY, left, parseUnary()));
+            else if (consume("/"))
+                left = fold(new Arithmetic(Arithmetic.Operator.DIVIDE, left, parseUnary()));
+            else if (consume("%"))
+                left = fold(new Arithmetic(Arithmetic.Operator.MODULO, left, parseUnary()));
+            else
+                return left;
+        }
+    }
+
+    private Expression parseUnary() {
+        if (consume("-"))
+            return fold(new Negation(parseUnary()));
+        return parsePrimary();
+    }
+
+    private Expression parsePrimary() {
+        skipWhitespace();
+        if (position >= expression.length())
+            throw error("Unexpected end of expression");
+        char c = expression.charAt(position);
+        if (c == '(') {
+            position++;
+            Expression inner = parseOr();
+            if (!consume(")"))
+                throw error("Expected ')'");
+            return inner;
+        }
+        if (c == '\'' || c == '"')
+            return new Constant(parseString(c));
+        if (c == '`') {
+            int end = expression.indexOf('`', position + 1);
+            if (end < 0)
+                throw error("Unterminated field name");
+            String field = expression.substring(position + 1, end);
+            position = end + 1;
+            return new FieldReference(new FieldPath(field));
+        }
+        if (Character.isDigit(c) || c == '.')
+            return new Constant(parseNumber());
+        if (isIdentifierStart(c)) {
+            int start = position;
+            while (position < expression.length() && (isIdentifierPart(expression.charAt(position))
+                    || expression.charAt(position) == '.'))
+                position++;
+            String word = expression.substring(start, position);
+            switch (word) {
+                case "true":
+                    return new Constant(true);
+                case "false":
+                    return new Constant(false);
+                case "null":
+                    return new Constant(null);
+                default:
+                    if (word.endsWith(".") || word.contains(".."))
+                        throw error("Invalid field '" + word + "'");
+                    return new FieldReference(new FieldPath(word));
+            }
+        }
+        throw error("Unexpected '" + c + "'");
+    }
+
+    private String parseString(char quote) {
+        StringBuilder builder = new StringBuilder();
+        position++;
+        while (position < expression.length()) {
+            char c = expression.charAt(position++);
+            if (c == quote)
+                return builder.toString();
+            if (c == '\\') {
+                if (position >= expression.length())
+                    break;
+                char escaped = expression.charAt(position++);
+                builder.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped);
+            } else {
+                builder.append(c);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private Number parseNumber() {
+        int start = position;
+        boolean integral = true;
+        while (position < expression.length()) {
+            char c = expression.charAt(position);
+            if (Character.isDigit(c)) {
+                position++;
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+                position++;
+                if ((c == 'e' || c == 'E') && position < expression.length()
+                        && (expression.charAt(position) == '-' || expression.charAt(position) == '+'))
+                    position++;
+            } else {
+                break;
+            }
+        }
+        String number = expression.substring(start, position);
+        try {
+            return integral ? (Number) Long.parseLong(number) : (Number) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + number + "'");
+        }
+    }
+
+    /**
+     * Replaces an expression without field references by its value
+     */
+    private Expression fold(Expression node) {
+        return node.getFields().isEmpty() ? new Constant(node.evaluate(NO_VALUES)) : node;
+    }
+
+    private boolean consume(String token) {
+        skipWhitespace();
+        if (expression.startsWith(token, position)) {
+            position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes an operator unless it is followed by the given character, such as "!" but not "!="
+     */
+    private boolean consumeOperator(String token, String notFollowedBy) {
+        skipWhitespace();
+        if (expression.startsWith(token, position)
+                && !expression.startsWith(notFollowedBy, position + token.length())) {
+            position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes a keyword, as long as it isn't the start of a longer field name
+     */
+    private boolean consumeWord(String word) {
+        skipWhitespace();
+        int end = position + word.length();
+        if (expression.startsWith(word, position)
+                && (end == expression.length() || !(isIdentifierPart(expression.charAt(end))
+                || expression.charAt(end) == '.'))) {
+            position = end;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position)))
+            position++;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position + " in expression: "
+                + expression);
+    }
+}
@@ -0,0 +1,19 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+/**
+ * Assigns the fields referenced by an expression to slots of the value array it is evaluated over
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public interface FieldBinding {
+    /**
+     * Gets the slot the value of a field will be held in when the expression is evaluated
+     *
+     * @param field Field referenced by the expression
+     * @return Index of the value of the field in the array passed to <code>Expression.evaluate()</code>
+     */
+    int indexOf(FieldPath field);
+}
@@ -0,0 +1,49 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Collection;
+
+/**
+ * A reference to the value of a field, which reads the slot of the value array the field is bound to
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class FieldReference extends Expression {
+    private final FieldPath field;
+    private final int index;
+
+    FieldReference(FieldPath field) {
+        this(field, -1);
+    }
+
+    private FieldReference(FieldPath field, int index) {
+        this.field = field;
+        this.index = index;
+    }
+
+    @Override
+    public Object evaluate(Object[] values) {
+        if (index < 0)
+            throw new IllegalStateException("Expression must be bound before it is evaluated");
+        return values[index];
+    }
+
+    @Override
+    public Expression bind(FieldBinding binding) {
+        return new FieldReference(field, binding.indexOf(field));
+    }
+
+    @Override
+    void collectFields(Collection<FieldPath> fields) {
+        fields.add(field);
+    }
+
+    @Override
+    public String toString() {
+        return field.getField().matches("[A-Za-z_$][A-Za-z0-9_$]*(\\.[A-Za-z0-9_$]+)*")
+                ? field.getField()
+                : "`" + field.getField() + "`";
+    }
+}
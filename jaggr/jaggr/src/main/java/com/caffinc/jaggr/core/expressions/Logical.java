@@ -0,0 +1,49 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Collection;
+
+/**
+ * Short circuiting conjunction or disjunction of two conditions
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class Logical extends Expression {
+    private final boolean and;
+    private final Expression left;
+    private final Expression right;
+
+    Logical(boolean and, Expression left, Expression right) {
+        this.and = and;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public Object evaluate(Object[] values) {
+        return test(values);
+    }
+
+    @Override
+    public boolean test(Object[] values) {
+        return and ? left.test(values) && right.test(values) : left.test(values) || right.test(values);
+    }
+
+    @Override
+    public Expression bind(FieldBinding binding) {
+        return new Logical(and, left.bind(binding), right.bind(binding));
+    }
+
+    @Override
+    void collectFields(Collection<FieldPath> fields) {
+        left.collectFields(fields);
+        right.collectFields(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + (and ? " && " : " || ") + right + ")";
+    }
+}
@@ -0,0 +1,45 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Collection;
+
+/**
+ * Unary minus, giving null if the operand is null
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class Negation extends Expression {
+    private final Expression operand;
+
+    Negation(Expression operand) {
+        this.operand = operand;
+    }
+
+    @Override
+    public Object evaluate(Object[] values) {
+        Object value = operand.evaluate(values);
+        if (value == null)
+            return null;
+        if (!(value instanceof Number))
+            throw new IllegalArgumentException("Can't negate " + value);
+        return Arithmetic.isIntegral((Number) value) ? (Object) (-((Number) value).longValue())
+                : (Object) (-((Number) value).doubleValue());
+    }
+
+    @Override
+    public Expression bind(FieldBinding binding) {
+        return new Negation(operand.bind(binding));
+    }
+
+    @Override
+    void collectFields(Collection<FieldPath> fields) {
+        operand.collectFields(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "-" + operand;
+    }
+}
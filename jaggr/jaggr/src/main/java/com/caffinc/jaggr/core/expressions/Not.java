@@ -0,0 +1,44 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Collection;
+
+/**
+ * Negation of a condition
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class Not extends Expression {
+    private final Expression operand;
+
+    Not(Expression operand) {
+        this.operand = operand;
+    }
+
+    @Override
+    public Object evaluate(Object[] values) {
+        return test(values);
+    }
+
+    @Override
+    public boolean test(Object[] values) {
+        return !operand.test(values);
+    }
+
+    @Override
+    public Expression bind(FieldBinding binding) {
+        return new Not(operand.bind(binding));
+    }
+
+    @Override
+    void collectFields(Collection<FieldPath> fields) {
+        operand.collectFields(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "!" + operand;
+    }
+}
@@ -0,0 +1,70 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Collection;
+
+/**
+ * Comparison of a value against a constant number, such as <code>age &gt; 30</code>, which compares primitive
+ * numbers without the type checks of a general comparison
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+class NumberComparison extends Expression {
+    private final Comparison.Operator operator;
+    private final Expression operand;
+    private final Number constant;
+    private final boolean integralConstant;
+    private final long longConstant;
+    private final double doubleConstant;
+
+    /**
+     * Creates a comparison of the form <code>operand operator constant</code>
+     */
+    NumberComparison(Comparison.Operator operator, Expression operand, Number constant) {
+        this.operator = operator;
+        this.operand = operand;
+        this.constant = constant;
+        this.integralConstant = Arithmetic.isIntegral(constant);
+        this.longConstant = constant.longValue();
+        this.doubleConstant = constant.doubleValue();
+    }
+
+    @Override
+    public Object evaluate(Object[] values) {
+        return test(values);
+    }
+
+    @Override
+    public boolean test(Object[] values) {
+        Object value = operand.evaluate(values);
+        if (value instanceof Double) {
+            double number = (Double) value;
+            if (number < doubleConstant)
+                return operator.matches(-1);
+            if (number > doubleConstant)
+                return operator.matches(1);
+            if (number == doubleConstant)
+                return operator.matches(0);
+        } else if (integralConstant && (value instanceof Long || value instanceof Integer)) {
+            return operator.matches(Long.compare(((Number) value).longValue(), longConstant));
+        }
+        return Comparison.apply(operator, value, constant);
+    }
+
+    @Override
+    public Expression bind(FieldBinding binding) {
+        return new NumberComparison(operator, operand.bind(binding), constant);
+    }
+
+    @Override
+    void collectFields(Collection<FieldPath> fields) {
+        operand.collectFields(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + operand + " " + operator + " " + constant + ")";
+    }
+}
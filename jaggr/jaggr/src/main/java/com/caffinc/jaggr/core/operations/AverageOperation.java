@@ -1,9 +1,7 @@
 package com.caffinc.jaggr.core.operations;
 
-import com.caffinc.jaggr.core.entities.Tuple2;
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
+import com.caffinc.jaggr.core.entities.MeanAccumulator;
 
-import java.util.Map;
 
 /**
  * Performs averaging aggregation
@@ -11,44 +9,71 @@ import java.util.Map;
  * @author Sriram
  * @since 11/26/2016
  */
-public class AverageOperation implements Operation {
-    private String[] field;
-    private String unsplitField;
-
+public class AverageOperation extends FieldOperation implements RetractableOperation {
     public AverageOperation(String field) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        super(field);
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        Object value = FieldValueExtractor.getValue(field, object);
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
         if (value == null)
             return previousAccumulatedValue;
-        Tuple2<Double, Integer> accumulator = previousAccumulatedValue == null
-                ? new Tuple2<>(0.0d, 0)
-                : (Tuple2<Double, Integer>) previousAccumulatedValue;
-
-        if (value instanceof Double) {
-            accumulator._1 = accumulator._1 + (Double) value;
-        } else if (value instanceof Float) {
-            accumulator._1 = accumulator._1 + (Float) value;
-        } else if (value instanceof Long) {
-            accumulator._1 = accumulator._1 + (Long) value;
-        } else if (value instanceof Integer) {
-            accumulator._1 = accumulator._1 + (Integer) value;
+        MeanAccumulator accumulator = previousAccumulatedValue == null
+                ? new MeanAccumulator()
+                : (MeanAccumulator) previousAccumulatedValue;
+
+        if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer) {
+            accumulator.sum += ((Number) value).doubleValue();
+        } else {
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
+        }
+        accumulator.count++;
+        return accumulator;
+    }
+
+    @Override
+    public boolean isRetractable() {
+        return true;
+    }
+
+    @Override
+    public Object retractValue(Object accumulatedValue, Object value) {
+        if (value == null)
+            return accumulatedValue;
+        if (accumulatedValue == null)
+            throw new IllegalStateException("Value " + value + " of field " + field + " wasn't aggregated");
+        MeanAccumulator accumulator = (MeanAccumulator) accumulatedValue;
+        if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer) {
+            accumulator.sum -= ((Number) value).doubleValue();
         } else {
-            throw new IllegalArgumentException("Field " + unsplitField + " isn't a Double, Float, Long or Integer");
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
         }
-        accumulator._2++;
+        return --accumulator.count == 0 ? null : accumulator;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        MeanAccumulator accumulator = (MeanAccumulator) accumulatedValue1;
+        MeanAccumulator other = (MeanAccumulator) accumulatedValue2;
+        accumulator.sum += other.sum;
+        accumulator.count += other.count;
         return accumulator;
     }
 
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : ((MeanAccumulator) accumulatedValue).copy();
+    }
+
     @Override
     public Object result(Object accumulatedValue) {
-        Tuple2<Double, Integer> accumulator = accumulatedValue == null
-                ? new Tuple2<>(0.0d, 1)
-                : (Tuple2<Double, Integer>) accumulatedValue;
-        return accumulator._1 / accumulator._2;
+        if (accumulatedValue == null)
+            return 0.0d;
+        MeanAccumulator accumulator = (MeanAccumulator) accumulatedValue;
+        return accumulator.sum / accumulator.count;
     }
 }
@@ -1,11 +1,8 @@
 package com.caffinc.jaggr.core.operations;
 
 
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
-
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Collects all values into a list
@@ -13,18 +10,13 @@ import java.util.Map;
  * @author Sriram
  * @since 11/26/2016
  */
-public class CollectOperation implements Operation {
-    private String[] field;
-    private String unsplitField;
-
+public class CollectOperation extends FieldOperation {
     public CollectOperation(String field) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        super(field);
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        Object value = FieldValueExtractor.getValue(field, object);
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
         if (value == null)
             return previousAccumulatedValue;
         List<Object> accumulator = previousAccumulatedValue == null
@@ -34,6 +26,22 @@ public class CollectOperation implements Operation {
         return accumulator;
     }
 
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        List<Object> accumulator = (List<Object>) accumulatedValue1;
+        accumulator.addAll((List<Object>) accumulatedValue2);
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : new ArrayList<>((List<Object>) accumulatedValue);
+    }
+
     @Override
     public Object result(Object accumulatedValue) {
         return accumulatedValue;
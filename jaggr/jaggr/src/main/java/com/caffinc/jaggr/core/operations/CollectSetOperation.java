@@ -1,32 +1,49 @@
 package com.caffinc.jaggr.core.operations;
 
 
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
+import com.caffinc.jaggr.core.entities.Multiset;
 
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 /**
  * Collects all values into a set
+ * <p>
+ * A retractable operation counts how many times each value was seen, so that a value stays in the set until every
+ * document holding it has been retracted.
  *
  * @author Sriram
  * @since 11/26/2016
  */
-public class CollectSetOperation implements Operation {
-    private String[] field;
-    private String unsplitField;
+public class CollectSetOperation extends FieldOperation implements RetractableOperation {
+    private final boolean retractable;
 
     public CollectSetOperation(String field) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        this(field, false);
+    }
+
+    /**
+     * Creates an operation collecting the values of the field into a set
+     *
+     * @param field       Field to collect the values of
+     * @param retractable Whether to count the values, so that values can be retracted
+     */
+    public CollectSetOperation(String field, boolean retractable) {
+        super(field);
+        this.retractable = retractable;
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        Object value = FieldValueExtractor.getValue(field, object);
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
         if (value == null)
             return previousAccumulatedValue;
+        if (retractable) {
+            Multiset values = previousAccumulatedValue == null
+                    ? new Multiset(null)
+                    : (Multiset) previousAccumulatedValue;
+            values.add(value);
+            return values;
+        }
         Set<Object> accumulator = previousAccumulatedValue == null
                 ? new HashSet<>()
                 : (Set<Object>) previousAccumulatedValue;
@@ -34,8 +51,54 @@ public class CollectSetOperation implements Operation {
         return accumulator;
     }
 
+    @Override
+    public boolean isRetractable() {
+        return retractable;
+    }
+
+    @Override
+    public Object retractValue(Object accumulatedValue, Object value) {
+        if (!retractable)
+            return super.retractValue(accumulatedValue, value);
+        if (value == null)
+            return accumulatedValue;
+        Multiset values = (Multiset) accumulatedValue;
+        if (values == null || !values.remove(value))
+            throw new IllegalStateException("Value " + value + " of field " + field + " wasn't aggregated");
+        return values.isEmpty() ? null : values;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        if (retractable) {
+            ((Multiset) accumulatedValue1).merge((Multiset) accumulatedValue2);
+            return accumulatedValue1;
+        }
+        Set<Object> accumulator = (Set<Object>) accumulatedValue1;
+        accumulator.addAll((Set<Object>) accumulatedValue2);
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        if (retractable)
+            return accumulatedValue == null ? null : ((Multiset) accumulatedValue).copy();
+        return accumulatedValue == null ? null : new HashSet<>((Set<Object>) accumulatedValue);
+    }
+
     @Override
     public Object result(Object accumulatedValue) {
+        if (retractable)
+            return accumulatedValue == null ? null : ((Multiset) accumulatedValue).elementSet();
         return accumulatedValue;
     }
+
+    @Override
+    public String toString() {
+        return "CollectSetOperation(" + field + ", retractable=" + retractable + ")";
+    }
 }
@@ -1,5 +1,7 @@
 package com.caffinc.jaggr.core.operations;
 
+import com.caffinc.jaggr.core.entities.CountAccumulator;
+
 import java.util.Map;
 
 /**
@@ -8,7 +10,7 @@ import java.util.Map;
  * @author Sriram
  * @since 11/26/2016
  */
-public class CountOperation implements Operation {
+public class CountOperation implements RetractableOperation {
     private Integer counterValue;
 
     public CountOperation(Integer counterValue) {
@@ -21,11 +23,50 @@ public class CountOperation implements Operation {
 
     @Override
     public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        return (previousAccumulatedValue == null ? 0 : (Integer) previousAccumulatedValue) + counterValue;
+        CountAccumulator accumulator = previousAccumulatedValue == null
+                ? new CountAccumulator()
+                : (CountAccumulator) previousAccumulatedValue;
+        accumulator.count += counterValue;
+        return accumulator;
+    }
+
+    @Override
+    public boolean isRetractable() {
+        return true;
+    }
+
+    @Override
+    public Object retract(Object accumulatedValue, Map<String, Object> object) {
+        if (accumulatedValue == null)
+            throw new IllegalStateException("No documents were counted");
+        CountAccumulator accumulator = (CountAccumulator) accumulatedValue;
+        accumulator.count -= counterValue;
+        return accumulator;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        CountAccumulator accumulator = (CountAccumulator) accumulatedValue1;
+        accumulator.count += ((CountAccumulator) accumulatedValue2).count;
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : ((CountAccumulator) accumulatedValue).copy();
     }
 
     @Override
     public Object result(Object accumulatedValue) {
-        return accumulatedValue;
+        return accumulatedValue == null ? null : ((CountAccumulator) accumulatedValue).count;
+    }
+
+    @Override
+    public String toString() {
+        return "CountOperation(" + counterValue + ")";
     }
 }
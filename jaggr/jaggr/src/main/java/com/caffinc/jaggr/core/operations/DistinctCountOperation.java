@@ -0,0 +1,83 @@
+package com.caffinc.jaggr.core.operations;
+
+import com.caffinc.jaggr.core.entities.HyperLogLog;
+
+/**
+ * Estimates the number of distinct values using a HyperLogLog sketch, which takes a fixed amount of memory
+ * however many values there are
+ * <p>
+ * The estimate has a relative standard error of about <code>1.04 / sqrt(2^precision)</code> and takes at most
+ * <code>2^precision</code> bytes per group. The default precision of 12 takes 4 KB for an error of about 1.6%.
+ * Values are distinct if they are not <code>equals()</code>, as in <code>CollectSetOperation</code>, so
+ * <code>1</code> and <code>1.0</code> are distinct. Null values are ignored.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class DistinctCountOperation extends FieldOperation {
+    private static final int DEFAULT_PRECISION = 12;
+    private final int precision;
+
+    public DistinctCountOperation(String field) {
+        this(field, DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates an operation estimating the number of distinct values of the field with the given precision
+     *
+     * @param field     Field to count the distinct values of
+     * @param precision Precision of the sketch, from <code>HyperLogLog.MIN_PRECISION</code> (4) to
+     *                  <code>HyperLogLog.MAX_PRECISION</code> (18)
+     * @throws IllegalArgumentException if the precision is out of range
+     */
+    public DistinctCountOperation(String field, int precision) {
+        super(field);
+        if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION)
+            throw new IllegalArgumentException("Precision must be between " + HyperLogLog.MIN_PRECISION + " and "
+                    + HyperLogLog.MAX_PRECISION);
+        this.precision = precision;
+    }
+
+    @Override
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
+        if (value == null)
+            return previousAccumulatedValue;
+        HyperLogLog accumulator = previousAccumulatedValue == null
+                ? new HyperLogLog(precision)
+                : (HyperLogLog) previousAccumulatedValue;
+        accumulator.add(value);
+        return accumulator;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        HyperLogLog accumulator = (HyperLogLog) accumulatedValue1;
+        HyperLogLog other = (HyperLogLog) accumulatedValue2;
+        // Merge the smaller sketch into the larger one
+        if (accumulator.registers == null && other.registers != null) {
+            other.merge(accumulator);
+            return other;
+        }
+        accumulator.merge(other);
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : ((HyperLogLog) accumulatedValue).copy();
+    }
+
+    @Override
+    public Object result(Object accumulatedValue) {
+        return accumulatedValue == null ? 0L : ((HyperLogLog) accumulatedValue).estimate();
+    }
+
+    @Override
+    public String toString() {
+        return "DistinctCountOperation(" + field + ", precision=" + precision + ")";
+    }
+}
@@ -0,0 +1,79 @@
+package com.caffinc.jaggr.core.operations;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+
+import java.util.Map;
+
+/**
+ * Base class for operations that aggregate the value of a single field. The aggregation extracts the values of
+ * all such fields once per document and passes each operation its value directly.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public abstract class FieldOperation implements Operation {
+    protected final FieldPath field;
+
+    protected FieldOperation(String field) {
+        this.field = new FieldPath(field);
+    }
+
+    /**
+     * Gets the field aggregated by this operation
+     *
+     * @return Field whose values are passed to <code>aggregateValue()</code>
+     */
+    public FieldPath getField() {
+        return field;
+    }
+
+    @Override
+    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
+        return aggregateValue(previousAccumulatedValue, field.getValue(object));
+    }
+
+    /**
+     * Aggregates the value of the field in a document
+     *
+     * @param previousAccumulatedValue Value accumulated so far, or null if nothing has been accumulated
+     * @param value                    Value of the field in the document, or null if it doesn't exist
+     * @return New accumulated value
+     */
+    public abstract Object aggregateValue(Object previousAccumulatedValue, Object value);
+
+    /**
+     * Removes the value of the field in a document from an accumulated value, for operations which implement
+     * <code>RetractableOperation</code>
+     *
+     * @param accumulatedValue Value the document was aggregated into
+     * @param value            Value of the field in the document, or null if it doesn't exist
+     * @return Accumulated value without the document
+     * @throws IllegalStateException if the operation can't retract values
+     * @see RetractableOperation#retract(Object, Map)
+     */
+    public Object retractValue(Object accumulatedValue, Object value) {
+        throw new IllegalStateException("Operation on field " + field + " can't retract values");
+    }
+
+    /**
+     * Removes a document from an accumulated value through <code>retractValue()</code>
+     *
+     * @param accumulatedValue Value the document was aggregated into
+     * @param object           Document to remove
+     * @return Accumulated value without the document
+     */
+    public Object retract(Object accumulatedValue, Map<String, Object> object) {
+        return retractValue(accumulatedValue, field.getValue(object));
+    }
+
+    /**
+     * Describes the operation by its class and field. Operations with parameters add them, so that operations
+     * accumulating values differently are described differently.
+     *
+     * @return Description of the operation
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + field + ")";
+    }
+}
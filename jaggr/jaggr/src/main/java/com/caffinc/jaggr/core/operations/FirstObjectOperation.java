@@ -1,11 +1,8 @@
 package com.caffinc.jaggr.core.operations;
 
 
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
-
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Gets the first non-null object in the stream
@@ -13,23 +10,29 @@ import java.util.Map;
  * @author Sriram
  * @since 11/26/2016
  */
-public class FirstObjectOperation implements Operation {
-    private String[] field;
-    private String unsplitField;
-
+public class FirstObjectOperation extends FieldOperation {
     public FirstObjectOperation(String field) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        super(field);
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
         if (previousAccumulatedValue == null)
-            return FieldValueExtractor.getValue(field, object);
+            return value;
         else
             return previousAccumulatedValue;
     }
 
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        return accumulatedValue1 != null ? accumulatedValue1 : accumulatedValue2;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue;
+    }
+
     @Override
     public Object result(Object accumulatedValue) {
         return accumulatedValue;
@@ -0,0 +1,96 @@
+package com.caffinc.jaggr.core.operations;
+
+import com.caffinc.jaggr.core.entities.SpaceSaving;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the k most frequent values using a Space-Saving sketch, which keeps a fixed number of counters
+ * however many distinct values there are
+ * <p>
+ * The result is a list of up to k documents, most frequent first, each holding the <code>value</code>, its
+ * estimated <code>count</code> and the <code>error</code> of that count. The true count of a value is between
+ * <code>count - error</code> and <code>count</code>, and the error is at most the number of values divided by the
+ * number of counters. By default ten counters are kept for each of the k values asked for. Values are the same if
+ * they are <code>equals()</code>, as in <code>CollectSetOperation</code>. Null values are ignored.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class HeavyHittersOperation extends FieldOperation {
+    private static final int DEFAULT_COUNTERS_PER_VALUE = 10;
+    private final int k;
+    private final int capacity;
+
+    public HeavyHittersOperation(String field, int k) {
+        this(field, k, k > Integer.MAX_VALUE / DEFAULT_COUNTERS_PER_VALUE ? k : k * DEFAULT_COUNTERS_PER_VALUE);
+    }
+
+    /**
+     * Creates an operation estimating the k most frequent values of the field with the given number of counters
+     *
+     * @param field    Field to find the most frequent values of
+     * @param k        Number of values to return
+     * @param capacity Number of counters to keep per group, at least k
+     * @throws IllegalArgumentException if k is less than 1 or the capacity is less than k
+     */
+    public HeavyHittersOperation(String field, int k, int capacity) {
+        super(field);
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1");
+        if (capacity < k)
+            throw new IllegalArgumentException("Capacity must be at least k");
+        this.k = k;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
+        if (value == null)
+            return previousAccumulatedValue;
+        SpaceSaving accumulator = previousAccumulatedValue == null
+                ? new SpaceSaving(capacity)
+                : (SpaceSaving) previousAccumulatedValue;
+        accumulator.add(value);
+        return accumulator;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        SpaceSaving accumulator = (SpaceSaving) accumulatedValue1;
+        accumulator.merge((SpaceSaving) accumulatedValue2);
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : ((SpaceSaving) accumulatedValue).copy();
+    }
+
+    @Override
+    public Object result(Object accumulatedValue) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (accumulatedValue == null)
+            return result;
+        for (SpaceSaving.Counter counter : ((SpaceSaving) accumulatedValue).top(k)) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("value", counter.getValue());
+            entry.put("count", counter.getCount());
+            entry.put("error", counter.getError());
+            result.add(entry);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HeavyHittersOperation(" + field + ", k=" + k + ", capacity=" + capacity + ")";
+    }
+}
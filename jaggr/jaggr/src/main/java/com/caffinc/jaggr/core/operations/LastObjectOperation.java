@@ -1,9 +1,7 @@
 package com.caffinc.jaggr.core.operations;
 
 
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
 
-import java.util.Map;
 
 /**
  * Gets the last non-null object in the stream
@@ -11,24 +9,29 @@ import java.util.Map;
  * @author Sriram
  * @since 11/26/2016
  */
-public class LastObjectOperation implements Operation {
-    private String[] field;
-    private String unsplitField;
-
+public class LastObjectOperation extends FieldOperation {
     public LastObjectOperation(String field) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        super(field);
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        Object value = FieldValueExtractor.getValue(field, object);
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
         if (value != null)
             return value;
         else
             return previousAccumulatedValue;
     }
 
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        return accumulatedValue2 != null ? accumulatedValue2 : accumulatedValue1;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue;
+    }
+
     @Override
     public Object result(Object accumulatedValue) {
         return accumulatedValue;
@@ -1,56 +1,146 @@
 package com.caffinc.jaggr.core.operations;
 
 
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
+import com.caffinc.jaggr.core.entities.Multiset;
+import com.caffinc.jaggr.core.entities.NumberAccumulator;
 
-import java.util.Map;
 
 /**
- * Performs maximum value aggregation
+ * Performs maximum value aggregation. The result is a <code>Long</code> if only integral values were seen, and a
+ * <code>Double</code> otherwise.
+ * <p>
+ * A retractable operation keeps every value in a sorted multiset rather than just the maximum, so that values can be
+ * retracted in O(log n) time. Its result keeps the type of the maximum value.
  *
  * @author Sriram
  * @since 11/26/2016
  */
-public class MaxOperation implements Operation {
-    private String[] field;
-    private String unsplitField;
-    private boolean isDouble = false;
+public class MaxOperation extends FieldOperation implements RetractableOperation {
+    private final boolean retractable;
 
     public MaxOperation(String field) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        this(field, false);
+    }
+
+    /**
+     * Creates an operation finding the maximum of the field
+     *
+     * @param field       Field to find the maximum of
+     * @param retractable Whether to keep every value, so that values can be retracted
+     */
+    public MaxOperation(String field, boolean retractable) {
+        super(field);
+        this.retractable = retractable;
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        Object value = FieldValueExtractor.getValue(field, object);
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
         if (value == null)
             return previousAccumulatedValue;
-        Double accumulator = previousAccumulatedValue == null
-                ? Double.MIN_VALUE
-                : (Double) previousAccumulatedValue;
-        if (value instanceof Double) {
-            isDouble = true;
-            return (accumulator < (Double) value) ? value : accumulator;
+        if (retractable) {
+            Multiset values = previousAccumulatedValue == null
+                    ? new Multiset(Multiset.NUMBER_ORDER)
+                    : (Multiset) previousAccumulatedValue;
+            values.add(normalize(value));
+            return values;
         }
-        if (value instanceof Float) {
-            isDouble = true;
-            return (accumulator < (Float) value) ? value : accumulator;
+        NumberAccumulator accumulator = previousAccumulatedValue == null
+                ? new NumberAccumulator()
+                : (NumberAccumulator) previousAccumulatedValue;
+        if (value instanceof Double || value instanceof Float) {
+            accumulateDouble(accumulator, ((Number) value).doubleValue());
+        } else if (value instanceof Long || value instanceof Integer) {
+            accumulateLong(accumulator, ((Number) value).longValue());
+        } else {
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
         }
-        if (value instanceof Long) {
-            return (accumulator < (Long) value) ? value : accumulator;
-        }
-        if (value instanceof Integer) {
-            return (accumulator < (Integer) value) ? value : accumulator;
+        return accumulator;
+    }
+
+    @Override
+    public boolean isRetractable() {
+        return retractable;
+    }
+
+    @Override
+    public Object retractValue(Object accumulatedValue, Object value) {
+        if (!retractable)
+            return super.retractValue(accumulatedValue, value);
+        if (value == null)
+            return accumulatedValue;
+        Multiset values = (Multiset) accumulatedValue;
+        if (values == null || !values.remove(normalize(value)))
+            throw new IllegalStateException("Value " + value + " of field " + field + " wasn't aggregated");
+        return values.isEmpty() ? null : values;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        if (retractable) {
+            ((Multiset) accumulatedValue1).merge((Multiset) accumulatedValue2);
+            return accumulatedValue1;
         }
-        throw new IllegalArgumentException("Field " + unsplitField + " isn't a Double, Float, Long or Integer");
+        NumberAccumulator accumulator = (NumberAccumulator) accumulatedValue1;
+        NumberAccumulator other = (NumberAccumulator) accumulatedValue2;
+        if (other.hasLong)
+            accumulateLong(accumulator, other.longValue);
+        if (other.hasDouble)
+            accumulateDouble(accumulator, other.doubleValue);
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        if (retractable)
+            return accumulatedValue == null ? null : ((Multiset) accumulatedValue).copy();
+        return accumulatedValue == null ? null : ((NumberAccumulator) accumulatedValue).copy();
     }
 
     @Override
     public Object result(Object accumulatedValue) {
-        if (accumulatedValue != null)
-            return isDouble ? accumulatedValue : ((Double) accumulatedValue).longValue();
-        else
+        if (accumulatedValue == null)
             return null;
+        if (retractable)
+            return ((Multiset) accumulatedValue).last();
+        NumberAccumulator accumulator = (NumberAccumulator) accumulatedValue;
+        if (!accumulator.hasDouble)
+            return accumulator.longValue;
+        if (!accumulator.hasLong || accumulator.doubleValue > accumulator.longValue)
+            return accumulator.doubleValue;
+        return (double) accumulator.longValue;
+    }
+
+    /**
+     * Converts a value to a <code>Long</code> or <code>Double</code>, so that equal values are counted together
+     */
+    private Number normalize(Object value) {
+        if (value instanceof Double || value instanceof Float)
+            return ((Number) value).doubleValue();
+        if (value instanceof Long || value instanceof Integer)
+            return ((Number) value).longValue();
+        throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
+    }
+
+    private static void accumulateLong(NumberAccumulator accumulator, long value) {
+        if (!accumulator.hasLong || value > accumulator.longValue) {
+            accumulator.longValue = value;
+            accumulator.hasLong = true;
+        }
+    }
+
+    private static void accumulateDouble(NumberAccumulator accumulator, double value) {
+        if (!accumulator.hasDouble || value > accumulator.doubleValue) {
+            accumulator.doubleValue = value;
+            accumulator.hasDouble = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MaxOperation(" + field + ", retractable=" + retractable + ")";
     }
 }
@@ -11,5 +11,27 @@ import java.util.Map;
 public interface Operation {
     Object aggregate(Object previousAccumulatedValue, Map<String, Object> object);
 
+    /**
+     * Combines two accumulated values computed over separate parts of the same input. The first value must
+     * have been accumulated over the documents preceding those of the second. Either value may be null.
+     * <p>
+     * Merging must give the same result as accumulating all the documents of both parts in order. Either value
+     * may be modified and returned, so neither should be used after they have been merged.
+     *
+     * @param accumulatedValue1 Value accumulated over the earlier documents
+     * @param accumulatedValue2 Value accumulated over the later documents
+     * @return Accumulated value covering both sets of documents
+     */
+    Object merge(Object accumulatedValue1, Object accumulatedValue2);
+
+    /**
+     * Copies an accumulated value, so that the copy can be merged or aggregated into without changing the
+     * original. Either may be null.
+     *
+     * @param accumulatedValue Value to copy
+     * @return Copy of the accumulated value, or the value itself if it is never modified
+     */
+    Object copy(Object accumulatedValue);
+
     Object result(Object accumulatedValue);
 }
@@ -0,0 +1,105 @@
+package com.caffinc.jaggr.core.operations;
+
+import com.caffinc.jaggr.core.entities.TDigest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estimates quantiles of the values, such as the median or 99th percentile, using a t-digest sketch which takes a
+ * bounded amount of memory however many values there are
+ * <p>
+ * The result is a list holding the estimate of each of the requested quantiles, in the order they were given, or
+ * null if there were no values. Estimates of extreme quantiles are more accurate than those of the median. The
+ * default compression of 100 keeps about 100 centroids per group, and gives estimates typically within a fraction
+ * of a percent of the true quantile. Null values are ignored.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class PercentileOperation extends FieldOperation {
+    private static final double DEFAULT_COMPRESSION = 100;
+    private final double[] quantiles;
+    private final double compression;
+
+    public PercentileOperation(String field, List<Double> quantiles) {
+        this(field, quantiles, DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates an operation estimating the given quantiles of the field
+     *
+     * @param field       Field to estimate the quantiles of
+     * @param quantiles   Quantiles to estimate, each from 0 to 1, such as 0.5 for the median
+     * @param compression Bound on the number of centroids kept per group, at least 10
+     * @throws IllegalArgumentException if there are no quantiles or any of them or the compression is out of range
+     */
+    public PercentileOperation(String field, List<Double> quantiles, double compression) {
+        super(field);
+        if (quantiles == null || quantiles.isEmpty())
+            throw new IllegalArgumentException("At least one quantile is required");
+        this.quantiles = new double[quantiles.size()];
+        for (int i = 0; i < this.quantiles.length; i++) {
+            Double quantile = quantiles.get(i);
+            if (quantile == null || !(quantile >= 0 && quantile <= 1))
+                throw new IllegalArgumentException("Quantiles must be between 0 and 1");
+            this.quantiles[i] = quantile;
+        }
+        if (!(compression >= 10))
+            throw new IllegalArgumentException("Compression must be at least 10");
+        this.compression = compression;
+    }
+
+    @Override
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
+        if (value == null)
+            return previousAccumulatedValue;
+        TDigest accumulator = previousAccumulatedValue == null
+                ? new TDigest(compression)
+                : (TDigest) previousAccumulatedValue;
+        if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer) {
+            double parsedValue = ((Number) value).doubleValue();
+            if (!Double.isNaN(parsedValue))
+                accumulator.add(parsedValue);
+        } else {
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
+        }
+        return accumulator;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        TDigest accumulator = (TDigest) accumulatedValue1;
+        accumulator.merge((TDigest) accumulatedValue2);
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : ((TDigest) accumulatedValue).copy();
+    }
+
+    @Override
+    public Object result(Object accumulatedValue) {
+        TDigest accumulator = (TDigest) accumulatedValue;
+        if (accumulator == null || accumulator.count() == 0)
+            return null;
+        // Estimated without compressing the sketch, so reading intermediate results doesn't change later ones
+        List<Double> result = new ArrayList<>(quantiles.length);
+        for (double estimate : accumulator.quantiles(quantiles)) {
+            result.add(estimate);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PercentileOperation(" + field + ", quantiles=" + Arrays.toString(quantiles)
+                + ", compression=" + compression + ")";
+    }
+}
@@ -0,0 +1,31 @@
+package com.caffinc.jaggr.core.operations;
+
+import java.util.Map;
+
+/**
+ * An operation whose accumulated values can have documents removed from them again, so that a document can be
+ * retracted or corrected without aggregating every other document again
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public interface RetractableOperation extends Operation {
+    /**
+     * Gets whether this operation keeps enough state to retract documents. Operations keeping a bounded summary
+     * by default, such as the minimum, keep every value instead when they are created to be retractable.
+     *
+     * @return Whether <code>retract()</code> is supported
+     */
+    boolean isRetractable();
+
+    /**
+     * Removes a document that was aggregated into an accumulated value earlier, giving the value that would
+     * have been accumulated without it. The document must hold the same values it was aggregated with.
+     *
+     * @param accumulatedValue Value the document was aggregated into
+     * @param object           Document to remove
+     * @return Accumulated value without the document, which may be null if nothing remains
+     * @throws IllegalStateException if the operation isn't retractable or the document wasn't aggregated
+     */
+    Object retract(Object accumulatedValue, Map<String, Object> object);
+}
@@ -1,9 +1,7 @@
 package com.caffinc.jaggr.core.operations;
 
-import com.caffinc.jaggr.core.entities.Tuple3;
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
+import com.caffinc.jaggr.core.entities.VarianceAccumulator;
 
-import java.util.Map;
 
 /**
  * Computes Standard Deviation of the Population using Welford's method
@@ -11,51 +9,95 @@ import java.util.Map;
  * @author Sriram
  * @since 11/29/2016
  */
-public class StdDevPopOperation implements Operation {
-    private String[] field;
-    private String unsplitField;
-
+public class StdDevPopOperation extends FieldOperation implements RetractableOperation {
     public StdDevPopOperation(String field) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        super(field);
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        Object value = FieldValueExtractor.getValue(field, object);
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
         if (value == null)
             return previousAccumulatedValue;
-        Tuple3<Double, Double, Integer> accumulator = previousAccumulatedValue == null
-                ? new Tuple3<>(0.0d, 0.0d, 0)
-                : (Tuple3<Double, Double, Integer>) previousAccumulatedValue;
-
-        Double parsedValue = 0d;
-        if (value instanceof Double) {
-            parsedValue = (Double) value;
-        } else if (value instanceof Float) {
-            parsedValue += (Float) value;
-        } else if (value instanceof Long) {
-            parsedValue += (Long) value;
-        } else if (value instanceof Integer) {
-            parsedValue += (Integer) value;
+        VarianceAccumulator accumulator = previousAccumulatedValue == null
+                ? new VarianceAccumulator()
+                : (VarianceAccumulator) previousAccumulatedValue;
+
+        double parsedValue;
+        if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer) {
+            parsedValue = ((Number) value).doubleValue();
+        } else {
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
+        }
+        accumulator.count++;
+        double tmpM = accumulator.mean;
+        accumulator.mean += (parsedValue - tmpM) / accumulator.count;
+        accumulator.m2 += (parsedValue - tmpM) * (parsedValue - accumulator.mean);
+        return accumulator;
+    }
+
+    @Override
+    public boolean isRetractable() {
+        return true;
+    }
+
+    /**
+     * Removes a value by running Welford's method backwards
+     */
+    @Override
+    public Object retractValue(Object accumulatedValue, Object value) {
+        if (value == null)
+            return accumulatedValue;
+        if (accumulatedValue == null)
+            throw new IllegalStateException("Value " + value + " of field " + field + " wasn't aggregated");
+        VarianceAccumulator accumulator = (VarianceAccumulator) accumulatedValue;
+        double parsedValue;
+        if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer) {
+            parsedValue = ((Number) value).doubleValue();
         } else {
-            throw new IllegalArgumentException("Field " + unsplitField + " isn't a Double, Float, Long or Integer");
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
         }
-        accumulator._3++;
-        double tmpM = accumulator._1;
-        accumulator._1 += (parsedValue - tmpM) / accumulator._3;
-        accumulator._2 += (parsedValue - tmpM) * (parsedValue - accumulator._1);
+        if (accumulator.count == 1)
+            return null;
+        double previousMean = (accumulator.count * accumulator.mean - parsedValue) / (accumulator.count - 1);
+        accumulator.m2 -= (parsedValue - previousMean) * (parsedValue - accumulator.mean);
+        // Rounding may leave a tiny negative sum once the remaining values are all equal
+        if (accumulator.m2 < 0)
+            accumulator.m2 = 0;
+        accumulator.mean = previousMean;
+        accumulator.count--;
+        return accumulator;
+    }
+
+    /**
+     * Combines two partial results using Chan's parallel variant of Welford's method
+     */
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        VarianceAccumulator accumulator = (VarianceAccumulator) accumulatedValue1;
+        VarianceAccumulator other = (VarianceAccumulator) accumulatedValue2;
+        long count = accumulator.count + other.count;
+        double delta = other.mean - accumulator.mean;
+        accumulator.mean += delta * other.count / count;
+        accumulator.m2 += other.m2 + delta * delta * accumulator.count * other.count / count;
+        accumulator.count = count;
         return accumulator;
     }
 
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : ((VarianceAccumulator) accumulatedValue).copy();
+    }
+
     @Override
     public Object result(Object accumulatedValue) {
-        Tuple3<Double, Double, Integer> accumulator = accumulatedValue == null
-                ? null
-                : (Tuple3<Double, Double, Integer>) accumulatedValue;
-        if (accumulator == null || accumulator._3 == 1 || accumulator._2 < 0)
+        VarianceAccumulator accumulator = (VarianceAccumulator) accumulatedValue;
+        if (accumulator == null || accumulator.count == 1 || accumulator.m2 < 0)
             return null;
         else
-            return Math.sqrt(accumulator._2 / (accumulator._3 - 1));
+            return Math.sqrt(accumulator.m2 / (accumulator.count - 1));
     }
 }
@@ -1,54 +1,104 @@
 package com.caffinc.jaggr.core.operations;
 
 
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
+import com.caffinc.jaggr.core.entities.NumberAccumulator;
 
-import java.util.Map;
 
 /**
- * Performs summing aggregation
+ * Performs summing aggregation. Integral values are summed as a <code>Long</code>, the sum becomes a
+ * <code>Double</code> once a floating point value has been seen. Values can be retracted, after which the sum is
+ * the same as if they had never been added, as long as the integral sum never overflowed.
  *
  * @author Sriram
  * @since 11/24/2016
  */
-public class SumOperation implements Operation {
-    private String[] field;
-    private String unsplitField;
-    private boolean isDouble = false;
-
+public class SumOperation extends FieldOperation implements RetractableOperation {
     public SumOperation(String field) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        super(field);
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        Object value = FieldValueExtractor.getValue(field, object);
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
         if (value == null)
             return previousAccumulatedValue;
-        Double accumulator = previousAccumulatedValue == null ? 0.0d : (Double) previousAccumulatedValue;
-        if (value instanceof Double) {
-            isDouble = true;
-            return accumulator + (Double) value;
-        }
-        if (value instanceof Float) {
-            isDouble = true;
-            return accumulator + (Float) value;
-        }
-        if (value instanceof Long) {
-            return accumulator + (Long) value;
+        NumberAccumulator accumulator = previousAccumulatedValue == null
+                ? new NumberAccumulator()
+                : (NumberAccumulator) previousAccumulatedValue;
+        if (value instanceof Double || value instanceof Float) {
+            accumulator.addDouble(((Number) value).doubleValue());
+            accumulator.doubleCount++;
+        } else if (value instanceof Long || value instanceof Integer) {
+            accumulator.addLong(((Number) value).longValue());
+            accumulator.longCount++;
+        } else {
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
         }
-        if (value instanceof Integer) {
-            return accumulator + (Integer) value;
+        return accumulator;
+    }
+
+    @Override
+    public boolean isRetractable() {
+        return true;
+    }
+
+    @Override
+    public Object retractValue(Object accumulatedValue, Object value) {
+        if (value == null)
+            return accumulatedValue;
+        NumberAccumulator accumulator = (NumberAccumulator) accumulatedValue;
+        if (value instanceof Double || value instanceof Float) {
+            if (accumulator == null || accumulator.doubleCount == 0)
+                throw new IllegalStateException("Value " + value + " of field " + field + " wasn't aggregated");
+            accumulator.addDouble(-((Number) value).doubleValue());
+            // Start again from zero once no values are left, rather than keeping rounding errors
+            if (--accumulator.doubleCount == 0) {
+                accumulator.doubleValue = 0;
+                accumulator.hasDouble = false;
+            }
+        } else if (value instanceof Long || value instanceof Integer) {
+            if (accumulator == null || accumulator.longCount == 0)
+                throw new IllegalStateException("Value " + value + " of field " + field + " wasn't aggregated");
+            accumulator.addLong(-((Number) value).longValue());
+            if (--accumulator.longCount == 0) {
+                accumulator.longValue = 0;
+                accumulator.hasLong = false;
+            }
+        } else {
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
         }
-        throw new IllegalArgumentException("Field " + unsplitField + " isn't a Double, Float, Long or Integer");
+        return accumulator.longCount == 0 && accumulator.doubleCount == 0 ? null : accumulator;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        NumberAccumulator accumulator = (NumberAccumulator) accumulatedValue1;
+        NumberAccumulator other = (NumberAccumulator) accumulatedValue2;
+        if (other.hasLong)
+            accumulator.addLong(other.longValue);
+        if (other.hasDouble)
+            accumulator.addDouble(other.doubleValue);
+        accumulator.longCount += other.longCount;
+        accumulator.doubleCount += other.doubleCount;
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : ((NumberAccumulator) accumulatedValue).copy();
     }
 
     @Override
     public Object result(Object accumulatedValue) {
-        if (accumulatedValue != null)
-            return isDouble ? accumulatedValue : ((Double) accumulatedValue).longValue();
-        else
+        if (accumulatedValue == null)
             return null;
+        NumberAccumulator accumulator = (NumberAccumulator) accumulatedValue;
+        if (accumulator.hasDouble)
+            return accumulator.doubleValue + accumulator.longValue;
+        else
+            return accumulator.longValue;
     }
 }
@@ -0,0 +1,78 @@
+package com.caffinc.jaggr.core.operations;
+
+import com.caffinc.jaggr.core.entities.DoubleTopNAccumulator;
+
+/**
+ * Computes the Top N numbers in the data as Doubles, sorted with the largest first
+ * <p>
+ * The numbers are kept in a heap of primitive doubles, which is faster than a <code>TopNOperation</code> with a
+ * numeric comparator. Null and NaN values are ignored.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class TopNNumberOperation extends FieldOperation {
+    private final int n;
+
+    /**
+     * Creates an operation keeping the N largest numbers of the field
+     *
+     * @param field Field to find the largest numbers of
+     * @param n     Number of numbers to keep, at least 1
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    public TopNNumberOperation(String field, int n) {
+        super(field);
+        if (n < 1)
+            throw new IllegalArgumentException("N must be at least 1");
+        this.n = n;
+    }
+
+    @Override
+    public Object aggregateValue(Object previousAccumulatedValue, Object value) {
+        if (value == null)
+            return previousAccumulatedValue;
+        double parsedValue;
+        if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer) {
+            parsedValue = ((Number) value).doubleValue();
+        } else {
+            throw new IllegalArgumentException("Field " + field + " isn't a Double, Float, Long or Integer");
+        }
+        if (Double.isNaN(parsedValue))
+            return previousAccumulatedValue;
+        DoubleTopNAccumulator accumulator = previousAccumulatedValue == null
+                ? new DoubleTopNAccumulator(n)
+                : (DoubleTopNAccumulator) previousAccumulatedValue;
+        accumulator.offer(parsedValue);
+        return accumulator;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        DoubleTopNAccumulator accumulator = (DoubleTopNAccumulator) accumulatedValue1;
+        accumulator.merge((DoubleTopNAccumulator) accumulatedValue2);
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        return accumulatedValue == null ? null : ((DoubleTopNAccumulator) accumulatedValue).copy();
+    }
+
+    @Override
+    public Object result(Object accumulatedValue) {
+        if (accumulatedValue == null)
+            return null;
+        else
+            return ((DoubleTopNAccumulator) accumulatedValue).toSortedList();
+    }
+
+    @Override
+    public String toString() {
+        return "TopNNumberOperation(" + field + ", n=" + n + ")";
+    }
+}
@@ -1,46 +1,137 @@
 package com.caffinc.jaggr.core.operations;
 
-import com.caffinc.jaggr.core.utils.FieldValueExtractor;
 
-import java.util.*;
+import com.caffinc.jaggr.core.entities.Multiset;
+import com.caffinc.jaggr.core.entities.TopNAccumulator;
+
+import java.util.Comparator;
 
 /**
- * Computes the Top N objects in the data
+ * Computes the Top N objects in the data, sorted with the largest first
+ * <p>
+ * Null values are ignored. To find the largest numbers, <code>TopNNumberOperation</code> is faster.
+ * <p>
+ * A retractable operation keeps every value in a sorted multiset rather than just the N largest, so that values
+ * can be retracted and the next largest value takes the place of a retracted one.
  *
  * @author Sriram
  * @since 11/30/2016
  */
-public class TopNOperation<T> implements Operation {
-    private String[] field;
-    private String unsplitField;
+public class TopNOperation<T> extends FieldOperation implements RetractableOperation {
     private int n;
     private Comparator<T> comparator;
+    private final boolean retractable;
 
+    /**
+     * Creates an operation keeping the N largest values of the field
+     *
+     * @param field      Field to find the largest values of
+     * @param n          Number of values to keep, at least 1
+     * @param comparator Comparator ordering the values
+     * @throws IllegalArgumentException if n is less than 1
+     */
     public TopNOperation(String field, int n, Comparator<T> comparator) {
-        this.unsplitField = field;
-        this.field = field.split("\\.");
+        this(field, n, comparator, false);
+    }
+
+    /**
+     * Creates an operation keeping the N largest values of the field
+     *
+     * @param field       Field to find the largest values of
+     * @param n           Number of values to find, at least 1
+     * @param comparator  Comparator ordering the values
+     * @param retractable Whether to keep every value, so that values can be retracted
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    public TopNOperation(String field, int n, Comparator<T> comparator, boolean retractable) {
+        super(field);
+        if (n < 1)
+            throw new IllegalArgumentException("N must be at least 1");
         this.n = n;
         this.comparator = comparator;
+        this.retractable = retractable;
+    }
+
+    /**
+     * Gets the comparator that orders the values, the largest of which are kept
+     *
+     * @return Comparator of the values
+     */
+    public Comparator<T> getComparator() {
+        return comparator;
     }
 
     @Override
-    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
-        T value = (T) FieldValueExtractor.getValue(field, object);
+    public Object aggregateValue(Object previousAccumulatedValue, Object fieldValue) {
+        T value = (T) fieldValue;
         if (value == null)
-            return null;
-        PriorityQueue<T> priorityQueue = previousAccumulatedValue == null ? new PriorityQueue<>(n, comparator)
-                : (PriorityQueue<T>) previousAccumulatedValue;
-        priorityQueue.add(value);
-        if (priorityQueue.size() > n)
-            priorityQueue.poll();
-        return priorityQueue;
+            return previousAccumulatedValue;
+        if (retractable) {
+            Multiset values = previousAccumulatedValue == null
+                    ? new Multiset(comparator)
+                    : (Multiset) previousAccumulatedValue;
+            values.add(value);
+            return values;
+        }
+        TopNAccumulator<T> accumulator = previousAccumulatedValue == null
+                ? new TopNAccumulator<>(n, comparator)
+                : (TopNAccumulator<T>) previousAccumulatedValue;
+        accumulator.offer(value);
+        return accumulator;
+    }
+
+    @Override
+    public boolean isRetractable() {
+        return retractable;
+    }
+
+    @Override
+    public Object retractValue(Object accumulatedValue, Object value) {
+        if (!retractable)
+            return super.retractValue(accumulatedValue, value);
+        if (value == null)
+            return accumulatedValue;
+        Multiset values = (Multiset) accumulatedValue;
+        if (values == null || !values.remove(value))
+            throw new IllegalStateException("Value " + value + " of field " + field + " wasn't aggregated");
+        return values.isEmpty() ? null : values;
+    }
+
+    @Override
+    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+        if (accumulatedValue1 == null)
+            return accumulatedValue2;
+        if (accumulatedValue2 == null)
+            return accumulatedValue1;
+        if (retractable) {
+            ((Multiset) accumulatedValue1).merge((Multiset) accumulatedValue2);
+            return accumulatedValue1;
+        }
+        TopNAccumulator<T> accumulator = (TopNAccumulator<T>) accumulatedValue1;
+        accumulator.merge((TopNAccumulator<T>) accumulatedValue2);
+        return accumulator;
+    }
+
+    @Override
+    public Object copy(Object accumulatedValue) {
+        if (retractable)
+            return accumulatedValue == null ? null : ((Multiset) accumulatedValue).copy();
+        return accumulatedValue == null ? null : ((TopNAccumulator<T>) accumulatedValue).copy();
     }
 
     @Override
     public Object result(Object accumulatedValue) {
         if (accumulatedValue == null)
             return null;
+        else if (retractable)
+            return ((Multiset) accumulatedValue).largest(n);
         else
-            return new ArrayList<>((Collection<T>) accumulatedValue);
+            return ((TopNAccumulator<T>) accumulatedValue).toSortedList();
+    }
+
+    @Override
+    public String toString() {
+        return "TopNOperation(" + field + ", n=" + n + ", comparator=" + comparator.getClass().getName()
+                + ", retractable=" + retractable + ")";
     }
 }
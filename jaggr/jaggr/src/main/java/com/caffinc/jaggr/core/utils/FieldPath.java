@@ -0,0 +1,76 @@
+package com.caffinc.jaggr.core.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A dot separated nested field, split once so that its value can be extracted from any number of objects
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class FieldPath {
+    private final String field;
+    private final String[] segments;
+
+    /**
+     * Compiles the given dot separated field
+     *
+     * @param field Field to compile, such as <code>a.b.c</code>
+     */
+    public FieldPath(String field) {
+        if (field == null)
+            throw new IllegalArgumentException("Field must not be null");
+        this.field = field;
+        this.segments = field.split("\\.");
+    }
+
+    /**
+     * Extracts the value of this field from the given object, walking one level of nesting at a time
+     *
+     * @param object Object to extract from
+     * @return Extracted value, or null if the field or one of its parents doesn't exist
+     */
+    public Object getValue(Map<String, Object> object) {
+        Object value = object;
+        for (String segment : segments) {
+            if (!(value instanceof Map))
+                return null;
+            value = ((Map<String, Object>) value).get(segment);
+        }
+        return value;
+    }
+
+    /**
+     * Gets the dot separated field this path was compiled from
+     *
+     * @return Field
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Gets the names of the nested fields in this path, outermost first
+     *
+     * @return Copy of the segments of this path
+     */
+    public String[] getSegments() {
+        return Arrays.copyOf(segments, segments.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof FieldPath && field.equals(((FieldPath) o).field);
+    }
+
+    @Override
+    public int hashCode() {
+        return field.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return field;
+    }
+}
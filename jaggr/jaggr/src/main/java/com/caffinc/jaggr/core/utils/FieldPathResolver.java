@@ -0,0 +1,154 @@
+package com.caffinc.jaggr.core.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts the values of several fields from an object in a single walk. Fields are arranged in a tree by their
+ * common prefixes, so each distinct nested field is looked up just once per object no matter how many of the
+ * fields share it.
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class FieldPathResolver {
+    private final Node root = new Node(null);
+    private final Map<FieldPath, Integer> indexes = new HashMap<>();
+    private final List<FieldPath> paths = new ArrayList<>();
+    private int size;
+
+    /**
+     * Adds a field to be extracted by this resolver. Adding the same field more than once returns the same index.
+     *
+     * @param path Field to extract
+     * @return Index of the value of this field in the arrays filled by <code>resolve()</code>
+     */
+    public int add(FieldPath path) {
+        Integer index = indexes.get(path);
+        if (index != null)
+            return index;
+        index = size++;
+        insert(path, index);
+        return index;
+    }
+
+    private void insert(FieldPath path, int index) {
+        indexes.put(path, index);
+        paths.add(path);
+        Node node = root;
+        for (String segment : path.getSegments()) {
+            node.addDescendant(index);
+            node = node.child(segment);
+        }
+        node.index = index;
+    }
+
+    /**
+     * Reserves a slot in the value arrays which isn't filled by <code>resolve()</code>, such as for a value
+     * computed from the fields
+     *
+     * @return Index of the reserved slot
+     */
+    public int reserve() {
+        return size++;
+    }
+
+    /**
+     * Gets the number of distinct fields and reserved slots in this resolver
+     *
+     * @return Size of the value arrays filled by <code>resolve()</code>
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the fields in this resolver, in the order they were added
+     *
+     * @return Fields extracted by this resolver
+     */
+    public List<FieldPath> getPaths() {
+        return new ArrayList<>(paths);
+    }
+
+    /**
+     * Creates a resolver extracting just some of the fields of this one, into the same indexes of arrays of the
+     * same size
+     *
+     * @param fields Fields of this resolver to extract, others being ignored
+     * @return Resolver of the given fields
+     */
+    public FieldPathResolver restrict(Collection<FieldPath> fields) {
+        FieldPathResolver restricted = new FieldPathResolver();
+        for (FieldPath path : paths) {
+            if (fields.contains(path))
+                restricted.insert(path, indexes.get(path));
+        }
+        restricted.size = size;
+        return restricted;
+    }
+
+    /**
+     * Extracts the values of all the fields from the given object
+     *
+     * @param object Object to extract from
+     * @param values Array of at least <code>size()</code> elements to write the value of each field to
+     */
+    public void resolve(Map<String, Object> object, Object[] values) {
+        resolve(root.children, object, values);
+    }
+
+    private static void resolve(Node[] nodes, Map<String, Object> object, Object[] values) {
+        for (Node node : nodes) {
+            Object value = object.get(node.segment);
+            if (node.index >= 0)
+                values[node.index] = value;
+            if (node.children.length > 0) {
+                if (value instanceof Map) {
+                    resolve(node.children, (Map<String, Object>) value, values);
+                } else {
+                    // None of the nested fields exist in this object
+                    for (int index : node.descendantIndexes)
+                        values[index] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * A field name at one level of nesting
+     */
+    private static class Node {
+        private final String segment;
+        private Node[] children = new Node[0];
+        private int index = -1;
+        private int[] descendantIndexes = new int[0];
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        Node child(String segment) {
+            for (Node child : children) {
+                if (child.segment.equals(segment))
+                    return child;
+            }
+            Node child = new Node(segment);
+            Node[] expanded = new Node[children.length + 1];
+            System.arraycopy(children, 0, expanded, 0, children.length);
+            expanded[children.length] = child;
+            children = expanded;
+            return child;
+        }
+
+        void addDescendant(int index) {
+            int[] expanded = new int[descendantIndexes.length + 1];
+            System.arraycopy(descendantIndexes, 0, expanded, 0, descendantIndexes.length);
+            expanded[descendantIndexes.length] = index;
+            descendantIndexes = expanded;
+        }
+    }
+}
@@ -29,20 +29,13 @@ public class FieldValueExtractor {
      * @return Extracted value
      */
     public static Object getValue(String[] split, Map<String, Object> object) {
-        return getValue(split, 0, object);
-    }
-
-    private static Object getValue(String[] split, int i, Map<String, Object> object) {
-        if (i == split.length - 1) {
-            // This is the value we need, extract it
-            return object.get(split[i]);
-        } else {
+        Object value = object;
+        for (String segment : split) {
             // Go deeper if possible, else return null
-            if (object.containsKey(split[i]) && object.get(split[i]) instanceof Map) {
-                return getValue(split, i + 1, (Map<String, Object>) object.get(split[i]));
-            } else {
+            if (!(value instanceof Map))
                 return null;
-            }
+            value = ((Map<String, Object>) value).get(segment);
         }
+        return value;
     }
 }
@@ -27,7 +27,8 @@ public class AggregationBuilderTest {
                 .getAggregation();
         Field groupField = Aggregation.class.getDeclaredField("_id");
         groupField.setAccessible(true);
-        Assert.assertEquals("Aggregation ID must match GroupBy set", "dummy", groupField.get(aggregation));
+        Assert.assertArrayEquals("Aggregation ID must match GroupBy set",
+                new String[]{"dummy"}, (String[]) groupField.get(aggregation));
         Field operationField = Aggregation.class.getDeclaredField("operationMap");
         operationField.setAccessible(true);
         Map<String, Operation> operationMap = new HashMap<>();
@@ -44,7 +45,8 @@ public class AggregationBuilderTest {
                 .getBatchAggregation();
         Field groupField = BatchAggregation.class.getDeclaredField("_id");
         groupField.setAccessible(true);
-        Assert.assertEquals("Aggregation ID must match GroupBy set", "dummy", groupField.get(aggregation));
+        Assert.assertArrayEquals("Aggregation ID must match GroupBy set",
+                new String[]{"dummy"}, (String[]) groupField.get(aggregation));
         Field operationField = BatchAggregation.class.getDeclaredField("operationMap");
         operationField.setAccessible(true);
         Map<String, Operation> operationMap = new HashMap<>();
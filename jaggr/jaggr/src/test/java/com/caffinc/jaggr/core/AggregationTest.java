@@ -2,15 +2,24 @@ package com.caffinc.jaggr.core;
 
 import com.caffinc.jaggr.core.operations.*;
 import com.caffinc.jaggr.core.utils.FieldValueExtractor;
+import com.caffinc.jaggr.utils.JsonFileIterator;
+import com.caffinc.jaggr.utils.JsonFilter;
 import com.caffinc.jaggr.utils.JsonFileUtil;
 import com.google.gson.Gson;
 import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests the Aggregation framework using the <code>Aggregation</code> class
@@ -55,7 +64,7 @@ public class AggregationTest {
         String field = "test.f";
         Set<Object> expectedResult = new HashSet<>();
         for (Map<String, Object> obj : jsonList) {
-            expectedResult.add(String.valueOf(FieldValueExtractor.getValue(field, obj)));
+            expectedResult.add(FieldValueExtractor.getValue(field, obj));
         }
 
         Set<Object> result = new HashSet<>();
@@ -69,6 +78,50 @@ public class AggregationTest {
         assertEquals("Grouping by field should match", expectedResult, result);
     }
 
+    @Test
+    public void testTypedGrouping() throws Exception {
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (Object value : new Object[]{1, "1", 1, 2.5d, null}) {
+            objectList.add(Collections.singletonMap("f", value));
+        }
+        Aggregation aggregation = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .getAggregation();
+        Map<Object, Object> result = new HashMap<>();
+        for (Map<String, Object> resultObj : aggregation.aggregate(objectList)) {
+            result.put(resultObj.get("_id"), resultObj.get("count"));
+        }
+        Map<Object, Object> expectedResult = new HashMap<>();
+        expectedResult.put(1, 2);
+        expectedResult.put("1", 1);
+        expectedResult.put(2.5d, 1);
+        expectedResult.put(null, 1);
+        assertEquals("Grouping should keep values of different types apart", expectedResult, result);
+    }
+
+    @Test
+    public void testCompoundGrouping() throws Exception {
+        Map<Map<String, Object>, Integer> expectedResult = new HashMap<>();
+        for (Map<String, Object> obj : jsonList) {
+            Map<String, Object> id = new HashMap<>();
+            id.put("f", obj.get("f"));
+            id.put("test.f", FieldValueExtractor.getValue("test.f", obj));
+            expectedResult.put(id, expectedResult.containsKey(id) ? expectedResult.get(id) + 1 : 1);
+        }
+
+        Aggregation aggregation = new AggregationBuilder()
+                .setGroupBy("f", "test.f")
+                .addOperation("count", new CountOperation())
+                .getAggregation();
+        Map<Map<String, Object>, Integer> result = new HashMap<>();
+        for (Map<String, Object> resultObj : aggregation.aggregate(jsonList)) {
+            result.put((Map<String, Object>) resultObj.get("_id"), (Integer) resultObj.get("count"));
+        }
+
+        assertEquals("Grouping by several fields should group by their combined values", expectedResult, result);
+    }
+
     @Test
     public void testCountOperation() throws Exception {
         String field = "f";
@@ -144,6 +197,166 @@ public class AggregationTest {
         assertEquals("Collected sets should be as expected", expectedMap, resultMap);
     }
 
+    @Test
+    public void testDistinctCountOperation() throws Exception {
+        Aggregation aggregation = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("distinct", new DistinctCountOperation("test.f"))
+                .getAggregation();
+        Map<Object, Object> result = new HashMap<>();
+        for (Map<String, Object> resultObject : aggregation.aggregate(jsonList)) {
+            result.put(resultObject.get("_id"), resultObject.get("distinct"));
+        }
+        assertEquals("Small distinct counts should be exact", 5L, result.get("a"));
+        assertEquals("Small distinct counts should be exact", 1L, result.get("b"));
+
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (int i = 0; i < 300000; i++) {
+            Map<String, Object> object = new HashMap<>();
+            object.put("f", i % 3 == 0 ? "small" : "large");
+            object.put("user", i % 3 == 0 ? "user" + (i % 1000) : "user" + i);
+            objectList.add(object);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("distinct", new DistinctCountOperation("user"));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (List<Map<String, Object>> resultList : Arrays.asList(
+                    builder.getAggregation().aggregate(objectList),
+                    builder.getAggregation().aggregate(objectList, pool),
+                    builder.allowDiskUse(1).getAggregation().aggregate(objectList))) {
+                for (Map<String, Object> resultObject : resultList) {
+                    double expected = "small".equals(resultObject.get("_id")) ? 1000 : 200000;
+                    assertEquals("Distinct count should be within the error of the sketch",
+                            expected, (long) resultObject.get("distinct"), expected * 0.05);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPercentileOperation() throws Exception {
+        Aggregation aggregation = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("percentiles", new PercentileOperation("test.f", Arrays.asList(0.0, 0.5, 1.0)))
+                .getAggregation();
+        Map<Object, Object> result = new HashMap<>();
+        for (Map<String, Object> resultObject : aggregation.aggregate(jsonList)) {
+            result.put(resultObject.get("_id"), resultObject.get("percentiles"));
+        }
+        assertEquals("Percentiles of few values should be exact", Arrays.asList(-1.0, 2.0, 5.0), result.get("a"));
+        assertEquals("Percentiles of few values should be exact", Arrays.asList(1.0, 1.0, 1.0), result.get("b"));
+
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        Map<String, List<Double>> values = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            String group = i % 2 == 0 ? "uniform" : "exponential";
+            double value = i % 2 == 0 ? random.nextDouble() * 1000 : -Math.log(1 - random.nextDouble()) * 100;
+            Map<String, Object> object = new HashMap<>();
+            object.put("f", group);
+            object.put("latency", value);
+            objectList.add(object);
+            if (!values.containsKey(group))
+                values.put(group, new ArrayList<Double>());
+            values.get(group).add(value);
+        }
+        List<Double> quantiles = Arrays.asList(0.5, 0.95, 0.99, 0.999);
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("percentiles", new PercentileOperation("latency", quantiles));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (List<Map<String, Object>> resultList : Arrays.asList(
+                    builder.getAggregation().aggregate(objectList),
+                    builder.getAggregation().aggregate(objectList, pool),
+                    builder.allowDiskUse(1).getAggregation().aggregate(objectList))) {
+                assertEquals("Should have two groups", 2, resultList.size());
+                for (Map<String, Object> resultObject : resultList) {
+                    List<Double> sorted = values.get(resultObject.get("_id"));
+                    Collections.sort(sorted);
+                    List<Double> percentiles = (List<Double>) resultObject.get("percentiles");
+                    for (int i = 0; i < quantiles.size(); i++) {
+                        // Compare the ranks of the estimates, as the error of a t-digest is bounded in rank
+                        int rank = Collections.binarySearch(sorted, percentiles.get(i));
+                        rank = rank < 0 ? -rank - 1 : rank;
+                        double q = quantiles.get(i);
+                        assertEquals("Percentile should be within the error of the sketch",
+                                q, (double) rank / sorted.size(), Math.max(0.005, (1 - q) * 0.1));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentileOperationInvalidQuantile() throws Exception {
+        new PercentileOperation("test.f", Arrays.asList(0.5, 1.5));
+    }
+
+    @Test
+    public void testHeavyHittersOperation() throws Exception {
+        Aggregation aggregation = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("frequent", new HeavyHittersOperation("test.f", 2))
+                .getAggregation();
+        Map<Object, Object> result = new HashMap<>();
+        for (Map<String, Object> resultObject : aggregation.aggregate(jsonList)) {
+            result.put(resultObject.get("_id"), resultObject.get("frequent"));
+        }
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("value", 1.0);
+        expected.put("count", 5L);
+        expected.put("error", 0L);
+        assertEquals("Frequencies of few values should be exact", Collections.singletonList(expected), result.get("b"));
+        assertEquals("Should return k values", 2, ((List) result.get("a")).size());
+
+        // The frequency of the i-th URL is proportional to 1 / i
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            String url = "/page/" + (int) Math.floor(Math.exp(random.nextDouble() * Math.log(100000)));
+            Map<String, Object> object = new HashMap<>();
+            object.put("host", i % 2 == 0 ? "a.com" : "b.com");
+            object.put("url", url);
+            objectList.add(object);
+            counts.put(url, counts.containsKey(url) ? counts.get(url) + 1 : 1L);
+        }
+        int k = 10;
+        AggregationBuilder builder = new AggregationBuilder()
+                .addOperation("frequent", new HeavyHittersOperation("url", k));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (List<Map<String, Object>> resultList : Arrays.asList(
+                    builder.getAggregation().aggregate(objectList),
+                    builder.getAggregation().aggregate(objectList, pool),
+                    builder.allowDiskUse(1).getAggregation().aggregate(objectList))) {
+                List<Map<String, Object>> frequent = (List<Map<String, Object>>) resultList.get(0).get("frequent");
+                assertEquals("Should return k values", k, frequent.size());
+                for (int i = 0; i < k; i++) {
+                    long count = (long) frequent.get(i).get("count");
+                    long error = (long) frequent.get(i).get("error");
+                    long trueCount = counts.get(frequent.get(i).get("value"));
+                    assertTrue("Count should never be underestimated", count >= trueCount);
+                    assertTrue("Count should be within the error", count - error <= trueCount);
+                    assertTrue("Error should be bounded by the number of counters", error <= 200000 / (10 * k));
+                    // Lower ranks are too close in frequency to be told apart within the error
+                    if (i < 5)
+                        assertEquals("Most frequent values should be found in order", "/page/" + (i + 1),
+                                frequent.get(i).get("value"));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void testSumOperation() throws Exception {
         String field = "f";
@@ -158,6 +371,29 @@ public class AggregationTest {
         assertEquals("Sum should be as expected", expected, result);
     }
 
+    @Test
+    public void testIntegralOperations() throws Exception {
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (long value : new long[]{(1L << 53) + 1, 2L, -3L}) {
+            objectList.add(Collections.<String, Object>singletonMap("v", value));
+        }
+        Aggregation aggregation = new AggregationBuilder()
+                .addOperation("sum", new SumOperation("v"))
+                .addOperation("min", new MinOperation("v"))
+                .addOperation("max", new MaxOperation("v"))
+                .getAggregation();
+        Map<String, Object> result = aggregation.aggregate(objectList).get(0);
+        assertEquals("Sum of integral values should be an exact Long", (1L << 53), result.get("sum"));
+        assertEquals("Min of integral values should be a Long", -3L, result.get("min"));
+        assertEquals("Max of integral values should be a Long", (1L << 53) + 1, result.get("max"));
+
+        objectList.add(Collections.<String, Object>singletonMap("v", 0.5d));
+        result = aggregation.aggregate(objectList).get(0);
+        assertEquals("Sum of mixed values should be a Double", (double) (1L << 53), result.get("sum"));
+        assertEquals("Min of mixed values should be a Double", -3.0d, result.get("min"));
+        assertEquals("Max of mixed values should be a Double", (double) ((1L << 53) + 1), result.get("max"));
+    }
+
     @Test
     public void testAverageOperation() throws Exception {
         String field = "f";
@@ -314,11 +550,536 @@ public class AggregationTest {
                 .addOperation("topn", new TopNOperation<>("test.f", 3, comparator))
                 .getAggregation();
         List<Double> result = (List<Double>) aggregation.aggregate(jsonList).get(0).get("topn");
-        Collections.sort(result, comparator);
+        assertEquals("Should return N values", 3, result.size());
         for (int i = 0; i < result.size(); i++) {
-            assertEquals("Top N should be as expected",
+            assertEquals("Top N should be sorted with the largest first",
                     doubleList.get(doubleList.size() - 1 - i),
-                    result.get(result.size() - 1 - i));
+                    result.get(i));
+        }
+    }
+
+    @Test
+    public void testTopNOperationKeepsValuesAfterNull() throws Exception {
+        List<Map<String, Object>> objectList = new ArrayList<>(jsonList);
+        objectList.add(new HashMap<String, Object>());
+        Aggregation aggregation = new AggregationBuilder()
+                .addOperation("topn", new TopNOperation<>("test.f", 2, new Comparator<Double>() {
+                    @Override
+                    public int compare(Double o1, Double o2) {
+                        return Double.compare(o1, o2);
+                    }
+                }))
+                .addOperation("topNumbers", new TopNNumberOperation("test.f", 2))
+                .getAggregation();
+        Map<String, Object> result = aggregation.aggregate(objectList).get(0);
+        assertEquals("Missing values should be ignored", Arrays.asList(5.0, 3.0), result.get("topn"));
+        assertEquals("Missing values should be ignored", Arrays.asList(5.0, 3.0), result.get("topNumbers"));
+    }
+
+    @Test
+    public void testTopNNumberOperation() throws Exception {
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            Map<String, Object> object = new HashMap<>();
+            if (i % 2 == 0) {
+                long value = random.nextInt(1000000);
+                object.put("value", value);
+                values.add((double) value);
+            } else {
+                double value = random.nextDouble() * 1000000;
+                object.put("value", value);
+                values.add(value);
+            }
+            objectList.add(object);
+        }
+        Collections.sort(values, Collections.reverseOrder());
+        List<Double> expected = values.subList(0, 100);
+        AggregationBuilder builder = new AggregationBuilder()
+                .addOperation("top", new TopNNumberOperation("value", 100));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals("Top N numbers should be sorted with the largest first", expected,
+                    builder.getAggregation().aggregate(objectList).get(0).get("top"));
+            assertEquals("Top N numbers should be merged in parallel", expected,
+                    builder.getAggregation().aggregate(objectList, pool).get(0).get("top"));
+            assertEquals("Top N numbers should survive spilling to disk", expected,
+                    builder.allowDiskUse(1).getAggregation().aggregate(objectList).get(0).get("top"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTopNOperationInvalidN() throws Exception {
+        new TopNOperation<>("test.f", 0, Collections.<Double>reverseOrder());
+    }
+
+    @Test
+    public void testParallelAggregation() throws Exception {
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            Map<String, Object> test = new HashMap<>();
+            test.put("f", (double) random.nextInt(1000) - 500);
+            Map<String, Object> object = new HashMap<>();
+            object.put("_id", (double) i);
+            object.put("f", String.valueOf(random.nextInt(5)));
+            object.put("test", test);
+            objectList.add(object);
+        }
+        Aggregation aggregation = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("avg", new AverageOperation("test.f"))
+                .addOperation("sum", new SumOperation("test.f"))
+                .addOperation("min", new MinOperation("test.f"))
+                .addOperation("max", new MaxOperation("test.f"))
+                .addOperation("count", new CountOperation())
+                .addOperation("stddev", new StdDevPopOperation("test.f"))
+                .addOperation("first", new FirstObjectOperation("_id"))
+                .addOperation("last", new LastObjectOperation("_id"))
+                .addOperation("list", new CollectOperation("_id"))
+                .getAggregation();
+        Map<Object, Map<String, Object>> expected = new HashMap<>();
+        for (Map<String, Object> resultObject : aggregation.aggregate(objectList)) {
+            expected.put(resultObject.get("_id"), resultObject);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Map<String, Object>> result = aggregation.aggregate(objectList.iterator(), pool);
+            assertEquals("Parallel aggregation should produce the same groups", expected.size(), result.size());
+            for (Map<String, Object> resultObject : result) {
+                Map<String, Object> expectedObject = expected.get(resultObject.get("_id"));
+                for (String field : Arrays.asList("sum", "min", "max", "count", "first", "last", "list")) {
+                    assertEquals("Parallel " + field + " should match sequential " + field,
+                            expectedObject.get(field), resultObject.get(field));
+                }
+                assertEquals("Parallel average should match sequential average",
+                        (double) expectedObject.get("avg"), (double) resultObject.get("avg"), 1e-9);
+                assertEquals("Parallel standard deviation should match sequential standard deviation",
+                        (double) expectedObject.get("stddev"), (double) resultObject.get("stddev"), 1e-9);
+            }
+            assertEquals("Parallel aggregation of no data should be empty",
+                    0, aggregation.aggregate(new ArrayList<Map<String, Object>>(), pool).size());
+
+            List<List<Map<String, Object>>> partitions = new ArrayList<>();
+            for (int i = 0; i < objectList.size(); i += 7000) {
+                partitions.add(objectList.subList(i, Math.min(i + 7000, objectList.size())));
+            }
+            List<Map<String, Object>> partitionResult = aggregation.aggregatePartitions(partitions, pool);
+            assertEquals("Partitioned aggregation should produce the same groups", expected.size(),
+                    partitionResult.size());
+            for (Map<String, Object> resultObject : partitionResult) {
+                Map<String, Object> expectedObject = expected.get(resultObject.get("_id"));
+                for (String field : Arrays.asList("sum", "min", "max", "count", "first", "last", "list")) {
+                    assertEquals("Partitioned " + field + " should match sequential " + field,
+                            expectedObject.get(field), resultObject.get(field));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequiredFields() throws Exception {
+        Aggregation aggregation = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("avg", new AverageOperation("test.f"))
+                .addOperation("sum", new SumOperation("test.f"))
+                .addOperation("count", new CountOperation())
+                .getAggregation();
+        assertEquals("Required fields should hold each grouping and operation field once",
+                new HashSet<>(Arrays.asList("f", "test.f")), aggregation.getRequiredFields());
+
+        Set<Map<String, Object>> expected = roughen(aggregation.aggregate(jsonList), HashSet.class);
+        try (JsonFileIterator iterator = new JsonFileIterator(new InputStreamReader(
+                getClass().getClassLoader().getResourceAsStream("raw.json")), aggregation.getRequiredFields())) {
+            assertEquals("Aggregating only the required fields should give the same result",
+                    expected, roughen(aggregation.aggregate(iterator), HashSet.class));
+        }
+
+        assertNull("Operations that read whole documents should require every field", new AggregationBuilder()
+                .addOperation("custom", new Operation() {
+                    @Override
+                    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
+                        return object;
+                    }
+
+                    @Override
+                    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+                        return accumulatedValue2;
+                    }
+
+                    @Override
+                    public Object copy(Object accumulatedValue) {
+                        return accumulatedValue;
+                    }
+
+                    @Override
+                    public Object result(Object accumulatedValue) {
+                        return accumulatedValue;
+                    }
+                })
+                .getAggregation()
+                .getRequiredFields());
+    }
+
+    @Test
+    public void testComputedFields() throws Exception {
+        Aggregation aggregation = new AggregationBuilder()
+                .addComputedField("double", "test.f * 2")
+                .addComputedField("positive", "double > 0")
+                .setGroupBy("positive")
+                .addOperation("sum", new SumOperation("double"))
+                .addOperation("count", new CountOperation())
+                .getAggregation();
+        assertEquals("Only document fields should be required",
+                new HashSet<>(Collections.singletonList("test.f")), aggregation.getRequiredFields());
+        Map<Object, Object> result = new HashMap<>();
+        for (Map<String, Object> resultObject : aggregation.aggregate(jsonList)) {
+            result.put(resultObject.get("_id"), resultObject.get("sum"));
+        }
+        assertEquals("Should group on computed fields", new HashSet<>(Arrays.asList(true, false)), result.keySet());
+        assertEquals("Should aggregate computed fields", 32.0, result.get(true));
+        assertEquals("Should aggregate computed fields", -2.0, result.get(false));
+
+        List<Map<String, Object>> overridden = new AggregationBuilder()
+                .addComputedField("test.f", "test.f * 10")
+                .addOperation("sum", new SumOperation("test.f"))
+                .getBatchAggregation()
+                .aggregateBatch(jsonList)
+                .getFinalResult();
+        assertEquals("Computed fields should hide document fields of the same name", 150.0,
+                overridden.get(0).get("sum"));
+    }
+
+    @Test
+    public void testMatch() throws Exception {
+        AggregationBuilder builder = new AggregationBuilder()
+                .addComputedField("double", "test.f * 2")
+                .addComputedField("label", "f + '!'")
+                .addMatch("double > 2")
+                .addMatch("_id != 4")
+                .setGroupBy("label")
+                .addOperation("count", new CountOperation())
+                .addOperation("sum", new SumOperation("test.f"));
+        Aggregation aggregation = builder.getAggregation();
+        assertEquals("Match fields should include those used by computed fields",
+                new HashSet<>(Arrays.asList("test.f", "_id")), aggregation.getMatchFields());
+        List<Map<String, Object>> result = aggregation.aggregate(jsonList);
+        assertEquals("Groups without matching documents should not exist", 1, result.size());
+        assertEquals("Only matching documents should be grouped", "a!", result.get(0).get("_id"));
+        assertEquals("Only matching documents should be aggregated", 2, result.get(0).get("count"));
+        assertEquals("Only matching documents should be aggregated", 5.0, result.get(0).get("sum"));
+        assertEquals("Batch aggregations should match the same documents", result,
+                builder.getBatchAggregation().aggregateBatch(jsonList).getFinalResult());
+
+        // Push the match down into parsing
+        Aggregation pushedDown = builder.getAggregation();
+        JsonFilter filter = pushedDown.newFilter();
+        assertEquals("The filter should depend on the match fields", pushedDown.getMatchFields(),
+                new HashSet<>(filter.getFields()));
+        for (Map<String, Object> object : jsonList) {
+            assertEquals("The filter should accept the documents that match", pushedDown.matches(object),
+                    filter.accept(object));
+        }
+        try (JsonFileIterator iterator = new JsonFileIterator(new InputStreamReader(
+                getClass().getClassLoader().getResourceAsStream("raw.json")), pushedDown.getRequiredFields(),
+                filter)) {
+            assertEquals("Pushing the match down should give the same result", result,
+                    pushedDown.aggregate(iterator));
+        }
+    }
+
+    @Test
+    public void testResultStages() throws Exception {
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Map<String, Object> object = new HashMap<>();
+            object.put("f", (long) random.nextInt(2000));
+            object.put("g", random.nextBoolean());
+            object.put("v", (double) random.nextInt(100));
+            objectList.add(object);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f", "g")
+                .addOperation("sum", new SumOperation("v"))
+                .addOperation("count", new CountOperation());
+        List<Map<String, Object>> groups = builder.getAggregation().aggregate(objectList);
+
+        // Expected result of the stages, applied to every group
+        List<Map<String, Object>> selected = new ArrayList<>();
+        for (Map<String, Object> group : groups) {
+            if ((int) group.get("count") > 5 && !(Boolean) ((Map) group.get("_id")).get("g"))
+                selected.add(group);
+        }
+        Collections.sort(selected, new Comparator<Map<String, Object>>() {
+            @Override
+            public int compare(Map<String, Object> o1, Map<String, Object> o2) {
+                int comparison = Double.compare((double) o2.get("sum"), (double) o1.get("sum"));
+                return comparison != 0 ? comparison : Long.compare(
+                        (long) ((Map) o1.get("_id")).get("f"), (long) ((Map) o2.get("_id")).get("f"));
+            }
+        });
+        List<Map<String, Object>> expected = new ArrayList<>();
+        for (Map<String, Object> group : selected.subList(0, 50)) {
+            Map<String, Object> projected = new LinkedHashMap<>();
+            projected.put("f", ((Map) group.get("_id")).get("f"));
+            projected.put("sum", group.get("sum"));
+            projected.put("avg", (double) group.get("sum") / (int) group.get("count"));
+            expected.add(projected);
+        }
+
+        builder.addHaving("count > 5")
+                .addHaving("!_id.g")
+                .addSort("sum", false)
+                .addSort("_id.f", true)
+                .setLimit(50)
+                .addProjection("f", "_id.f")
+                .addProjection("sum")
+                .addProjection("avg", "sum / count");
+        assertEquals("Stages should filter, sort, limit and project the groups", expected,
+                builder.getAggregation().aggregate(objectList));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals("Stages should apply to parallel aggregations", expected,
+                    builder.getAggregation().aggregate(objectList, pool));
+        } finally {
+            pool.shutdown();
+        }
+        Path spillDirectory = Files.createTempDirectory("jaggr-test");
+        try {
+            assertEquals("Stages should combine the groups of every spill file", expected,
+                    builder.allowDiskUse(100, spillDirectory.toFile()).getAggregation().aggregate(objectList));
+        } finally {
+            Files.delete(spillDirectory);
+        }
+
+        List<Map<String, Object>> unsorted = new AggregationBuilder()
+                .setGroupBy("f", "g")
+                .addOperation("count", new CountOperation())
+                .setLimit(10)
+                .getAggregation().aggregate(objectList);
+        assertEquals("Unsorted results should be limited", 10, unsorted.size());
+
+        // Count the groups with each number of documents
+        Map<Object, Integer> expectedCounts = new HashMap<>();
+        for (Map<String, Object> group : groups) {
+            Object count = group.get("count");
+            expectedCounts.put(count, expectedCounts.containsKey(count) ? expectedCounts.get(count) + 1 : 1);
+        }
+        List<Map<String, Object>> regrouped = new AggregationBuilder()
+                .setGroupBy("f", "g")
+                .addOperation("count", new CountOperation())
+                .thenAggregate(new AggregationBuilder()
+                        .setGroupBy("count")
+                        .addOperation("groups", new CountOperation()))
+                .getAggregation().aggregate(objectList);
+        Map<Object, Integer> counts = new HashMap<>();
+        for (Map<String, Object> group : regrouped) {
+            counts.put(group.get("_id"), (Integer) group.get("groups"));
+        }
+        assertEquals("Results should be aggregated by the next aggregation", expectedCounts, counts);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResultStagesInvalidLimit() throws Exception {
+        new AggregationBuilder().setLimit(0);
+    }
+
+    @Test
+    public void testResultStagesUnknownField() throws Exception {
+        List<AggregationBuilder> builders = Arrays.asList(
+                new AggregationBuilder().addHaving("cout > 5"),
+                new AggregationBuilder().addHaving("count > 5 && total.x > 0"),
+                new AggregationBuilder().addSort("cont", false),
+                new AggregationBuilder().addProjection("id.f"),
+                new AggregationBuilder().addProjection("average", "sum / cnt"));
+        for (AggregationBuilder builder : builders) {
+            builder.setGroupBy("f")
+                    .addOperation("count", new CountOperation())
+                    .addOperation("sum", new SumOperation("v"));
+            try {
+                builder.getAggregation();
+                fail("Stages referencing fields missing from the results should be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .addHaving("count > 5 && _id.f != null")
+                .addSort("count", false)
+                .addProjection("_id.f")
+                .getAggregation();
+    }
+
+    @Test
+    public void testGroupingSets() throws Exception {
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Map<String, Object> object = new HashMap<>();
+            int city = random.nextInt(100);
+            object.put("country", "c" + city % 7);
+            object.put("city", city % 3 == 0 ? null : "city" + city);
+            object.put("v", (double) random.nextInt(100));
+            objectList.add(object);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .addOperation("sum", new SumOperation("v"))
+                .addOperation("count", new CountOperation());
+        // Expected results of each level, with the _id of each as a sub-document of the fields of its level
+        Set<Map<String, Object>> expected = new HashSet<>();
+        for (String[] fields : Arrays.asList(new String[]{"country", "city"}, new String[]{"country"},
+                new String[0])) {
+            for (Map<String, Object> result : builder.setGroupBy(fields).getAggregation().aggregate(objectList)) {
+                if (fields.length == 1) {
+                    result.put("_id", Collections.singletonMap("country", result.get("_id")));
+                } else if (fields.length == 0) {
+                    result.put("_id", Collections.emptyMap());
+                }
+                expected.add(result);
+            }
+        }
+
+        builder.setRollup("country", "city");
+        assertEquals("A rollup should give the results of every level", expected,
+                new HashSet<>(builder.getAggregation().aggregate(objectList)));
+        BatchAggregation batchAggregation = builder.getBatchAggregation();
+        batchAggregation.aggregateBatch(objectList.subList(0, 2500));
+        batchAggregation.getItermediateResult();
+        batchAggregation.aggregateBatch(objectList.subList(2500, 5000));
+        assertEquals("Every level of a batch aggregation should be updated", expected,
+                new HashSet<>(batchAggregation.getItermediateResult()));
+        Path spillDirectory = Files.createTempDirectory("jaggr-test");
+        try {
+            assertEquals("Spilling grouping sets should not change the result", expected, new HashSet<>(
+                    builder.allowDiskUse(10, spillDirectory.toFile()).getAggregation().aggregate(objectList)));
+        } finally {
+            Files.delete(spillDirectory);
+        }
+
+        List<Map<String, Object>> result = builder
+                .setGroupingSets(new String[]{"city"}, new String[]{"country"})
+                .allowDiskUse(Integer.MAX_VALUE)
+                .addHaving("_id.country == 'c1'")
+                .getAggregation().aggregate(objectList);
+        assertEquals("Having conditions should apply to the _id of each grouping set", 1, result.size());
+    }
+
+    @Test
+    public void testDiskUse() throws Exception {
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Map<String, Object> test = new HashMap<>();
+            test.put("f", (double) random.nextInt(1000) - 500);
+            test.put("when", new Date(random.nextInt(1000)));
+            Map<String, Object> object = new HashMap<>();
+            object.put("_id", (double) i);
+            object.put("f", String.valueOf(random.nextInt(3000)));
+            object.put("g", random.nextBoolean());
+            object.put("n", i % 7 == 0 ? null : (long) random.nextInt(3));
+            object.put("test", test);
+            objectList.add(object);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f", "g", "n")
+                .addOperation("avg", new AverageOperation("test.f"))
+                .addOperation("sum", new SumOperation("test.f"))
+                .addOperation("min", new MinOperation("test.f"))
+                .addOperation("max", new MaxOperation("test.f"))
+                .addOperation("count", new CountOperation())
+                .addOperation("stddev", new StdDevPopOperation("test.f"))
+                .addOperation("first", new FirstObjectOperation("test"))
+                .addOperation("last", new LastObjectOperation("test.when"))
+                .addOperation("list", new CollectOperation("_id"))
+                .addOperation("set", new CollectSetOperation("test.f"))
+                .addOperation("top", new TopNOperation<>("_id", 3, new Comparator<Double>() {
+                    @Override
+                    public int compare(Double o1, Double o2) {
+                        return Double.compare(o1, o2);
+                    }
+                }));
+        Set<Map<String, Object>> expected = normalizeSpillResult(builder.getAggregation().aggregate(objectList));
+
+        Path spillDirectory = Files.createTempDirectory("jaggr-test");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Aggregation aggregation = builder.allowDiskUse(500, spillDirectory.toFile()).getAggregation();
+            for (List<Map<String, Object>> spilledResult : Arrays.asList(
+                    aggregation.aggregate(objectList), aggregation.aggregate(objectList, pool))) {
+                assertEquals("Spilling groups to disk should not change the result",
+                        expected, normalizeSpillResult(spilledResult));
+                assertEquals("Spill files should be deleted once the result is computed",
+                        0, spillDirectory.toFile().list().length);
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(spillDirectory);
+        }
+    }
+
+    @Test
+    public void testDiskUseRepartition() throws Exception {
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (int i = 0; i < 30000; i++) {
+            Map<String, Object> object = new HashMap<>();
+            object.put("_id", i);
+            object.put("f", random.nextInt(20000));
+            object.put("v", (long) random.nextInt(100));
+            objectList.add(object);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("sum", new SumOperation("v"))
+                .addOperation("count", new CountOperation())
+                .addOperation("first", new FirstObjectOperation("_id"))
+                .addOperation("list", new CollectOperation("_id"));
+        Set<Map<String, Object>> expected = new HashSet<>(builder.getAggregation().aggregate(objectList));
+
+        List<List<Map<String, Object>>> partitions = new ArrayList<>();
+        for (int i = 0; i < objectList.size(); i += 4000) {
+            partitions.add(objectList.subList(i, Math.min(i + 4000, objectList.size())));
+        }
+        Path spillDirectory = Files.createTempDirectory("jaggr-test");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Each of the 16 files holds over a thousand groups, so they must be split again to fit in memory
+            Aggregation aggregation = builder.allowDiskUse(100, spillDirectory.toFile()).getAggregation();
+            for (List<Map<String, Object>> spilledResult : Arrays.asList(
+                    aggregation.aggregate(objectList), aggregation.aggregatePartitions(partitions, pool))) {
+                assertEquals("Splitting spill files should not change the result",
+                        expected, new HashSet<>(spilledResult));
+                assertEquals("Spill files should be deleted once the result is computed",
+                        0, spillDirectory.toFile().list().length);
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(spillDirectory);
+        }
+    }
+
+    /**
+     * Ignores the order of top values and rounding differences of merged averages and standard deviations
+     */
+    private static Set<Map<String, Object>> normalizeSpillResult(List<Map<String, Object>> result) {
+        Set<Map<String, Object>> normalized = new HashSet<>();
+        for (Map<String, Object> resultObject : result) {
+            resultObject.put("top", new HashSet<>((List) resultObject.get("top")));
+            for (String field : Arrays.asList("avg", "stddev")) {
+                if (resultObject.get(field) != null)
+                    resultObject.put(field, Math.round((double) resultObject.get(field) * 1e6));
+            }
+            normalized.add(resultObject);
         }
+        return normalized;
     }
 }
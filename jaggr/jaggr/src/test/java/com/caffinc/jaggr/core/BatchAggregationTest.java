@@ -1,14 +1,15 @@
 package com.caffinc.jaggr.core;
 
-import com.caffinc.jaggr.core.operations.CountOperation;
+import com.caffinc.jaggr.core.operations.*;
 import com.caffinc.jaggr.utils.JsonFileUtil;
+import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
 
 /**
  * Tests the <code>BatchAggregation</code>
@@ -49,4 +50,467 @@ public class BatchAggregationTest {
         List<Map<String, Object>> postFinalResult = aggregation.getFinalResult();
         Assert.assertEquals("Final result after final result should be empty", 0, postFinalResult.size());
     }
+
+    @Test
+    public void testMerge() throws Exception {
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("avg", new AverageOperation("test.f"))
+                .addOperation("sum", new SumOperation("test.f"))
+                .addOperation("min", new MinOperation("test.f"))
+                .addOperation("max", new MaxOperation("test.f"))
+                .addOperation("count", new CountOperation())
+                .addOperation("first", new FirstObjectOperation("_id"))
+                .addOperation("last", new LastObjectOperation("_id"))
+                .addOperation("list", new CollectOperation("_id"))
+                .addOperation("set", new CollectSetOperation("test.f"))
+                .addOperation("top", new TopNOperation<>("_id", 2, new Comparator<Double>() {
+                    @Override
+                    public int compare(Double o1, Double o2) {
+                        return Double.compare(o1, o2);
+                    }
+                }));
+        BatchAggregation first = builder.getBatchAggregation().aggregateBatch(jsonData.subList(0, 3));
+        BatchAggregation second = builder.getBatchAggregation().aggregateBatch(jsonData.subList(3, jsonData.size()));
+
+        Set<Map<String, Object>> expected = new HashSet<>();
+        for (Map<String, Object> resultObject : builder.getBatchAggregation().aggregateBatch(jsonData).getFinalResult()) {
+            resultObject.put("top", new HashSet<>((List) resultObject.get("top")));
+            expected.add(resultObject);
+        }
+        Set<Map<String, Object>> result = new HashSet<>();
+        for (Map<String, Object> resultObject : first.merge(second).getFinalResult()) {
+            resultObject.put("top", new HashSet<>((List) resultObject.get("top")));
+            result.add(resultObject);
+        }
+        Assert.assertEquals("Merged batches should match a single aggregation of all the data", expected, result);
+        Assert.assertEquals("Merged aggregation should be reset", 0, second.getFinalResult().size());
+    }
+
+    @Test
+    public void testMergeStdDev() throws Exception {
+        Random random = new Random(0);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1e6 + random.nextGaussian() * (i < 100 ? 1 : 50);
+            Map<String, Object> object = new HashMap<>();
+            object.put("v", values[i]);
+            objectList.add(object);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .addOperation("stddev", new StdDevPopOperation("v"));
+        List<Map<String, Object>> result = builder.getBatchAggregation()
+                .aggregateBatch(objectList.subList(0, 100))
+                .merge(builder.getBatchAggregation().aggregateBatch(objectList.subList(100, objectList.size())))
+                .getFinalResult();
+        Assert.assertEquals("Merged standard deviation should match the standard deviation of all the data",
+                new StandardDeviation().evaluate(values), (double) result.get(0).get("stddev"), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentOperations() throws Exception {
+        new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .getBatchAggregation()
+                .merge(new AggregationBuilder()
+                        .setGroupBy("f")
+                        .addOperation("count", new SumOperation("test.f"))
+                        .getBatchAggregation());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentFields() throws Exception {
+        new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("max", new MaxOperation("test.f"))
+                .getBatchAggregation()
+                .merge(new AggregationBuilder()
+                        .setGroupBy("f")
+                        .addOperation("max", new MaxOperation("test.g"))
+                        .getBatchAggregation());
+    }
+
+    @Test
+    public void testMergeIdenticalBuilders() throws Exception {
+        List<BatchAggregation> aggregations = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            aggregations.add(new AggregationBuilder()
+                    .setGroupBy("f")
+                    .addMatch("test.f > 0")
+                    .addOperation("count", new CountOperation())
+                    .addOperation("sum", new SumOperation("test.f"))
+                    .getBatchAggregation());
+        }
+        List<Map<String, Object>> expected = new AggregationBuilder()
+                .setGroupBy("f")
+                .addMatch("test.f > 0")
+                .addOperation("count", new CountOperation())
+                .addOperation("sum", new SumOperation("test.f"))
+                .getBatchAggregation()
+                .aggregateBatch(jsonData)
+                .getFinalResult();
+        List<Map<String, Object>> result = aggregations.get(0)
+                .aggregateBatch(jsonData.subList(0, 4))
+                .merge(aggregations.get(1).aggregateBatch(jsonData.subList(4, jsonData.size())))
+                .getFinalResult();
+        Assert.assertEquals("Aggregations of identically configured builders should merge",
+                new HashSet<>(expected), new HashSet<>(result));
+    }
+
+    @Test
+    public void testIntermediateSnapshot() throws Exception {
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .addOperation("list", new CollectOperation("_id"))
+                .addOperation("set", new CollectSetOperation("test.f"));
+        BatchAggregation aggregation = builder.getBatchAggregation().aggregateBatch(jsonData);
+        Map<Object, Map<String, Object>> first = new HashMap<>();
+        for (Map<String, Object> resultObject : aggregation.getItermediateResult()) {
+            first.put(resultObject.get("_id"), resultObject);
+        }
+        Assert.assertSame("Snapshot should be reused if nothing changed", aggregation.getItermediateResult(),
+                aggregation.getItermediateResult());
+
+        // Only touches group "a"
+        aggregation.aggregateBatch(jsonData.subList(0, 2));
+        Map<Object, Map<String, Object>> second = new HashMap<>();
+        for (Map<String, Object> resultObject : aggregation.getItermediateResult()) {
+            second.put(resultObject.get("_id"), resultObject);
+        }
+        Assert.assertEquals("Earlier snapshot should not change", 5, ((List) first.get("a").get("list")).size());
+        Assert.assertEquals("Earlier snapshot should not change", 5, first.get("a").get("count"));
+        Assert.assertEquals("Snapshot should include new data", 7, ((List) second.get("a").get("list")).size());
+        Assert.assertSame("Unchanged groups should not be computed again", first.get("b"), second.get("b"));
+        Assert.assertNotSame("Changed groups should be computed again", first.get("a"), second.get("a"));
+
+        BatchAggregation other = builder.getBatchAggregation().aggregateBatch(jsonData.subList(5, 6));
+        other.getItermediateResult();
+        Map<Object, Map<String, Object>> merged = new HashMap<>();
+        for (Map<String, Object> resultObject : aggregation.merge(other).getItermediateResult()) {
+            merged.put(resultObject.get("_id"), resultObject);
+        }
+        Assert.assertEquals("Snapshot should include merged data", 6, merged.get("b").get("count"));
+        Assert.assertEquals("Merged aggregation should have an empty snapshot", 0, other.getItermediateResult().size());
+        Assert.assertEquals("Snapshot should match the final result", new HashSet<>(merged.values()),
+                new HashSet<>(aggregation.getFinalResult()));
+    }
+
+    @Test
+    public void testRetractBatch() throws Exception {
+        Random random = new Random(0);
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            data.add(generateDocument(random, i));
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .addOperation("sum", new SumOperation("v"))
+                .addOperation("avg", new AverageOperation("v"))
+                .addOperation("std", new StdDevPopOperation("v"))
+                .addOperation("min", new MinOperation("v", true))
+                .addOperation("max", new MaxOperation("v", true))
+                .addOperation("top", new TopNOperation<>("w", 3, Collections.<Double>reverseOrder(), true))
+                .addOperation("set", new CollectSetOperation("w", true));
+        BatchAggregation aggregation = builder.getBatchAggregation().aggregateBatch(data);
+        aggregation.getItermediateResult();
+
+        // Every document of group 0 is retracted, and a quarter of the others are retracted or corrected
+        List<Map<String, Object>> retracted = new ArrayList<>();
+        List<Map<String, Object>> corrected = new ArrayList<>();
+        List<Map<String, Object>> remaining = new ArrayList<>();
+        for (Map<String, Object> object : data) {
+            if (object.get("f").equals(0L) || random.nextInt(4) == 0) {
+                retracted.add(object);
+                if (random.nextBoolean() && !object.get("f").equals(0L)) {
+                    // Corrections may move a document to another group, but never back into group 0
+                    Map<String, Object> correction = generateDocument(random, (int) object.get("_id"));
+                    correction.put("f", 1L + random.nextInt(19));
+                    corrected.add(correction);
+                }
+            } else {
+                remaining.add(object);
+            }
+        }
+        remaining.addAll(corrected);
+        aggregation.retractBatch(retracted).aggregateBatch(corrected);
+
+        Set<Map<String, Object>> expected = roundStdDev(builder.getAggregation().aggregate(remaining));
+        Set<Map<String, Object>> snapshot = roundStdDev(aggregation.getItermediateResult());
+        Assert.assertEquals("Snapshot should match aggregating the remaining documents", expected, snapshot);
+        for (Map<String, Object> resultObject : snapshot) {
+            Assert.assertNotEquals("Groups without documents should be removed", 0L, resultObject.get("_id"));
+        }
+        Assert.assertEquals("Final result should match aggregating the remaining documents", expected,
+                roundStdDev(aggregation.getFinalResult()));
+        Assert.assertEquals("Retractable state should be spilled to disk intact", expected,
+                roundStdDev(builder.allowDiskUse(1).getAggregation().aggregate(remaining)));
+    }
+
+    private static Map<String, Object> generateDocument(Random random, int id) {
+        Map<String, Object> object = new HashMap<>();
+        object.put("_id", id);
+        object.put("f", (long) random.nextInt(20));
+        // Integral values, so that sums are exact whatever order they are added and removed in
+        if (random.nextInt(10) != 0)
+            object.put("v", random.nextBoolean() ? (Object) (long) random.nextInt(100) : (double) random.nextInt(100));
+        object.put("w", (double) random.nextInt(1000));
+        return object;
+    }
+
+    private static Set<Map<String, Object>> roundStdDev(List<Map<String, Object>> result) {
+        Set<Map<String, Object>> rounded = new HashSet<>();
+        for (Map<String, Object> resultObject : result) {
+            Map<String, Object> roundedObject = new HashMap<>(resultObject);
+            roundedObject.put("std", Math.round((Double) resultObject.get("std") * 1e6) / 1e6);
+            rounded.add(roundedObject);
+        }
+        return rounded;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRetractBatchNotRetractable() throws Exception {
+        new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("min", new MinOperation("test.f"))
+                .getBatchAggregation()
+                .aggregateBatch(jsonData)
+                .retractBatch(jsonData.subList(0, 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRetractBatchNotAggregated() throws Exception {
+        new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .getBatchAggregation()
+                .aggregateBatch(jsonData.subList(0, 1))
+                .retractBatch(jsonData.subList(5, 6));
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        Random random = new Random(1);
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            data.add(generateDocument(random, i));
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .addOperation("sum", new SumOperation("v"))
+                .addOperation("std", new StdDevPopOperation("v"))
+                .addOperation("min", new MinOperation("v", true))
+                .addOperation("top", new TopNOperation<>("w", 3, Collections.<Double>reverseOrder(), true))
+                .addOperation("set", new CollectSetOperation("w", true));
+        BatchAggregation aggregation = builder.getBatchAggregation().aggregateBatch(data);
+        File file = Files.createTempFile("jaggr-checkpoint", ".bin").toFile();
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                aggregation.checkpoint(out);
+            }
+            BatchAggregation restored = builder.getBatchAggregation();
+            try (InputStream in = new FileInputStream(file)) {
+                restored.restore(in);
+            }
+            Assert.assertEquals("Restored snapshot should match the checkpointed aggregation",
+                    roundStdDev(aggregation.getItermediateResult()), roundStdDev(restored.getItermediateResult()));
+
+            // Documents can still be retracted after a restore, and groups left empty are removed
+            List<Map<String, Object>> retracted = new ArrayList<>();
+            List<Map<String, Object>> remaining = new ArrayList<>();
+            for (Map<String, Object> object : data) {
+                (object.get("f").equals(0L) || random.nextInt(3) == 0 ? retracted : remaining).add(object);
+            }
+            Assert.assertEquals("Restored aggregation should retract documents",
+                    roundStdDev(builder.getAggregation().aggregate(remaining)),
+                    roundStdDev(restored.retractBatch(retracted).getFinalResult()));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testCheckpointSketches() throws Exception {
+        Random random = new Random(2);
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Map<String, Object> object = generateDocument(random, i);
+            object.put("g", random.nextBoolean());
+            data.add(object);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f", "g")
+                .addOperation("avg", new AverageOperation("w"))
+                .addOperation("max", new MaxOperation("v"))
+                .addOperation("list", new CollectOperation("_id"))
+                .addOperation("distinct", new DistinctCountOperation("w"))
+                .addOperation("percentiles", new PercentileOperation("w", Arrays.asList(0.5, 0.9)))
+                .addOperation("hitters", new HeavyHittersOperation("w", 3))
+                .addOperation("top", new TopNNumberOperation("w", 3));
+        BatchAggregation aggregation = builder.getBatchAggregation().aggregateBatch(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        aggregation.checkpoint(out);
+        Assert.assertEquals("Writing a checkpoint should not change the aggregation",
+                new HashSet<>(builder.getBatchAggregation().aggregateBatch(data).aggregateBatch(data).getFinalResult()),
+                new HashSet<>(aggregation.aggregateBatch(data).getFinalResult()));
+        aggregation.aggregateBatch(data);
+        out.reset();
+        aggregation.checkpoint(out);
+        BatchAggregation restored = builder.getBatchAggregation()
+                .restore(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals("Restored aggregation should hold the same state as the checkpointed one",
+                new HashSet<>(aggregation.getItermediateResult()), new HashSet<>(restored.getItermediateResult()));
+        Assert.assertEquals("Restored aggregation should keep aggregating like the checkpointed one",
+                new HashSet<>(aggregation.aggregateBatch(data.subList(0, 100)).getFinalResult()),
+                new HashSet<>(restored.aggregateBatch(data.subList(0, 100)).getFinalResult()));
+    }
+
+    @Test
+    public void testCheckpointLargeSignature() throws Exception {
+        AggregationBuilder builder = new AggregationBuilder().setGroupBy("f");
+        StringBuilder condition = new StringBuilder("test.f > -1000");
+        for (int i = 0; i < 2000; i++) {
+            builder.addOperation("sum" + i, new SumOperation("test.f_with_a_rather_long_field_name_" + i));
+            condition.append(" && test.g_with_a_rather_long_field_name_").append(i).append(" == null");
+        }
+        builder.addMatch(condition.toString()).addOperation("count", new CountOperation());
+        BatchAggregation aggregation = builder.getBatchAggregation().aggregateBatch(jsonData);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        aggregation.checkpoint(out);
+        Assert.assertEquals("Checkpoints of aggregations with long descriptions should be restored",
+                new HashSet<>(aggregation.getItermediateResult()),
+                new HashSet<>(builder.getBatchAggregation().restore(new ByteArrayInputStream(out.toByteArray()))
+                        .getItermediateResult()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRestoreDifferentOperations() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .getBatchAggregation()
+                .aggregateBatch(jsonData)
+                .checkpoint(out);
+        new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new SumOperation("test.f"))
+                .getBatchAggregation()
+                .restore(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testRestoreDifferentParameters() throws Exception {
+        List<AggregationBuilder> builders = Arrays.asList(
+                new AggregationBuilder().setGroupBy("f").addOperation("sum", new SumOperation("test.f")),
+                new AggregationBuilder().setGroupBy("f").addOperation("sum", new SumOperation("test.g")),
+                new AggregationBuilder().setGroupBy("f").addOperation("sum", new SumOperation("test.f"))
+                        .addMatch("test.f > 0"),
+                new AggregationBuilder().setGroupBy("f").addOperation("sum", new SumOperation("test.f"))
+                        .addComputedField("g", "test.f * 2"),
+                new AggregationBuilder().setGroupBy("f").addOperation("sum", new DistinctCountOperation("test.f")),
+                new AggregationBuilder().setGroupBy("f").addOperation("sum", new DistinctCountOperation("test.f", 10)),
+                new AggregationBuilder().setGroupBy("f").addOperation("sum", new MaxOperation("test.f")),
+                new AggregationBuilder().setGroupBy("f").addOperation("sum", new MaxOperation("test.f", true)));
+        for (int i = 0; i < builders.size(); i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            builders.get(i).getBatchAggregation().aggregateBatch(jsonData).checkpoint(out);
+            for (int j = 0; j < builders.size(); j++) {
+                try {
+                    builders.get(j).getBatchAggregation().restore(new ByteArrayInputStream(out.toByteArray()));
+                    Assert.assertEquals("Only the same aggregation should restore the checkpoint", i, j);
+                } catch (IllegalArgumentException e) {
+                    Assert.assertNotEquals("The same aggregation should restore the checkpoint", i, j);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRestoreNotCheckpoint() throws Exception {
+        new AggregationBuilder()
+                .addOperation("count", new CountOperation())
+                .getBatchAggregation()
+                .restore(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test
+    public void testIntermediatePercentiles() throws Exception {
+        Random random = new Random(3);
+        List<List<Map<String, Object>>> batches = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            List<Map<String, Object>> batch = new ArrayList<>();
+            for (int j = 0; j < 70; j++) {
+                Map<String, Object> object = new HashMap<>();
+                object.put("f", j % 2);
+                object.put("latency", -Math.log(1 - random.nextDouble()) * 100);
+                batch.add(object);
+            }
+            batches.add(batch);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("percentiles", new PercentileOperation("latency", Arrays.asList(0.5, 0.95, 0.99)));
+        BatchAggregation polled = builder.getBatchAggregation();
+        BatchAggregation unpolled = builder.getBatchAggregation();
+        for (List<Map<String, Object>> batch : batches) {
+            polled.aggregateBatch(batch).getItermediateResult();
+            unpolled.aggregateBatch(batch);
+        }
+        Assert.assertEquals("Reading intermediate percentiles should not change the final ones",
+                new HashSet<>(unpolled.getFinalResult()), new HashSet<>(polled.getFinalResult()));
+    }
+
+    @Test
+    public void testIntermediateSnapshotChanges() throws Exception {
+        // Enough groups for several levels of the snapshot
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Map<String, Object> object = new HashMap<>();
+            object.put("_id", i);
+            object.put("f", (long) i);
+            data.add(object);
+        }
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation());
+        BatchAggregation aggregation = builder.getBatchAggregation().aggregateBatch(data);
+        List<Map<String, Object>> first = aggregation.getItermediateResult();
+        List<Map<String, Object>> firstCopy = new ArrayList<>(first);
+
+        // Remove some groups, including the last, and change others
+        List<Map<String, Object>> retracted = new ArrayList<>(data.subList(0, 10));
+        retracted.add(data.get(4999));
+        aggregation.retractBatch(retracted).aggregateBatch(data.subList(2000, 2100));
+        List<Map<String, Object>> second = aggregation.getItermediateResult();
+        Assert.assertEquals("Earlier snapshot should not change", firstCopy, first);
+        Assert.assertEquals("Snapshot should hold every remaining group", 4989, second.size());
+        List<Map<String, Object>> expected = new ArrayList<>(data.subList(10, 4999));
+        expected.addAll(data.subList(2000, 2100));
+        Assert.assertEquals("Snapshot should match aggregating the remaining documents",
+                new HashSet<>(builder.getAggregation().aggregate(expected)), new HashSet<>(second));
+        Set<Map<String, Object>> firstResults = Collections.newSetFromMap(
+                new IdentityHashMap<Map<String, Object>, Boolean>());
+        firstResults.addAll(first);
+        int reused = 0;
+        for (Map<String, Object> resultObject : second) {
+            if (firstResults.contains(resultObject))
+                reused++;
+        }
+        Assert.assertEquals("Unchanged groups should not be computed again", 4889, reused);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIntermediateSnapshotImmutable() throws Exception {
+        List<Map<String, Object>> result = new AggregationBuilder()
+                .addOperation("list", new CollectOperation("_id"))
+                .getBatchAggregation()
+                .aggregateBatch(jsonData)
+                .getItermediateResult();
+        ((List) result.get(0).get("list")).add(0);
+    }
 }
@@ -0,0 +1,113 @@
+package com.caffinc.jaggr.core;
+
+import com.caffinc.jaggr.core.operations.*;
+import com.caffinc.jaggr.utils.JsonFileUtil;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests the <code>ConcurrentBatchAggregation</code>
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class ConcurrentBatchAggregationTest {
+    private static final List<Map<String, Object>> jsonData = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        jsonData.addAll(JsonFileUtil.readJsonFromResource("raw.json"));
+    }
+
+    @Test
+    public void testAggregateBatch() throws Exception {
+        AggregationBuilder builder = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("avg", new AverageOperation("test.f"))
+                .addOperation("sum", new SumOperation("test.f"))
+                .addOperation("min", new MinOperation("test.f"))
+                .addOperation("max", new MaxOperation("test.f"))
+                .addOperation("count", new CountOperation())
+                .addOperation("set", new CollectSetOperation("test.f"));
+        ConcurrentBatchAggregation aggregation = builder.getConcurrentBatchAggregation();
+        Set<Map<String, Object>> expected = new HashSet<>(builder.getAggregation().aggregate(jsonData));
+        Assert.assertEquals("Intermediate result should match aggregating the same data", expected,
+                new HashSet<>(aggregation.aggregateBatch(jsonData.subList(0, 3))
+                        .aggregateBatch(jsonData.subList(3, jsonData.size()))
+                        .getItermediateResult()));
+        Assert.assertEquals("Final result should match aggregating the same data", expected,
+                new HashSet<>(aggregation.getFinalResult()));
+        Assert.assertEquals("Intermediate result after final result should be empty",
+                0, aggregation.getItermediateResult().size());
+        Assert.assertEquals("Final result after final result should be empty",
+                0, aggregation.getFinalResult().size());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final ConcurrentBatchAggregation aggregation = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .addOperation("sum", new SumOperation("_id"))
+                .getConcurrentBatchAggregation();
+        final int producerCount = 8;
+        final int batchesPerProducer = 2000;
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(producerCount);
+        try {
+            List<Future<?>> producers = new ArrayList<>();
+            for (int i = 0; i < producerCount; i++) {
+                producers.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < batchesPerProducer; j++) {
+                            aggregation.aggregateBatch(jsonData);
+                        }
+                    }
+                }));
+            }
+            long count = 0;
+            double sum = 0;
+            int snapshots = 0;
+            while (producing.get()) {
+                producing.set(false);
+                for (Future<?> producer : producers) {
+                    if (!producer.isDone())
+                        producing.set(true);
+                }
+                List<Map<String, Object>> result = snapshots % 2 == 0
+                        ? aggregation.getFinalResult()
+                        : Collections.<Map<String, Object>>emptyList();
+                for (Map<String, Object> resultObject : result) {
+                    count += (int) resultObject.get("count");
+                    sum += ((Number) resultObject.get("sum")).doubleValue();
+                }
+                aggregation.getItermediateResult();
+                snapshots++;
+            }
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+            for (Map<String, Object> resultObject : aggregation.getFinalResult()) {
+                count += (int) resultObject.get("count");
+                sum += ((Number) resultObject.get("sum")).doubleValue();
+            }
+
+            double batchSum = 0;
+            for (Map<String, Object> object : jsonData) {
+                batchSum += (double) object.get("_id");
+            }
+            Assert.assertEquals("Every document should be counted exactly once across final results",
+                    (long) jsonData.size() * producerCount * batchesPerProducer, count);
+            Assert.assertEquals("Every document should be summed exactly once across final results",
+                    batchSum * producerCount * batchesPerProducer, sum, 1e-6);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.caffinc.jaggr.core;
+
+import com.caffinc.jaggr.core.operations.*;
+import com.caffinc.jaggr.utils.JsonFileUtil;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests the <code>MultiAggregation</code>
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class MultiAggregationTest {
+    private static final List<Map<String, Object>> jsonData = new ArrayList<>();
+    private static final List<Map<String, Object>> generatedData = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        jsonData.addAll(JsonFileUtil.readJsonFromResource("raw.json"));
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            Map<String, Object> object = new HashMap<>();
+            object.put("_id", (double) i);
+            object.put("f", (long) random.nextInt(500));
+            object.put("g", random.nextBoolean());
+            object.put("v", (double) random.nextInt(100));
+            generatedData.add(object);
+        }
+    }
+
+    private static List<Aggregation> getAggregations() {
+        return Arrays.asList(
+                new AggregationBuilder()
+                        .setGroupBy("f")
+                        .addOperation("count", new CountOperation())
+                        .addOperation("sum", new SumOperation("v"))
+                        .getAggregation(),
+                new AggregationBuilder()
+                        .addMatch("g")
+                        .setGroupBy("f", "g")
+                        .addOperation("max", new MaxOperation("v"))
+                        .addOperation("list", new CollectOperation("_id"))
+                        .allowDiskUse(50)
+                        .getAggregation(),
+                new AggregationBuilder()
+                        .addOperation("avg", new AverageOperation("v"))
+                        .getAggregation(),
+                new AggregationBuilder()
+                        .setGroupBy("f")
+                        .addOperation("sum", new SumOperation("v"))
+                        .addSort("sum", false)
+                        .addSort("_id", true)
+                        .setLimit(10)
+                        .getAggregation());
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        List<Aggregation> aggregations = getAggregations();
+        final int[] reads = new int[1];
+        final Iterator<Map<String, Object>> iterator = generatedData.iterator();
+        List<List<Map<String, Object>>> results = new MultiAggregation(aggregations)
+                .aggregate(new Iterator<Map<String, Object>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Map<String, Object> next() {
+                        reads[0]++;
+                        return iterator.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                });
+        Assert.assertEquals("The input should be read once", generatedData.size(), reads[0]);
+        Assert.assertEquals("There should be a result per aggregation", aggregations.size(), results.size());
+        for (int i = 0; i < aggregations.size(); i++) {
+            List<Map<String, Object>> expected = aggregations.get(i).aggregate(generatedData);
+            if (i == 3) {
+                Assert.assertEquals("Sorted results should match aggregating alone", expected, results.get(i));
+            } else {
+                Assert.assertEquals("Each result should match aggregating alone", new HashSet<>(expected),
+                        new HashSet<>(results.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testAggregatePartitions() throws Exception {
+        List<Aggregation> aggregations = getAggregations();
+        List<List<Map<String, Object>>> partitions = new ArrayList<>();
+        for (int i = 0; i < generatedData.size(); i += 999) {
+            partitions.add(generatedData.subList(i, Math.min(i + 999, generatedData.size())));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<List<Map<String, Object>>> results = new MultiAggregation(aggregations)
+                    .aggregatePartitions(partitions, pool);
+            for (int i = 0; i < aggregations.size(); i++) {
+                Assert.assertEquals("Each result should match aggregating the partitions in order",
+                        aggregations.get(i).aggregatePartitions(partitions, pool), results.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequiredFields() throws Exception {
+        Aggregation byF = new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("sum", new SumOperation("test.f"))
+                .getAggregation();
+        Aggregation byId = new AggregationBuilder()
+                .setGroupBy("_id")
+                .addOperation("count", new CountOperation())
+                .getAggregation();
+        Assert.assertEquals("Required fields should be those of every aggregation",
+                new HashSet<>(Arrays.asList("f", "test.f", "_id")),
+                new MultiAggregation(byF, byId).getRequiredFields());
+        Aggregation byObject = new AggregationBuilder()
+                .addOperation("fields", new Operation() {
+                    @Override
+                    public Object aggregate(Object previousAccumulatedValue, Map<String, Object> object) {
+                        return previousAccumulatedValue == null ? object.size() : previousAccumulatedValue;
+                    }
+
+                    @Override
+                    public Object merge(Object accumulatedValue1, Object accumulatedValue2) {
+                        return accumulatedValue1 == null ? accumulatedValue2 : accumulatedValue1;
+                    }
+
+                    @Override
+                    public Object copy(Object accumulatedValue) {
+                        return accumulatedValue;
+                    }
+
+                    @Override
+                    public Object result(Object accumulatedValue) {
+                        return accumulatedValue;
+                    }
+                })
+                .getAggregation();
+        Assert.assertNull("Any field may be required if one aggregation may use any field",
+                new MultiAggregation(byF, byObject).getRequiredFields());
+        Assert.assertEquals("Results should match aggregating alone", Arrays.asList(
+                byF.aggregate(jsonData), byObject.aggregate(jsonData)),
+                new MultiAggregation(byF, byObject).aggregate(jsonData));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoAggregations() throws Exception {
+        new MultiAggregation();
+    }
+}
@@ -0,0 +1,147 @@
+package com.caffinc.jaggr.core;
+
+import com.caffinc.jaggr.core.operations.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Tests the <code>WindowedAggregation</code>
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class WindowedAggregationTest {
+    private static AggregationBuilder getBuilder() {
+        return new AggregationBuilder()
+                .setGroupBy("f")
+                .addOperation("count", new CountOperation())
+                .addOperation("sum", new SumOperation("v"))
+                .addOperation("min", new MinOperation("v"))
+                .addOperation("avg", new AverageOperation("v"))
+                .addOperation("list", new CollectOperation("_id"))
+                .addOperation("set", new CollectSetOperation("v"));
+    }
+
+    private static List<Map<String, Object>> generate(int count, int disorder, long seed) {
+        Random random = new Random(seed);
+        List<Map<String, Object>> objectList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> object = new HashMap<>();
+            object.put("_id", (double) i);
+            object.put("ts", (double) Math.max(0, i - random.nextInt(disorder + 1)));
+            object.put("f", String.valueOf(random.nextInt(3)));
+            object.put("v", (double) random.nextInt(10));
+            objectList.add(object);
+        }
+        return objectList;
+    }
+
+    private static void assertWindows(List<Map<String, Object>> objectList, List<WindowResult> windows,
+                                      long size, long slide) {
+        Aggregation aggregation = getBuilder().getAggregation();
+        long expectedStart = Long.MIN_VALUE;
+        for (WindowResult window : windows) {
+            Assert.assertEquals("Window should be as long as its size", size, window.getEnd() - window.getStart());
+            Assert.assertEquals("Windows should start at multiples of the slide", 0, window.getStart() % slide);
+            Assert.assertTrue("Windows should be in order of their start", window.getStart() > expectedStart);
+            expectedStart = window.getStart();
+            List<Map<String, Object>> windowObjects = new ArrayList<>();
+            for (Map<String, Object> object : objectList) {
+                double timestamp = (double) object.get("ts");
+                if (timestamp >= window.getStart() && timestamp < window.getEnd())
+                    windowObjects.add(object);
+            }
+            Assert.assertEquals("Window result should match aggregating the objects in the window",
+                    sortLists(aggregation.aggregate(windowObjects)), sortLists(window.getResult()));
+        }
+    }
+
+    /**
+     * Panes are merged in order of time, so collected values are only in arrival order within each pane
+     */
+    private static Set<Map<String, Object>> sortLists(List<Map<String, Object>> result) {
+        Set<Map<String, Object>> sorted = new HashSet<>();
+        for (Map<String, Object> resultObject : result) {
+            Map<String, Object> sortedObject = new HashMap<>(resultObject);
+            List<Double> list = new ArrayList<>((List<Double>) resultObject.get("list"));
+            Collections.sort(list);
+            sortedObject.put("list", list);
+            sorted.add(sortedObject);
+        }
+        return sorted;
+    }
+
+    @Test
+    public void testTumblingWindows() throws Exception {
+        List<Map<String, Object>> objectList = generate(600, 0, 0);
+        WindowedAggregation aggregation = getBuilder().getWindowedAggregation("ts", 60);
+        List<WindowResult> windows = new ArrayList<>();
+        for (int i = 0; i < objectList.size(); i += 50) {
+            windows.addAll(aggregation.aggregateBatch(objectList.subList(i, i + 50)).getCompletedWindows());
+        }
+        Assert.assertEquals("Windows before the watermark should be complete", 9, windows.size());
+        windows.addAll(aggregation.getFinalResult());
+        Assert.assertEquals("Every window should be completed by the final result", 10, windows.size());
+        assertWindows(objectList, windows, 60, 60);
+        Assert.assertEquals("Final result should reset the aggregation", 0, aggregation.getFinalResult().size());
+    }
+
+    @Test
+    public void testSlidingWindows() throws Exception {
+        List<Map<String, Object>> objectList = generate(2000, 30, 1);
+        WindowedAggregation aggregation = getBuilder().getWindowedAggregation("ts", 300, 40, 30);
+        List<WindowResult> windows = new ArrayList<>();
+        for (int i = 0; i < objectList.size(); i += 70) {
+            windows.addAll(aggregation.aggregateBatch(objectList.subList(i, Math.min(i + 70, objectList.size())))
+                    .getCompletedWindows());
+        }
+        windows.addAll(aggregation.getFinalResult());
+        Assert.assertEquals("Objects within the allowed lateness should not be dropped", 0, aggregation.getLateCount());
+        Assert.assertEquals("Every window with data should be completed", 2000 / 40 + 300 / 40, windows.size());
+        assertWindows(objectList, windows, 300, 40);
+    }
+
+    @Test
+    public void testLateObjects() throws Exception {
+        WindowedAggregation aggregation = getBuilder().getWindowedAggregation("ts", 10, 5, 0);
+        List<Map<String, Object>> objectList = generate(100, 0, 2);
+        aggregation.aggregateBatch(objectList);
+        Assert.assertEquals("Watermark should follow the latest timestamp", 99, aggregation.getWatermark());
+        List<WindowResult> windows = aggregation.getCompletedWindows();
+        assertWindows(objectList, windows, 10, 5);
+        Assert.assertEquals("Windows ending at or before the watermark should be complete",
+                85, windows.get(windows.size() - 1).getStart());
+
+        Map<String, Object> late = new HashMap<>(objectList.get(0));
+        late.put("ts", 80.0);
+        Map<String, Object> partlyLate = new HashMap<>(objectList.get(0));
+        partlyLate.put("ts", 97.0);
+        aggregation.aggregateBatch(Arrays.asList(late, partlyLate, new HashMap<String, Object>()));
+        Assert.assertEquals("Objects whose windows are all complete should be dropped", 1, aggregation.getLateCount());
+        Assert.assertEquals("No window should be completed without the watermark moving",
+                0, aggregation.getCompletedWindows().size());
+
+        aggregation.advanceWatermark(200);
+        List<WindowResult> lastWindows = aggregation.getCompletedWindows();
+        Assert.assertEquals("Advancing the watermark should complete the open windows", 2, lastWindows.size());
+        Assert.assertEquals("Open windows should include objects that arrived late for earlier windows",
+                new HashSet<>(Arrays.asList(95.0, 96.0, 97.0, 98.0, 99.0, 0.0)), collectIds(lastWindows.get(1)));
+        Assert.assertEquals("Nothing should be left after the watermark passes every window",
+                0, aggregation.getFinalResult().size());
+    }
+
+    private static Set<Object> collectIds(WindowResult window) {
+        Set<Object> ids = new HashSet<>();
+        for (Map<String, Object> resultObject : window.getResult()) {
+            ids.addAll((List<?>) resultObject.get("list"));
+        }
+        return ids;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSlide() throws Exception {
+        getBuilder().getWindowedAggregation("ts", 10, 20, 0);
+    }
+}
@@ -0,0 +1,109 @@
+package com.caffinc.jaggr.core.expressions;
+
+import com.caffinc.jaggr.core.utils.FieldPath;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the parsing and evaluation of expressions
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class ExpressionTest {
+    private static final Gson gson = new Gson();
+    private static final Map<String, Object> document = gson.fromJson(
+            "{\"salary\" : 1000, \"age\" : 35, \"name\" : \"Bob\", \"active\" : true, \"test\" : {\"f\" : -1}}",
+            HashMap.class);
+
+    private static Object evaluate(String expression) {
+        return Expression.parse(expression).evaluate(document);
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        Assert.assertEquals("Should multiply fields", 300.0, evaluate("salary * 0.3"));
+        Assert.assertEquals("Should respect precedence", 7L, evaluate("1 + 2 * 3"));
+        Assert.assertEquals("Should respect parentheses", 9L, evaluate("(1 + 2) * 3"));
+        Assert.assertEquals("Integer division should give a double", 2.5, evaluate("5 / 2"));
+        Assert.assertEquals("Should compute the remainder", 1L, evaluate("7 % 3"));
+        Assert.assertEquals("Should negate nested fields", 1.0, evaluate("-test.f"));
+        Assert.assertEquals("Should subtract left to right", 0L, evaluate("3 - 2 - 1"));
+        Assert.assertEquals("Should concatenate strings", "Bob35.0", evaluate("name + age"));
+        Assert.assertNull("Arithmetic on a missing field should give null", evaluate("missing + 1"));
+        Assert.assertNull("Division by zero should give null", evaluate("salary / 0"));
+    }
+
+    @Test
+    public void testComparison() throws Exception {
+        Assert.assertEquals("Should compare with constants", true, evaluate("age > 30"));
+        Assert.assertEquals("Should compare constants on the left", false, evaluate("30 >= age"));
+        Assert.assertEquals("Should compare numbers of different types", true, evaluate("age == 35"));
+        Assert.assertEquals("Should compare strings", true, evaluate("name == 'Bob'"));
+        Assert.assertEquals("Should order strings", true, evaluate("name < \"Carl\""));
+        Assert.assertEquals("Should compare fields", true, evaluate("salary > age * 2"));
+        Assert.assertEquals("Missing fields should equal null", true, evaluate("missing == null"));
+        Assert.assertEquals("Missing fields should not be ordered", false, evaluate("missing < 10"));
+        Assert.assertEquals("Missing fields should not equal numbers", true, evaluate("missing != 10"));
+        Assert.assertEquals("Values of different types should not be ordered", false, evaluate("name > 10"));
+    }
+
+    @Test
+    public void testLogic() throws Exception {
+        Assert.assertEquals("Should combine conditions", true, evaluate("age > 30 && name == 'Bob'"));
+        Assert.assertEquals("Should combine with words", true, evaluate("age < 30 or active"));
+        Assert.assertEquals("And should bind tighter than or", true, evaluate("active || age < 30 && false"));
+        Assert.assertEquals("Should negate conditions", false, evaluate("!active"));
+        Assert.assertEquals("Should negate with words", true, evaluate("not (age < 30)"));
+        Assert.assertTrue("Non zero numbers should be true", Expression.parse("salary").test(document));
+        Assert.assertFalse("Missing fields should be false", Expression.parse("missing").test(document));
+    }
+
+    @Test
+    public void testConstantFolding() throws Exception {
+        Assert.assertTrue("Constant expressions should be folded",
+                Expression.parse("(1 + 2) * 3 > 8 && 'a' + 'b' == 'ab'") instanceof Constant);
+        Assert.assertTrue("Comparisons against constant numbers should be specialized",
+                Expression.parse("age > 10 * 3") instanceof NumberComparison);
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        Expression expression = Expression.parse("salary * 0.3 + `first name.length` + salary");
+        Assert.assertEquals("Should list each referenced field once",
+                Arrays.asList(new FieldPath("salary"), new FieldPath("first name.length")), expression.getFields());
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        Expression expression = Expression.parse("a + b").bind(new FieldBinding() {
+            @Override
+            public int indexOf(FieldPath field) {
+                return field.getField().equals("a") ? 1 : 0;
+            }
+        });
+        Assert.assertEquals("Bound expressions should read their slots", 21L, expression.evaluate(new Object[]{1L, 20L}));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEvaluateUnbound() throws Exception {
+        Expression.parse("a + 1").evaluate(new Object[1]);
+    }
+
+    @Test
+    public void testInvalidExpressions() throws Exception {
+        for (String expression : Arrays.asList("", "1 +", "(a", "a b", "'abc", "a.", "1 = 2", "'a' * 2", "a..b")) {
+            try {
+                Expression.parse(expression);
+                Assert.fail("Should reject " + expression);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}
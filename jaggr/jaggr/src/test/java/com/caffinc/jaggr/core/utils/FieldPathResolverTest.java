@@ -0,0 +1,66 @@
+package com.caffinc.jaggr.core.utils;
+
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the FieldPathResolver
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class FieldPathResolverTest {
+    private static final Gson gson = new Gson();
+
+    @Test
+    public void testResolve() throws Exception {
+        FieldPathResolver resolver = new FieldPathResolver();
+        int ab = resolver.add(new FieldPath("a.b"));
+        int abc = resolver.add(new FieldPath("a.b.c"));
+        int abd = resolver.add(new FieldPath("a.b.d"));
+        int e = resolver.add(new FieldPath("e"));
+        Assert.assertEquals("Adding a field twice should return the same index", abc, resolver.add(new FieldPath("a.b.c")));
+        Assert.assertEquals("Resolver should hold each distinct field once", 4, resolver.size());
+
+        Map<String, Object> obj = gson.fromJson("{\"a\" : {\"b\" : {\"c\" : 1, \"d\" : \"x\"}}, \"e\" : true}", HashMap.class);
+        Object[] values = new Object[resolver.size()];
+        resolver.resolve(obj, values);
+        Assert.assertEquals("Nested values should be extracted", 1.0, values[abc]);
+        Assert.assertEquals("Sibling values should be extracted", "x", values[abd]);
+        Assert.assertEquals("Parent values should be extracted", ((Map) obj.get("a")).get("b"), values[ab]);
+        Assert.assertEquals("Top level values should be extracted", true, values[e]);
+    }
+
+    @Test
+    public void testResolveMissingFields() throws Exception {
+        FieldPathResolver resolver = new FieldPathResolver();
+        int abc = resolver.add(new FieldPath("a.b.c"));
+        int e = resolver.add(new FieldPath("e"));
+        Object[] values = new Object[resolver.size()];
+        resolver.resolve((Map<String, Object>) gson.fromJson("{\"a\" : {\"b\" : {\"c\" : 1}}, \"e\" : 2}", HashMap.class), values);
+        resolver.resolve((Map<String, Object>) gson.fromJson("{\"a\" : {\"b\" : 3}}", HashMap.class), values);
+        Assert.assertNull("Values nested in a non-object should be cleared from a reused buffer", values[abc]);
+        Assert.assertNull("Missing values should be cleared from a reused buffer", values[e]);
+    }
+
+    @Test
+    public void testReserve() throws Exception {
+        FieldPathResolver resolver = new FieldPathResolver();
+        int a = resolver.add(new FieldPath("a"));
+        int reserved = resolver.reserve();
+        int b = resolver.add(new FieldPath("b"));
+        Assert.assertEquals("Reserved slots should count towards the size", 3, resolver.size());
+        Assert.assertEquals("Reserved slots should not be listed as fields", 2, resolver.getPaths().size());
+
+        Object[] values = new Object[resolver.size()];
+        values[reserved] = "computed";
+        resolver.resolve(gson.fromJson("{\"a\" : 1, \"b\" : 2}", HashMap.class), values);
+        Assert.assertEquals("Fields should be extracted around reserved slots", 1.0, values[a]);
+        Assert.assertEquals("Fields should be extracted around reserved slots", 2.0, values[b]);
+        Assert.assertEquals("Reserved slots should not be written", "computed", values[reserved]);
+    }
+}
@@ -0,0 +1,49 @@
+package com.caffinc.jaggr.core.utils;
+
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the FieldPath
+ *
+ * @author agent
+ * @since 10/17/2026
+ */
+public class FieldPathTest {
+    private static final Gson gson = new Gson();
+
+    @Test
+    public void testSimpleFieldExtraction() throws Exception {
+        Map<String, Object> obj = gson.fromJson("{\"_id\" : \"a\"}", HashMap.class);
+        Assert.assertEquals("Value extracted should match value in the JSON",
+                "a",
+                new FieldPath("_id").getValue(obj));
+    }
+
+    @Test
+    public void testNestedFieldExtraction() throws Exception {
+        Map<String, Object> obj = gson.fromJson("{\"l1\" : {\"l2\" : {\"l3\" : \"a\"}}}", HashMap.class);
+        Assert.assertEquals("Value extracted should match value in the JSON",
+                "a",
+                new FieldPath("l1.l2.l3").getValue(obj));
+    }
+
+    @Test
+    public void testNonexistentFieldExtraction() throws Exception {
+        Map<String, Object> obj = gson.fromJson("{\"l1\" : {\"l2\" : \"a\"}}", HashMap.class);
+        Assert.assertNull("Non-existent value should be extracted as null from the JSON",
+                new FieldPath("l1.l3").getValue(obj));
+        Assert.assertNull("Value nested in a non-object should be extracted as null from the JSON",
+                new FieldPath("l1.l2.l3").getValue(obj));
+    }
+
+    @Test
+    public void testEquality() throws Exception {
+        Assert.assertEquals("Paths of the same field should be equal", new FieldPath("a.b"), new FieldPath("a.b"));
+        Assert.assertNotEquals("Paths of different fields should not be equal", new FieldPath("a.b"), new FieldPath("a"));
+    }
+}